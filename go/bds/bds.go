@@ -17,6 +17,9 @@
 
 		4) kill pid             :   Send a kill signal to a process group (same as shell command "kill -- -pid")
 
+		5) launcher				:	Execute tasks requested through STDIN (see 'exec/launcher.go'). Used
+									by bds (Java) to avoid starting one 'bds exec' process per task
+
 	Examples:
 
 	This will load, compile and execute 'myprogram.bds' (bds program)
@@ -71,6 +74,10 @@ func main() {
 			// Kill and exit
 			bdsexec.KillProcessGroup(pid)
 			os.Exit(0)
+		} else if os.Args[1] == "launcher" {
+			// Execute tasks until STDIN is closed
+			exitCode := bdsexec.Launcher()
+			os.Exit(exitCode)
 		} else if os.Args[1] == "test" {
 			// Placeholder for tests
 			zzz()
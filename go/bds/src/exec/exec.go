@@ -39,6 +39,9 @@ const BDS_NATIVE_LIB_DIR = "lib"
 // Command indicating to remove file (taskLogger file)
 const CMD_REMOVE_FILE = "rm"
 
+// Time to wait for Java to terminate (and flush taskLoggerFile) before killing it
+const KILL_WAIT_TIME_MS = 2000
+
 type BdsExec struct {
 	args []string 			// Command line arguments invoking 'bds'
 	execName string 		// This binary's absolute path
@@ -408,6 +411,18 @@ func (be *BdsExec) kill() {
 	if DEBUG {
 		log.Printf("Debug: Killing process\n")
 	}
+	// Main bds program? Ask Java to terminate first, so it can flush
+	// the taskLoggerFile (shutdown hooks) before we parse it
+	if be.taskLoggerFile != "" {
+		be.cmd.Process.Signal(syscall.SIGTERM)
+		for i := 0; i < KILL_WAIT_TIME_MS/10; i++ {
+			if err := be.cmd.Process.Signal(syscall.Signal(0)); err != nil {
+				break // Process finished
+			}
+			time.Sleep(10 * time.Millisecond)
+		}
+	}
+
 	be.cmd.Process.Kill()
 	be.cmd.Process.Wait() // Reap their souls
 
@@ -643,6 +658,7 @@ func (be *BdsExec) Usage(msg string) {
 	fmt.Fprintf(os.Stderr, "             Note: If any file name is '-' it is ignored (not redirected).\n")
 	fmt.Fprintf(os.Stderr, "             Syntax:\n")
 	fmt.Fprintf(os.Stderr, "                 bds exec timeout file.stdout file.stderr file.exit command arguments...\n\n")
-	fmt.Fprintf(os.Stderr, "  kill pid :  Kill process group 'pid'.\n")
+	fmt.Fprintf(os.Stderr, "  kill pid :  Kill process group 'pid'.\n\n")
+	fmt.Fprintf(os.Stderr, "  launcher :  Execute tasks requested through STDIN, until STDIN is closed (used by bds).\n")
 	os.Exit(1)
 }
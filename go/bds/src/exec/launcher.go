@@ -0,0 +1,230 @@
+package exec
+
+import (
+	"bufio"
+	"fmt"
+	"log"
+	"os"
+	"os/exec"
+	"strconv"
+	"strings"
+	"sync"
+	"syscall"
+	"time"
+
+	"fileutil"
+)
+
+/*
+	Launcher: A long lived process that executes local tasks on behalf
+	of bds (Java). This avoids starting one 'bds exec' process per task.
+
+	Requests are read from STDIN, one per line (tab separated):
+		exec \t id \t timeout \t file.stdout \t file.stderr \t file.exit \t command arguments...
+		kill \t id
+
+	Replies are written to STDOUT, one per line (tab separated):
+		pid \t id \t pid         : Task started (pid is also the task's process group)
+		usage \t id \t maxRssKb \t userMs \t sysMs \t inBlocks \t outBlocks : Resources used by a finished task (from 'wait4' rusage)
+		exit \t id \t exitStr    : Task finished ('exitStr' is also written to 'file.exit')
+		error \t id \t message   : Task could not be started
+
+	When STDIN is closed (e.g. bds finished or died), all running tasks are killed
+*/
+type Launcher struct {
+	cmds     map[string]*exec.Cmd // Running commands, by task id
+	mutex    sync.Mutex           // Protects 'cmds'
+	outMutex sync.Mutex           // Replies are written by many goroutines
+}
+
+/*
+	Run launcher until STDIN is closed
+*/
+func (be *BdsExec) Launcher() int {
+	if DEBUG {
+		log.Print("Debug: Launcher\n")
+	}
+
+	l := &Launcher{cmds: make(map[string]*exec.Cmd)}
+
+	reader := bufio.NewReader(os.Stdin)
+	for {
+		line, err := fileutil.ReadLine(reader)
+		if err != nil {
+			break
+		}
+
+		recs := strings.Split(line, "\t")
+		if recs[0] == "exec" && len(recs) >= 7 {
+			l.exec(recs[1], recs[2], recs[3], recs[4], recs[5], recs[6:])
+		} else if recs[0] == "kill" && len(recs) >= 2 {
+			l.kill(recs[1])
+		} else {
+			log.Printf("Error: Launcher, invalid request '%s'\n", line)
+		}
+	}
+
+	// Input closed: Kill all running tasks
+	l.killAll()
+	return EXITCODE_OK
+}
+
+/*
+	Create a file to redirect output ('-' or empty means do not redirect)
+*/
+func createOutFile(fileName string) *os.File {
+	if fileName == "" || fileName == "-" {
+		return nil
+	}
+
+	file, err := os.Create(fileName)
+	if err != nil {
+		log.Printf("Error: Launcher, cannot create file '%s': %s\n", fileName, err)
+		return nil
+	}
+	return file
+}
+
+/*
+	Start a task and wait for it (in a goroutine)
+*/
+func (l *Launcher) exec(id, timeStr, outFile, errFile, exitFile string, cmdargs []string) {
+	if DEBUG {
+		log.Printf("Debug, Launcher exec: Task '%s', command %v\n", id, cmdargs)
+	}
+
+	// Parse time argument
+	timeSecs, err := strconv.Atoi(timeStr)
+	if err != nil {
+		l.reply("error", id, "Invalid time '"+timeStr+"'")
+		return
+	}
+	if timeSecs <= 0 {
+		timeSecs = 31536000 // Default: One year
+	}
+
+	// Create command. Use a new process group, so we can kill all child processes
+	cmd := exec.Command(cmdargs[0])
+	cmd.Args = cmdargs
+	cmd.SysProcAttr = &syscall.SysProcAttr{Setpgid: true}
+
+	// Redirect STDOUT and STDERR to files (STDIN is not connected: we are using it)
+	stdout := createOutFile(outFile)
+	stderr := createOutFile(errFile)
+	if stdout != nil {
+		cmd.Stdout = stdout
+		defer stdout.Close()
+	}
+	if stderr != nil {
+		cmd.Stderr = stderr
+		defer stderr.Close()
+	}
+
+	// Start process
+	if err = cmd.Start(); err != nil {
+		l.reply("error", id, err.Error())
+		return
+	}
+
+	l.mutex.Lock()
+	l.cmds[id] = cmd
+	l.mutex.Unlock()
+
+	l.reply("pid", id, strconv.Itoa(cmd.Process.Pid))
+	go l.wait(id, cmd, exitFile, timeSecs)
+}
+
+/*
+	Kill a task (send a signal to the task's process group)
+*/
+func (l *Launcher) kill(id string) {
+	l.mutex.Lock()
+	cmd := l.cmds[id]
+	l.mutex.Unlock()
+
+	if cmd != nil {
+		if DEBUG {
+			log.Printf("Debug, Launcher kill: Task '%s', pid %d\n", id, cmd.Process.Pid)
+		}
+		syscall.Kill(-cmd.Process.Pid, syscall.SIGHUP)
+		cmd.Process.Kill()
+	}
+}
+
+/*
+	Kill all running tasks
+*/
+func (l *Launcher) killAll() {
+	ids := make([]string, 0)
+
+	l.mutex.Lock()
+	for id := range l.cmds {
+		ids = append(ids, id)
+	}
+	l.mutex.Unlock()
+
+	for _, id := range ids {
+		l.kill(id)
+	}
+}
+
+/*
+	Write a reply to STDOUT
+*/
+func (l *Launcher) reply(msgType, id, value string) {
+	l.outMutex.Lock()
+	defer l.outMutex.Unlock()
+
+	fmt.Printf("%s\t%s\t%s\n", msgType, id, strings.Replace(value, "\n", " ", -1))
+}
+
+/*
+	Report resources used by a finished task
+*/
+func (l *Launcher) usage(id string, cmd *exec.Cmd) {
+	if cmd.ProcessState == nil {
+		return
+	}
+
+	ru, ok := cmd.ProcessState.SysUsage().(*syscall.Rusage)
+	if !ok || ru == nil {
+		return
+	}
+
+	usage := fmt.Sprintf("%d\t%d\t%d\t%d\t%d", ru.Maxrss, cmd.ProcessState.UserTime().Nanoseconds()/1000000, cmd.ProcessState.SystemTime().Nanoseconds()/1000000, ru.Inblock, ru.Oublock)
+	l.reply("usage", id, usage)
+}
+
+/*
+	Wait for a task to finish (or timeout), write exit file and report exit status
+*/
+func (l *Launcher) wait(id string, cmd *exec.Cmd, exitFile string, timeSecs int) {
+	exitCode := make(chan string, 1)
+	go execute(cmd, exitCode)
+
+	exitStr := ""
+	select {
+	case exitStr = <-exitCode:
+		if DEBUG {
+			log.Printf("Debug, Launcher wait: Task '%s' finished (%s)\n", id, exitStr)
+		}
+		l.usage(id, cmd)
+
+	case <-time.After(time.Duration(timeSecs) * time.Second):
+		exitStr = "Time out"
+		if DEBUG {
+			log.Printf("Debug, Launcher wait: Task '%s' timeout!\n", id)
+		}
+		l.kill(id)
+	}
+
+	l.mutex.Lock()
+	delete(l.cmds, id)
+	l.mutex.Unlock()
+
+	// Write exitCode to file and report it
+	if (exitFile != "") && (exitFile != "-") {
+		fileutil.WriteFile(exitFile, exitStr)
+	}
+	l.reply("exit", id, exitStr)
+}
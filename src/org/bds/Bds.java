@@ -40,6 +40,7 @@ import org.bds.lang.TypeList;
 import org.bds.lang.VarDeclaration;
 import org.bds.lang.nativeFunctions.NativeLibraryFunctions;
 import org.bds.lang.nativeMethods.string.NativeLibraryString;
+import org.bds.report.MetricsServer;
 import org.bds.run.BdsThread;
 import org.bds.run.HelpCreator;
 import org.bds.run.RunState;
@@ -74,6 +75,7 @@ public class Bds {
 	boolean dryRun; // Dry run (do not run tasks)
 	boolean extractSource; // Extract source code form checkpoint (nly valid on recovery mode)
 	boolean log; // Log everything (keep STDOUT, SDTERR and ExitCode files)
+	boolean profile; // Profile bds program
 	Boolean noCheckpoint; // Do not create checkpoint files
 	Boolean noRmOnExit; // Do not remove temp files on exit
 	boolean quiet; // Quiet mode
@@ -346,6 +348,7 @@ public class Bds {
 		config.setVerbose(verbose);
 		config.setDebug(debug);
 		config.setLog(log);
+		config.setProfile(profile);
 		config.setDryRun(dryRun);
 		config.setTaskFailCount(taskFailCount);
 		config.setReportFileName(reportFileName);
@@ -515,7 +518,10 @@ public class Bds {
 		globalScope.add(new ScopeSymbol(ExpressionTask.TASK_OPTION_NODE, Type.STRING, node)); // Default node: none
 		globalScope.add(new ScopeSymbol(ExpressionTask.TASK_OPTION_CAN_FAIL, Type.BOOL, false)); // Task fail triggers checkpoint & exit (a task cannot fail)
 		globalScope.add(new ScopeSymbol(ExpressionTask.TASK_OPTION_ALLOW_EMPTY, Type.BOOL, false)); // Tasks are allowed to have empty output file/s
+		globalScope.add(new ScopeSymbol(ExpressionTask.TASK_OPTION_IDEMPOTENT, Type.BOOL, false)); // Task can be safely executed more than once (speculative execution)
 		globalScope.add(new ScopeSymbol(ExpressionTask.TASK_OPTION_RETRY, Type.INT, (long) taskFailCount)); // Task fail can be re-tried (re-run) N times before considering failed.
+		globalScope.add(new ScopeSymbol(ExpressionTask.TASK_OPTION_USE_POOLS, Type.STRING, "")); // Resources requested from named pools (e.g. "db:1"). Default: none
+		globalScope.add(new ScopeSymbol(Scope.GLOBAL_VAR_POOL_CAPACITY, Type.STRING, "")); // Named resource pools declared in the program (e.g. "db:4"). Default: none (see config file)
 		globalScope.add(new ScopeSymbol(ExpressionTask.TASK_OPTION_TIMEOUT, Type.INT, timeout)); // Task default timeout
 		globalScope.add(new ScopeSymbol(ExpressionTask.TASK_OPTION_WALL_TIMEOUT, Type.INT, wallTimeout)); // Task default wall-timeout
 		globalScope.add(new ScopeSymbol(Scope.GLOBAL_VAR_LOCAL_CPUS, Type.INT, cpusLocal));
@@ -692,6 +698,10 @@ public class Bds {
 					else usage("Option '-pid' without file argument");
 					break;
 
+				case "-profile":
+					profile = true;
+					break;
+
 				case "-q":
 				case "-queue":
 					// Queue name
@@ -794,6 +804,14 @@ public class Bds {
 			return 0;
 		}
 
+		// Metrics HTTP server
+		MetricsServer metricsServer = null;
+		if (config.getMetricsPort() > 0) {
+			metricsServer = new MetricsServer(config.getMetricsHost(), config.getMetricsPort());
+			metricsServer.setDebug(debug);
+			metricsServer.start();
+		}
+
 		//---
 		// Run
 		//---
@@ -823,6 +841,7 @@ public class Bds {
 			executioner.kill();
 
 		config.kill(); // Kill 'tail' and 'monitor' threads
+		if (metricsServer != null) metricsServer.kill();
 
 		return exitValue;
 	}
@@ -1063,6 +1082,7 @@ public class Bds {
 		System.err.println("  -noReport                      : Do not create any report (neither HTML nor YAML).");
 		System.err.println("  -noReportHtml                  : Do not create HTML report.");
 		System.err.println("  -noRmOnExit                    : Do not remove files marked for deletion on exit (rmOnExit). Default: " + noRmOnExit);
+		System.err.println("  -profile                       : Profile bds program: Create folded stacks (flame graphs) and time per line files. Default: " + profile);
 		System.err.println("  [-q | -queue  ] queueName      : Set default queue name.");
 		System.err.println("  -quiet                         : Do not show any messages or tasks outputs on STDOUT. Default: " + quiet);
 		System.err.println("  -reportHtml                    : Create HTML report. Default: " + reportHtml);
@@ -10,11 +10,20 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Properties;
 
+import org.bds.cluster.ResourcePools;
+import org.bds.executioner.ExecutionerHybrid;
+import org.bds.executioner.Executioners.ExecutionerType;
 import org.bds.executioner.MonitorTask;
+import org.bds.executioner.MonitorTaskResources;
+import org.bds.executioner.TaskEventLog;
 import org.bds.executioner.TaskLogger;
+import org.bds.report.ReportIncremental;
+import org.bds.run.Profiler;
 import org.bds.task.Tail;
 import org.bds.task.TailFile;
 import org.bds.task.Task;
+import org.bds.task.TaskCleanup;
+import org.bds.task.TaskStore;
 import org.bds.util.Gpr;
 import org.bds.util.Timer;
 
@@ -54,6 +63,11 @@ public class Config {
 	public static final String DISABLE_CHECKPOINT_CREATE = "disableCheckpoint";
 	public static final String DISABLE_RM_ON_EXIT = "disableRmOnExit";
 	public static final String TAIL_LINES = "tailLines"; // Number of lie to use in 'tail'
+	public static final String TAIL_RATE_LIMIT = "tailRateLimit"; // Maximum number of lines per second shown from all tasks
+	public static final String TAIL_RATE_LIMIT_TASK = "tailRateLimitTask"; // Maximum number of lines per second shown from each task's STDOUT / STDERR
+	public static final String TAIL_WATCH = "tailWatch"; // Use file notifications when following tasks' STDOUT / STDERR files
+	public static final double DEFAULT_TAIL_RATE_LIMIT = 0; // Unlimited
+	public static final double DEFAULT_TAIL_RATE_LIMIT_TASK = 0; // Unlimited
 	public static final String FILTER_OUT_TASK_HINT = "filterOutTaskHint"; // Lines to filter out from task hint
 	public static final String SHOW_TASK_CODE = "showTaskCode"; // Always show task's code (sys commands)
 
@@ -68,6 +82,11 @@ public class Config {
 	public static final String CLUSTER_STAT_ADDITIONAL_ARGUMENTS = "clusterStatAdditionalArgs"; // Cluster additional command line arguments (when requesting information about all tasks)
 	public static final String CLUSTER_POSTMORTEMINFO_ADDITIONAL_ARGUMENTS = "clusterPostMortemInfoAdditionalArgs"; // Cluster additional command line arguments (when requesting information about a failed task)
 	public static final String CLUSTER_POSTMORTEMINFO_DISABLED = "clusterPostMortemDisabled"; // Some clusters do not provide information after the process dies
+	public static final String CLUSTER_STAT_INTERVAL_MIN = "clusterStatIntervalMin"; // Minimum number of seconds between cluster 'stat' commands
+	public static final String CLUSTER_STAT_INTERVAL_MAX = "clusterStatIntervalMax"; // Maximum number of seconds between cluster 'stat' commands
+	public static final String CLUSTER_STAT_JOB_IDS = "clusterStatJobIds"; // Add job IDs to cluster 'stat' command (query only our own jobs)
+	public static final String CLUSTER_STAT_CACHE = "clusterStatCache"; // Share cluster 'stat' output amongst all bds processes from the same user
+	public static final String CLUSTER_STAT_CACHE_MAX_AGE = "clusterStatCacheMaxAge"; // Maximum age (in seconds) of a shared cluster 'stat' output
 
 	// Generic cluster
 	public static final String CLUSTER_GENERIC_RUN = "clusterGenericRun";
@@ -87,6 +106,32 @@ public class Config {
 
 	public static final String TASK_MAX_HINT_LEN = "taskMaxHintLen";
 
+	public static final String LOG_SHARDS = "logShards"; // Spread task files over this number of sub-directories
+	public static final String TASK_EVENT_LOG = "taskEventLog"; // Log task events (JSON Lines) to '<programId>.events.jsonl'
+	public static final String TASK_STORE = "taskStore"; // Move finished tasks' bulky information (program, file names, etc.) from memory to disk
+	public static final String SPECULATIVE_FACTOR = "speculativeFactor"; // Launch a copy of an idempotent task running this many times longer than its peers' median. Zero disables it
+	public static final String RESOURCE_POOLS = "resourcePools"; // Named resource pools and their capacity (e.g. "db:4, download:20")
+	public static final String METRICS_HOST = "metricsHost"; // Metrics HTTP server: Bind to this address
+	public static final String METRICS_PORT = "metricsPort"; // Metrics HTTP server port. Zero disables the server
+	public static final String PROFILE_INTERVAL = "profileInterval"; // Profiler ('-profile' command line option): Sample every this number of milliseconds
+	public static final String REPORT_INCREMENTAL = "reportIncremental"; // Render tasks' report sections in the background, as tasks finish
+	public static final String SSH_LOCALITY_DELAY = "sshLocalityDelay"; // Ssh cluster: Wait up to this number of seconds for the host that created task's inputs. Zero disables data locality
+
+	public static final String HYBRID_CLUSTER = "hybridCluster"; // Cluster system used by 'hybrid' executioner
+	public static final String HYBRID_OVERFLOW = "hybridOverflow"; // 'hybrid' executioner: Overflow to cluster when local queue has this many tasks waiting
+	public static final String HYBRID_SHORT_TASK = "hybridShortTask"; // 'hybrid' executioner: Tasks shorter than this number of seconds (according to previous runs) always run locally
+
+	public static final String LOCAL_LAUNCHER = "localLauncher"; // Execute local tasks using a long lived launcher process (instead of one 'bds exec' per task)
+	public static final String LOCAL_SCRIPT_STDIN = "localScriptStdin"; // Feed local task's programs through STDIN (instead of creating program files)
+	public static final String LOCAL_PROCESS_REAPER = "localProcessReaper"; // Wait for all local processes from a single thread (instead of one thread per process)
+	public static final String LOCAL_MEM_ADMISSION = "localMemAdmission"; // Admit local tasks based on measured (instead of declared) memory
+	public static final String LOCAL_MEM_RESERVE = "localMemReserve"; // Memory to keep available when admitting local tasks
+	public static final String LOCAL_MEM_FREEZE = "localMemFreeze"; // Freeze (SIGSTOP) newest local task under memory pressure
+
+	public static final String MONITOR_TASK_WATCH = "monitorTaskWatch"; // Use a WatchService to detect exit files (instead of polling)
+	public static final String MONITOR_TASK_RESCAN = "monitorTaskRescan"; // Full re-scan of exit files every this number of seconds
+	public static final String MONITOR_TASK_RESOURCES = "monitorTaskResources"; // Sample resources used by tasks every this number of seconds (zero disables)
+
 	private static Config configInstance = null; // Config is some kind of singleton because we want to make it accessible from everywhere
 
 	public static final String[] EMPTY_STRING_ARRAY = new String[0];
@@ -98,7 +143,15 @@ public class Config {
 	boolean dryRun = false; // Is this a dry run? (i.e. don't run commands, just show what they do).
 	boolean noCheckpoint; // Do not create checkpoint files
 	boolean noRmOnExit; // Avoid removing files on exit
+	boolean profile; // Profile bds program (sample program counters)
 	boolean extractSource = false; // Extract source code from checkpoint file
+	boolean localLauncher; // Use a launcher process for local tasks
+	boolean localMemAdmission; // Admit local tasks based on measured memory
+	boolean localMemFreeze; // Freeze newest local task under memory pressure
+	boolean localProcessReaper; // Wait for local processes from a single thread
+	int logShards; // Number of sub-directories used for task files (zero means no sub-directories)
+	boolean taskStoreEnabled; // Move finished tasks' information to disk
+	boolean localScriptStdin; // Feed local task's programs through STDIN
 	boolean reportYaml = false; // Use YAML report format
 	boolean reportHtml = true; // Use HTML report format
 	boolean showTaskCode; // Always show task's code (sys statements)
@@ -116,6 +169,12 @@ public class Config {
 	ArrayList<String> includePath;
 	ArrayList<String> filterOutTaskHint;
 	TaskLogger taskLogger;
+	TaskCleanup taskCleanup;
+	TaskEventLog taskEventLog;
+	TaskStore taskStore;
+	ResourcePools resourcePools;
+	ReportIncremental reportIncremental;
+	Profiler profiler;
 	MonitorTask monitorTask;
 	Tail tail;
 
@@ -177,6 +236,18 @@ public class Config {
 		return filterOutTaskHint;
 	}
 
+	public String getHybridCluster() {
+		return getString(HYBRID_CLUSTER, ExecutionerType.CLUSTER.toString().toLowerCase());
+	}
+
+	public int getHybridOverflow() {
+		return (int) getLong(HYBRID_OVERFLOW, Gpr.NUM_CORES);
+	}
+
+	public int getHybridShortTask() {
+		return (int) getLong(HYBRID_SHORT_TASK, ExecutionerHybrid.SHORT_TASK);
+	}
+
 	/**
 	 * A collection of strings showing where to search for include files
 	 *
@@ -207,6 +278,19 @@ public class Config {
 		return includePath;
 	}
 
+	/**
+	 * Memory to keep available when admitting local tasks
+	 * @return Memory in bytes or -1 if not set
+	 */
+	public long getLocalMemReserve() {
+		String memReserve = getString(LOCAL_MEM_RESERVE, "");
+		return memReserve.isEmpty() ? -1 : Gpr.parseMemSafe(memReserve);
+	}
+
+	public int getLogShards() {
+		return logShards;
+	}
+
 	/**
 	 * Get a property as a long
 	 */
@@ -234,15 +318,32 @@ public class Config {
 		return maxThreads;
 	}
 
+	public String getMetricsHost() {
+		return getString(METRICS_HOST, "localhost");
+	}
+
+	public int getMetricsPort() {
+		return (int) getLong(METRICS_PORT, 0);
+	}
+
 	public MonitorTask getMonitorTask() {
 		if (monitorTask == null) {
 			monitorTask = new MonitorTask();
 			monitorTask.setDebug(isDebug());
 			monitorTask.setVerbose(isVerbose());
+			monitorTask.setWatch(getBool(MONITOR_TASK_WATCH, true));
+			monitorTask.setRescanTime((int) getLong(MONITOR_TASK_RESCAN, MonitorTask.RESCAN_TIME));
 		}
 		return monitorTask;
 	}
 
+	/**
+	 * Sample task's resource usage every this number of seconds
+	 */
+	public int getMonitorTaskResources() {
+		return (int) getLong(MONITOR_TASK_RESOURCES, MonitorTaskResources.SAMPLE_TIME);
+	}
+
 	public String getPidFile() {
 		return pidFile;
 	}
@@ -269,10 +370,45 @@ public class Config {
 		return pidRegex;
 	}
 
+	/**
+	 * Profiler: Sample every this number of milliseconds
+	 */
+	public int getProfileInterval() {
+		return (int) getLong(PROFILE_INTERVAL, Profiler.SAMPLE_TIME);
+	}
+
+	public Profiler getProfiler() {
+		return profiler;
+	}
+
 	public String getReportFileName() {
 		return reportFileName;
 	}
 
+	public ReportIncremental getReportIncremental() {
+		return reportIncremental;
+	}
+
+	/**
+	 * Named resource pools (shared by all executioners)
+	 */
+	public synchronized ResourcePools getResourcePools() {
+		if (resourcePools == null) {
+			resourcePools = new ResourcePools();
+			resourcePools.setDebug(isDebug());
+			resourcePools.declare(getString(RESOURCE_POOLS, ""));
+		}
+		return resourcePools;
+	}
+
+	public double getSpeculativeFactor() {
+		return getDouble(SPECULATIVE_FACTOR, 0);
+	}
+
+	public int getSshLocalityDelay() {
+		return (int) getLong(SSH_LOCALITY_DELAY, 0);
+	}
+
 	/**
 	 * Get a property as a string
 	 */
@@ -333,6 +469,8 @@ public class Config {
 			tail.setDebug(isDebug());
 			tail.setVerbose(isVerbose());
 			tail.setQuiet(isQuiet());
+			tail.setRateLimit(getDouble(TAIL_RATE_LIMIT, DEFAULT_TAIL_RATE_LIMIT), getDouble(TAIL_RATE_LIMIT_TASK, DEFAULT_TAIL_RATE_LIMIT_TASK));
+			tail.setWatch(getBool(TAIL_WATCH, true));
 			tail.start(); // Create a 'tail' process (to show STDOUT & STDERR from all processes)
 		}
 		return tail;
@@ -346,6 +484,19 @@ public class Config {
 		return taskFailCount;
 	}
 
+	public TaskCleanup getTaskCleanup() {
+		if (taskCleanup == null) {
+			taskCleanup = new TaskCleanup();
+			taskCleanup.setDebug(isDebug());
+			taskCleanup.start(); // Delete files in the background
+		}
+		return taskCleanup;
+	}
+
+	public TaskEventLog getTaskEventLog() {
+		return taskEventLog;
+	}
+
 	public TaskLogger getTaskLogger() {
 		if (taskLogger == null) {
 			taskLogger = new TaskLogger(getPidFile());
@@ -365,6 +516,17 @@ public class Config {
 		return taskMaxHintLen;
 	}
 
+	/**
+	 * Task store (null if disabled)
+	 */
+	public TaskStore getTaskStore() {
+		if (taskStore == null && taskStoreEnabled) {
+			taskStore = new TaskStore(getTmpDir() + "/bds.taskStore." + (new Date()).getTime() + ".bin");
+			taskStore.setDebug(isDebug());
+		}
+		return taskStore;
+	}
+
 	public String getTaskShell() {
 		return getString(Config.TASK_SHELL, Config.TASK_SHELL_DEFAULT);
 	}
@@ -405,6 +567,26 @@ public class Config {
 		return extractSource;
 	}
 
+	public boolean isLocalLauncher() {
+		return localLauncher;
+	}
+
+	public boolean isLocalMemAdmission() {
+		return localMemAdmission;
+	}
+
+	public boolean isLocalMemFreeze() {
+		return localMemFreeze;
+	}
+
+	public boolean isLocalProcessReaper() {
+		return localProcessReaper;
+	}
+
+	public boolean isLocalScriptStdin() {
+		return localScriptStdin;
+	}
+
 	public boolean isLog() {
 		return log;
 	}
@@ -417,6 +599,10 @@ public class Config {
 		return noRmOnExit;
 	}
 
+	public boolean isProfile() {
+		return profile;
+	}
+
 	public boolean isQuiet() {
 		return quiet;
 	}
@@ -425,6 +611,10 @@ public class Config {
 		return reportHtml;
 	}
 
+	public boolean isReportIncremental() {
+		return getBool(REPORT_INCREMENTAL, false);
+	}
+
 	public boolean isReportYaml() {
 		return reportYaml;
 	}
@@ -433,6 +623,10 @@ public class Config {
 		return showTaskCode;
 	}
 
+	public boolean isTaskEventLog() {
+		return getBool(TASK_EVENT_LOG, false);
+	}
+
 	public boolean isVerbose() {
 		return verbose;
 	}
@@ -444,9 +638,36 @@ public class Config {
 		}
 
 		if (monitorTask != null) {
-			// monitorTask.kill();
+			monitorTask.kill();
 			monitorTask = null;
 		}
+
+		if (taskLogger != null) taskLogger.close(); // Flush PID file
+
+		if (taskCleanup != null) {
+			taskCleanup.kill(); // Delete all pending files
+			taskCleanup = null;
+		}
+
+		if (profiler != null) {
+			profiler.kill(); // Write profile files
+			profiler = null;
+		}
+
+		if (taskEventLog != null) {
+			taskEventLog.close(); // Write pending events
+			taskEventLog = null;
+		}
+
+		if (reportIncremental != null) {
+			reportIncremental.kill(); // Delete temporary section files
+			reportIncremental = null;
+		}
+
+		if (taskStore != null) {
+			taskStore.close(); // Delete store file
+			taskStore = null;
+		}
 	}
 
 	/**
@@ -456,6 +677,13 @@ public class Config {
 		noCheckpoint = getBool(DISABLE_CHECKPOINT_CREATE, false);
 		noRmOnExit = getBool(DISABLE_RM_ON_EXIT, false);
 		showTaskCode = getBool(SHOW_TASK_CODE, false);
+		localLauncher = getBool(LOCAL_LAUNCHER, false);
+		localScriptStdin = getBool(LOCAL_SCRIPT_STDIN, false);
+		localMemAdmission = getBool(LOCAL_MEM_ADMISSION, false);
+		localMemFreeze = getBool(LOCAL_MEM_FREEZE, false);
+		localProcessReaper = getBool(LOCAL_PROCESS_REAPER, false);
+		logShards = (int) getLong(LOG_SHARDS, 0);
+		taskStoreEnabled = getBool(TASK_STORE, false);
 		tailLines = (int) getLong(TAIL_LINES, TailFile.DEFAULT_TAIL);
 
 		// Split and add all items
@@ -535,6 +763,15 @@ public class Config {
 		this.pidFile = pidFile;
 	}
 
+	public void setProfile(boolean profile) {
+		this.profile = profile;
+	}
+
+	public void setProfiler(Profiler profiler) {
+		if (this.profiler != null) this.profiler.kill();
+		this.profiler = profiler;
+	}
+
 	public void setQuiet(boolean quiet) {
 		this.quiet = quiet;
 	}
@@ -547,6 +784,11 @@ public class Config {
 		this.reportHtml = reportHtml;
 	}
 
+	public void setReportIncremental(ReportIncremental reportIncremental) {
+		if (this.reportIncremental != null) this.reportIncremental.kill();
+		this.reportIncremental = reportIncremental;
+	}
+
 	public void setReportYaml(boolean yamlReport) {
 		reportYaml = yamlReport;
 	}
@@ -559,6 +801,11 @@ public class Config {
 		this.tailLines = tailLines;
 	}
 
+	public void setTaskEventLog(TaskEventLog taskEventLog) {
+		if (this.taskEventLog != null) this.taskEventLog.close();
+		this.taskEventLog = taskEventLog;
+	}
+
 	public void setTaskFailCount(int taskFailCount) {
 		this.taskFailCount = taskFailCount;
 	}
@@ -84,6 +84,14 @@ public class ClusterSsh extends Cluster {
 		return sshKeepAlive;
 	}
 
+	/**
+	 * Request a (lightweight) update of host's load
+	 */
+	public void refreshLoad(Host host) {
+		HostHealthUpdater hiu = hostHealthUpdaters.get(host.toString());
+		if (hiu != null) hiu.refreshLoad();
+	}
+
 	/**
 	 * Start running all threads for HostInfoUpdaters
 	 */
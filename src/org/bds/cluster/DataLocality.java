@@ -0,0 +1,111 @@
+package org.bds.cluster;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bds.cluster.host.Host;
+import org.bds.task.Task;
+
+/**
+ * Data locality: Remember which host produced each output file, so
+ * that tasks using those files as inputs can be run on the same host
+ * (e.g. files are cached in host's local scratch disk).
+ *
+ * Delay scheduling: A task waits (up to 'delay' seconds) for its
+ * preferred host to have enough resources, after that it can run
+ * on any host.
+ *
+ * @author pcingola
+ */
+public class DataLocality {
+
+	int delay; // Maximum time (seconds) a task waits for its preferred host
+	Map<String, Long> bytesByFile; // Size of each file, when it was created (so we don't access files while scheduling)
+	Map<String, Host> hostByFile; // Host that created each file
+	Map<Task, Host> hostByTask; // Host where each (running) task was placed
+	Map<Task, Long> waitingSince; // Time when a task started waiting for its preferred host
+
+	public DataLocality(int delay) {
+		this.delay = delay;
+		bytesByFile = new HashMap<>();
+		hostByFile = new HashMap<>();
+		hostByTask = new HashMap<>();
+		waitingSince = new HashMap<>();
+	}
+
+	/**
+	 * Task finished: If it finished OK, its output files are in the host where it ran
+	 */
+	public synchronized void finished(Task task) {
+		waitingSince.remove(task);
+		Host host = hostByTask.remove(task);
+		if (host == null || !task.isDoneOk() || task.getOutputs() == null) return;
+
+		for (String out : task.getOutputs()) {
+			hostByFile.put(out, host);
+			bytesByFile.put(out, new File(out).length() + 1); // Count files, even if they are empty
+		}
+	}
+
+	public synchronized Host getHost(String fileName) {
+		return hostByFile.get(fileName);
+	}
+
+	/**
+	 * Should this task keep waiting for its preferred host?
+	 */
+	public synchronized boolean isWaiting(Task task) {
+		long now = System.currentTimeMillis();
+		Long since = waitingSince.get(task);
+		if (since == null) {
+			since = now;
+			waitingSince.put(task, since);
+		}
+		return now - since < delay * 1000L;
+	}
+
+	/**
+	 * Task placed in a host
+	 */
+	public synchronized void placed(Task task, Host host) {
+		waitingSince.remove(task);
+		hostByTask.put(task, host);
+	}
+
+	/**
+	 * Preferred host for a task: The one that created most of
+	 * the task's input data (null if unknown)
+	 *
+	 * Note: Uses file sizes recorded when the files were created,
+	 * files are not accessed while scheduling
+	 */
+	public synchronized Host preferredHost(Task task) {
+		List<String> inputs = task.getInputs();
+		if (inputs == null || inputs.isEmpty() || hostByFile.isEmpty()) return null;
+
+		// Input bytes by host
+		Map<Host, Long> bytesByHost = new HashMap<>();
+		for (String in : inputs) {
+			Host host = hostByFile.get(in);
+			if (host == null) continue;
+
+			Long sum = bytesByHost.get(host);
+			bytesByHost.put(host, (sum != null ? sum : 0) + bytesByFile.get(in));
+		}
+
+		// Host with most input bytes
+		Host best = null;
+		long bestBytes = 0;
+		for (Map.Entry<Host, Long> e : bytesByHost.entrySet()) {
+			if (e.getValue() > bestBytes) {
+				best = e.getKey();
+				bestBytes = e.getValue();
+			}
+		}
+
+		return best;
+	}
+
+}
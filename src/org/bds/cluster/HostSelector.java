@@ -0,0 +1,112 @@
+package org.bds.cluster;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostHealth;
+import org.bds.cluster.host.HostSsh;
+
+/**
+ * Select a host to run a task, based on hosts' load.
+ *
+ * Each host is scored using its load average and memory usage, plus
+ * the number of tasks we placed on the host recently (load average
+ * takes a while to reflect new processes). When a task is placed on a
+ * host whose load information is old, a (lightweight) load update is
+ * requested.
+ *
+ * Selection uses 'power of two choices': Two random candidate hosts
+ * are scored and the least loaded one is selected. This avoids sending
+ * all new tasks to the same host (which happens when always selecting
+ * the least loaded host using stale information).
+ *
+ * @author pcingola
+ */
+public class HostSelector {
+
+	public static final int LOAD_REFRESH_TIME = 10; // Request a load update (when placing a task) if host's information is older than this number of seconds
+	public static final int RECENT_TIME = 60; // Tasks placed within this number of seconds are considered 'recent'
+
+	Random random;
+	Map<Host, LinkedList<Long>> placedTimes; // Times when tasks were placed in each host (only recent ones)
+
+	public HostSelector() {
+		this(new Random());
+	}
+
+	public HostSelector(Random random) {
+		this.random = random;
+		placedTimes = new HashMap<>();
+	}
+
+	/**
+	 * Number of tasks placed in this host recently
+	 */
+	public synchronized int countRecent(Host host) {
+		LinkedList<Long> times = placedTimes.get(host);
+		if (times == null) return 0;
+
+		// Remove old entries
+		long old = System.currentTimeMillis() - RECENT_TIME * 1000L;
+		for (Iterator<Long> it = times.iterator(); it.hasNext() && it.next() < old;)
+			it.remove();
+
+		return times.size();
+	}
+
+	/**
+	 * A task was placed in this host
+	 */
+	public synchronized void placed(Host host) {
+		LinkedList<Long> times = placedTimes.get(host);
+		if (times == null) {
+			times = new LinkedList<>();
+			placedTimes.put(host, times);
+		}
+		long now = System.currentTimeMillis();
+		times.add(now);
+
+		// Host's load information is old? Request an update
+		if (host instanceof HostSsh && host.getCluster() instanceof ClusterSsh) {
+			HostHealth health = ((HostSsh) host).getHealth();
+			if (now - health.getLatestUpdate() > LOAD_REFRESH_TIME * 1000L) ((ClusterSsh) host.getCluster()).refreshLoad(host);
+		}
+	}
+
+	/**
+	 * Host's score: Lower is better
+	 */
+	public synchronized double score(Host host) {
+		double loadAvg = 0, memUsage = 0;
+		if (host instanceof HostSsh) {
+			HostHealth health = ((HostSsh) host).getHealth();
+			loadAvg = health.getLoadAvg();
+			memUsage = health.getMemUsage();
+		}
+
+		int cpus = Math.max(1, host.getResources().getCpus());
+		return (loadAvg + countRecent(host)) / cpus + memUsage;
+	}
+
+	/**
+	 * Select a host from a list of candidates (power of two choices)
+	 */
+	public synchronized Host select(List<Host> candidates) {
+		if (candidates.isEmpty()) return null;
+		if (candidates.size() == 1) return candidates.get(0);
+
+		// Two different random candidates
+		int i = random.nextInt(candidates.size());
+		int j = random.nextInt(candidates.size() - 1);
+		if (j >= i) j++;
+
+		Host hi = candidates.get(i), hj = candidates.get(j);
+		return score(hi) <= score(hj) ? hi : hj;
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.bds.cluster;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bds.task.Task;
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * Named resource pools: Limit the number of tasks using a shared
+ * resource concurrently (e.g. "no more than 4 tasks accessing the
+ * database at once").
+ *
+ * Pools are declared either in the config file or in the program,
+ * using a comma separated list of 'name:capacity' (e.g. "db:4, download:20").
+ * Tasks request resources using the same format (e.g. 'task(usePools="db:1")').
+ *
+ * Pools are shared by all executioners. A task can only be selected to
+ * run if all its requested resources can be acquired; resources are
+ * released when the task finishes. Requests for pools that were not
+ * declared are not limited.
+ *
+ * @author pcingola
+ */
+public class ResourcePools {
+
+	boolean debug;
+	String declared; // Latest declaration parsed
+	Map<String, Integer> capacity; // Pool capacity, by name
+	Map<String, Integer> used; // Pool resources in use, by name
+	Map<Task, Map<String, Integer>> acquired; // Resources held by each task
+	Set<String> warned; // Undeclared pools (warning already shown)
+
+	/**
+	 * Parse a list of 'name:amount' (amount defaults to 1)
+	 */
+	public static Map<String, Integer> parse(String spec) {
+		Map<String, Integer> resources = new HashMap<>();
+		if (spec == null || spec.trim().isEmpty()) return resources;
+
+		for (String res : spec.split(",")) {
+			res = res.trim();
+			if (res.isEmpty()) continue;
+
+			String nameAmount[] = res.split(":");
+			String name = nameAmount[0].trim();
+			int amount = nameAmount.length > 1 ? Gpr.parseIntSafe(nameAmount[1].trim()) : 1;
+			if (name.isEmpty() || nameAmount.length > 2 || amount <= 0) throw new RuntimeException("Invalid resource '" + res + "'. Expected format 'name:amount'");
+
+			Integer prev = resources.get(name);
+			resources.put(name, (prev != null ? prev : 0) + amount);
+		}
+
+		return resources;
+	}
+
+	public ResourcePools() {
+		capacity = new HashMap<>();
+		used = new HashMap<>();
+		acquired = new HashMap<>();
+		warned = new HashSet<>();
+	}
+
+	/**
+	 * Acquire all resources requested by a task (all or nothing)
+	 * @return true if resources were acquired (or the task does not need any)
+	 */
+	public synchronized boolean acquire(Task task) {
+		Map<String, Integer> req = task.getResources().getPools();
+		if (req == null || req.isEmpty()) return true;
+		if (acquired.containsKey(task)) return true; // Already acquired
+
+		// Check availability
+		for (Map.Entry<String, Integer> e : req.entrySet()) {
+			String name = e.getKey();
+			if (!capacity.containsKey(name)) {
+				if (warned.add(name)) Timer.showStdErr("WARNING: Resource pool '" + name + "' has not been declared, it will not be limited");
+				continue;
+			}
+			if (getAvailable(name) < e.getValue()) return false;
+		}
+
+		// Acquire
+		for (Map.Entry<String, Integer> e : req.entrySet())
+			used.put(e.getKey(), getUsed(e.getKey()) + e.getValue());
+		acquired.put(task, req);
+
+		if (debug) Timer.showStdErr("ResourcePools: Task '" + task.getId() + "' acquired " + req + ", in use: " + used);
+		return true;
+	}
+
+	/**
+	 * Declare pools (comma separated list of 'name:capacity')
+	 */
+	public synchronized void declare(String spec) {
+		if (spec == null || spec.equals(declared)) return;
+		capacity.putAll(parse(spec));
+		declared = spec;
+	}
+
+	/**
+	 * Does this task request more resources than a pool's capacity? (i.e. it can never run)
+	 */
+	public synchronized boolean exceedsCapacity(Task task) {
+		Map<String, Integer> req = task.getResources().getPools();
+		if (req == null) return false;
+
+		for (Map.Entry<String, Integer> e : req.entrySet()) {
+			Integer cap = capacity.get(e.getKey());
+			if (cap != null && e.getValue() > cap) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Resources available in a pool
+	 */
+	public synchronized int getAvailable(String name) {
+		Integer cap = capacity.get(name);
+		if (cap == null) return Integer.MAX_VALUE; // Not declared: Unlimited
+		return cap - getUsed(name);
+	}
+
+	public synchronized int getCapacity(String name) {
+		Integer cap = capacity.get(name);
+		return cap != null ? cap : -1;
+	}
+
+	int getUsed(String name) {
+		Integer u = used.get(name);
+		return u != null ? u : 0;
+	}
+
+	/**
+	 * Release all resources held by a task (if any)
+	 */
+	public synchronized void release(Task task) {
+		Map<String, Integer> req = acquired.remove(task);
+		if (req == null) return;
+
+		for (Map.Entry<String, Integer> e : req.entrySet())
+			used.put(e.getKey(), getUsed(e.getKey()) - e.getValue());
+
+		if (debug) Timer.showStdErr("ResourcePools: Task '" + task.getId() + "' released " + req + ", in use: " + used);
+	}
+
+	public synchronized void setCapacity(String name, int cap) {
+		capacity.put(name, cap);
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (String name : capacity.keySet())
+			sb.append((sb.length() > 0 ? ", " : "") + name + ": " + getUsed(name) + " / " + capacity.get(name));
+		return sb.toString();
+	}
+
+}
@@ -87,6 +87,7 @@ public class CommandParser {
 
 				// We were able to connect and got some results, so probably the host is alive.
 				if (updateAlive) host.getHealth().setAlive(true);
+				host.getHealth().setLatestUpdate(System.currentTimeMillis());
 			} else {
 				if (debug) Gpr.debug("Error trying to connect: Empty result string");
 				// Could not connect
@@ -119,6 +120,7 @@ public class CommandParser {
 
 		if (command.startsWith("df")) cp = new CommandParserDf(host);
 		else if (command.startsWith("sysctl")) cp = new CommandParserSystemProfiler(host);
+		else if (command.startsWith("ps")) cp = new CommandParserPs(host);
 		else if (command.startsWith("top")) cp = new CommandParserTop(host);
 		else if (command.startsWith("uname")) cp = new CommandParserUname(host);
 		else if (command.startsWith("uptime")) cp = new CommandParserUptime(host);
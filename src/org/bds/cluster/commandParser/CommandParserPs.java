@@ -0,0 +1,62 @@
+package org.bds.cluster.commandParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.bds.cluster.host.HostSsh;
+import org.bds.task.Task;
+import org.bds.task.TaskResourceUsage;
+import org.bds.util.Gpr;
+import org.bds.util.ProcStat;
+
+/**
+ * A command parser for 'ps' command: Measure resources used by
+ * the tasks running on the host
+ *
+ * Tasks' processes are identified by their program file name
+ * (which is part of the process' command line)
+ *
+ * @author pcingola@mcgill.ca
+ */
+public class CommandParserPs extends CommandParser {
+
+	public static boolean debug = false;
+
+	public CommandParserPs(HostSsh host) {
+		super(host, ProcStat.PS_COMMAND);
+	}
+
+	@Override
+	public void parse(String cmdResult[]) {
+		List<Task> tasks = host.getTasksRunning();
+		if (tasks.isEmpty()) return;
+
+		// Parse all processes
+		List<ProcStat> procStats = new ArrayList<ProcStat>();
+		for (String line : cmdResult) {
+			ProcStat ps = ProcStat.parsePs(line);
+			if (ps != null) procStats.add(ps);
+		}
+
+		Map<Integer, ProcStat> byPid = ProcStat.byPid(procStats);
+		Map<Integer, List<ProcStat>> byParent = ProcStat.byParent(procStats);
+
+		for (Task task : tasks) {
+			String programFile = task.getProgramFileName();
+			if (programFile == null) continue;
+
+			// Find task's top process: The program file is executed by 'bds exec', we skip the wrapper
+			List<ProcStat> tree = new ArrayList<ProcStat>();
+			for (ProcStat ps : procStats) {
+				ProcStat parent = byPid.get(ps.getPpid());
+				if (ps.getArgs().contains(programFile) //
+						&& (parent != null && parent.getArgs().contains(programFile)) //
+				) ProcStat.tree(ps.getPid(), byPid, byParent, tree);
+			}
+
+			if (debug) Gpr.debug("Host: " + host + "\ttask: " + task.getId() + "\tprocesses: " + tree.size());
+			if (!tree.isEmpty()) task.getResourceUsage().update(TaskResourceUsage.sum(tree));
+		}
+	}
+}
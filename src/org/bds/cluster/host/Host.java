@@ -1,6 +1,8 @@
 package org.bds.cluster.host;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.bds.cluster.Cluster;
@@ -67,6 +69,13 @@ public class Host implements Comparable<Host> {
 		return resourcesAvaialble;
 	}
 
+	/**
+	 * A copy of the tasks running in this host
+	 */
+	public synchronized List<Task> getTasksRunning() {
+		return new ArrayList<Task>(tasksRunning);
+	}
+
 	public String getUserName() {
 		return userName;
 	}
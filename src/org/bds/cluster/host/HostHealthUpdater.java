@@ -6,10 +6,14 @@ import org.bds.cluster.commandParser.CommandParserCpuInfo;
 import org.bds.cluster.commandParser.CommandParserSystemProfiler;
 import org.bds.cluster.commandParser.CommandParserUname;
 import org.bds.util.Gpr;
+import org.bds.util.ProcStat;
 
 /**
  * Update host's info every now and then (in a separate thread)
  *
+ * Host's load can be also updated on request (see 'refreshLoad()'),
+ * using a faster command than a full update.
+ *
  * @author pcingola
  */
 public class HostHealthUpdater extends Thread {
@@ -18,6 +22,8 @@ public class HostHealthUpdater extends Thread {
 
 	HostSsh host;
 	boolean run = true;
+	volatile boolean refreshLoad; // Load update requested
+	long latestUpdate; // Latest full update
 	String systemType;
 
 	public HostHealthUpdater(HostSsh host) {
@@ -56,12 +62,22 @@ public class HostHealthUpdater extends Thread {
 			while (run) {
 				// This should be run only once
 				if (systemType == null) info();
-				if (run) update();
+
+				// Full update, or only load update (if requested)
+				ClusterSsh cluster = (ClusterSsh) host.getCluster();
+				boolean load = refreshLoad;
+				refreshLoad = false;
+				long next = latestUpdate + cluster.getRefreshTime() * 1000;
+				if (run && System.currentTimeMillis() >= next) {
+					update();
+					latestUpdate = System.currentTimeMillis();
+					next = latestUpdate + cluster.getRefreshTime() * 1000;
+				} else if (run && load) updateLoad();
 
 				// I'd rather sleep this way in order to allow for notifications (i.e. 'wake up call')
 				synchronized (this) {
-					ClusterSsh cluster = (ClusterSsh) host.getCluster();
-					wait(cluster.getRefreshTime() * 1000);
+					long waitTime = next - System.currentTimeMillis();
+					if (run && !refreshLoad && waitTime > 0) wait(waitTime);
 				}
 			}
 		} catch (Exception t) {
@@ -71,6 +87,16 @@ public class HostHealthUpdater extends Thread {
 		}
 	}
 
+	/**
+	 * Request a load update (e.g. a task is being placed in this host)
+	 */
+	public void refreshLoad() {
+		refreshLoad = true;
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
 	public void setRun(boolean run) {
 		this.run = run;
 	}
@@ -87,7 +113,11 @@ public class HostHealthUpdater extends Thread {
 
 		// Select which command parsers to run depending on system type
 		CommandParser commandParser = null;
-		if (systemType.equalsIgnoreCase("Linux")) commandParser = new CommandParser(host, "uptime;df;who;uname -a;cat /proc/meminfo");
+		if (systemType.equalsIgnoreCase("Linux")) {
+			String cmd = "uptime;df;who;uname -a;cat /proc/meminfo";
+			if (!host.getTasksRunning().isEmpty()) cmd += ";" + ProcStat.PS_COMMAND; // Measure resources used by tasks
+			commandParser = new CommandParser(host, cmd);
+		}
 		else if (systemType.equalsIgnoreCase("Darwin")) commandParser = new CommandParser(host, "uptime;df;who;uname -a;top -l 1");
 		else return;
 
@@ -102,4 +132,21 @@ public class HostHealthUpdater extends Thread {
 
 		if (debug) Gpr.debug("Update: End\tHost: " + host + "\talive: " + host.getHealth().isAlive());
 	}
+
+	/**
+	 * Update only host's load and memory usage (faster than 'update()')
+	 */
+	void updateLoad() {
+		if (systemType == null) return;
+		if (debug) Gpr.debug("Update load: Start\tHost: " + host);
+
+		CommandParser commandParser = null;
+		if (systemType.equalsIgnoreCase("Linux")) commandParser = new CommandParser(host, "uptime;cat /proc/meminfo");
+		else if (systemType.equalsIgnoreCase("Darwin")) commandParser = new CommandParser(host, "uptime");
+		else return;
+
+		commandParser.parse();
+		if (debug) Gpr.debug("Update load: End\tHost: " + host + "\tload: " + host.getHealth().getLoadAvg() + "\tmemUsage: " + host.getHealth().getMemUsage());
+	}
+
 }
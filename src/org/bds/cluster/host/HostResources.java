@@ -1,5 +1,8 @@
 package org.bds.cluster.host;
 
+import java.util.Map;
+
+import org.bds.cluster.ResourcePools;
 import org.bds.serialize.BdsSerialize;
 import org.bds.serialize.BdsSerializer;
 import org.bds.util.Gpr;
@@ -13,6 +16,8 @@ import org.bds.util.Timer;
  *
  * Any negative number means "information not available"
  *
+ * Tasks can also request resources from named pools (see ResourcePools)
+ *
  * @author pcingola
  */
 public class HostResources implements Comparable<HostResources>, BdsSerialize, Cloneable {
@@ -24,6 +29,7 @@ public class HostResources implements Comparable<HostResources>, BdsSerialize, C
 	long mem; // Total memory (in Bytes)
 	long timeout; // Time before the process is killed (in seconds). Only processing time, it does not include the time the process is queued for execution by the cluster scheduler.
 	long wallTimeout; // Real time (wall time) before the process is killed (in seconds). This includes the time the process is waiting to be executed.
+	Map<String, Integer> pools; // Resources requested from named pools (e.g. 'db:1'). Null if none
 
 	protected static int nextId() {
 		return ++hostResourcesNum;
@@ -110,6 +116,21 @@ public class HostResources implements Comparable<HostResources>, BdsSerialize, C
 		return getClass().getSimpleName() + ":" + id;
 	}
 
+	public Map<String, Integer> getPools() {
+		return pools;
+	}
+
+	/**
+	 * Resources requested from named pools, in the same format used by 'setPools' (empty if none)
+	 */
+	public String getPoolsSpec() {
+		if (pools == null) return "";
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Integer> e : pools.entrySet())
+			sb.append((sb.length() > 0 ? ", " : "") + e.getKey() + ":" + e.getValue());
+		return sb.toString();
+	}
+
 	public long getTimeout() {
 		return timeout;
 	}
@@ -156,6 +177,7 @@ public class HostResources implements Comparable<HostResources>, BdsSerialize, C
 		mem = hr.mem;
 		timeout = hr.timeout;
 		wallTimeout = hr.wallTimeout;
+		pools = hr.pools;
 	}
 
 	public void setCpus(int cpus) {
@@ -166,6 +188,14 @@ public class HostResources implements Comparable<HostResources>, BdsSerialize, C
 		this.mem = mem;
 	}
 
+	/**
+	 * Set resources requested from named pools (e.g. "db:1, download:2")
+	 */
+	public void setPools(String spec) {
+		pools = ResourcePools.parse(spec);
+		if (pools.isEmpty()) pools = null;
+	}
+
 	public void setTimeout(long timeout) {
 		this.timeout = timeout;
 
@@ -183,6 +213,7 @@ public class HostResources implements Comparable<HostResources>, BdsSerialize, C
 				+ "\tmem: " + Gpr.toStringMem(mem) //
 				+ (timeout > 0 ? "\ttimeout: " + timeout : "") //
 				+ (wallTimeout > 0 ? "\twall-timeout: " + wallTimeout : "") //
+				+ (pools != null ? "\tpools: " + pools : "") //
 		;
 	}
 
@@ -192,6 +223,7 @@ public class HostResources implements Comparable<HostResources>, BdsSerialize, C
 		if (mem > 0) sb.append((sb.length() > 0 ? ", " : "") + "mem: " + Gpr.toStringMem(mem));
 		if (timeout > 0) sb.append((sb.length() > 0 ? ", " : "") + "timeout: " + Timer.toDDHHMMSS(timeout * 1000));
 		if (wallTimeout > 0) sb.append((sb.length() > 0 ? ", " : "") + "walltimeout: " + Timer.toDDHHMMSS(wallTimeout * 1000));
+		if (pools != null) sb.append((sb.length() > 0 ? ", " : "") + "pools: " + pools);
 		return sb.toString();
 	}
 
@@ -0,0 +1,219 @@
+package org.bds.executioner;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import org.bds.osCmd.Exec;
+import org.bds.task.Task;
+import org.bds.util.Gpr;
+import org.bds.util.ProcStat;
+import org.bds.util.Timer;
+
+/**
+ * Admission control for local tasks based on measured memory (instead
+ * of memory declared by tasks).
+ *
+ * A task is admitted only if the host's available memory (from
+ * '/proc/meminfo') minus a 'reserve' is enough to hold the task's
+ * declared memory. Tasks that have not been sampled yet (see
+ * MonitorTaskResources) are counted using their declared memory,
+ * since they might not have allocated it yet.
+ *
+ * Optionally, when available memory drops below half the reserve, the
+ * newest running task is frozen (SIGSTOP) instead of letting the
+ * kernel's OOM killer choose a victim. Frozen tasks are resumed
+ * (SIGCONT) when available memory is back above the reserve.
+ *
+ * Note: Frozen tasks' timeouts are still enforced
+ *
+ * @author pcingola
+ */
+public class AdmissionControl {
+
+	public static final double MEM_RESERVE_RATIO = 0.1; // Default reserve: 10% of total memory
+	public static final int CHECK_TIME = 1; // Check memory pressure every this number of seconds
+
+	boolean debug;
+	boolean verbose;
+	boolean freeze; // Freeze tasks under memory pressure
+	long memAvail; // Memory available in this host (latest read)
+	long memTotal; // Total memory in this host
+	long memReserve; // Memory we should always keep available
+	HashSet<Task> tasks; // Running tasks
+	LinkedList<Task> tasksFrozen; // Tasks frozen (in order)
+	MonitorTaskResources monitorTaskResources;
+	Timer latestCheck;
+	Timer latestMemAvail;
+
+	public AdmissionControl(MonitorTaskResources monitorTaskResources) {
+		this.monitorTaskResources = monitorTaskResources;
+		tasks = new HashSet<Task>();
+		tasksFrozen = new LinkedList<Task>();
+		latestCheck = new Timer();
+		memTotal = ProcStat.memInfo("MemTotal");
+		memReserve = (long) (memTotal * MEM_RESERVE_RATIO);
+	}
+
+	/**
+	 * Add a task that has been selected to run
+	 */
+	public synchronized void add(Task task) {
+		tasks.add(task);
+	}
+
+	/**
+	 * Can this task be executed now?
+	 */
+	public synchronized boolean admit(Task task) {
+		long memAvail = memAvailable();
+		if (memAvail < 0 || tasks.isEmpty()) return true; // No information available or nothing to wait for
+		if (!tasksFrozen.isEmpty()) return false; // We are under memory pressure
+
+		long memTask = Math.max(0, task.getResources().getMem());
+		long headroom = memAvail - memReserve - memPending();
+		boolean ok = headroom > memTask;
+
+		if (!ok && debug) log("Task '" + task.getId() + "' held back: memory available " + Gpr.toStringMem(memAvail) + ", reserve " + Gpr.toStringMem(memReserve) + ", task memory " + Gpr.toStringMem(memTask));
+		return ok;
+	}
+
+	/**
+	 * Check memory pressure: Freeze or resume tasks
+	 */
+	public synchronized void check() {
+		if (!freeze || latestCheck.elapsedSecs() < CHECK_TIME) return;
+		latestCheck.start();
+
+		long memAvail = memAvailable();
+		if (memAvail < 0) return;
+
+		if (memAvail < memReserve / 2) freezeNewest();
+		else if (memAvail >= memReserve && !tasksFrozen.isEmpty()) resume(tasksFrozen.getFirst());
+	}
+
+	/**
+	 * Does this task declare more memory than the host has?
+	 */
+	public boolean exceedsTotal(Task task) {
+		return (memTotal > 0) && (task.getResources().getMem() > memTotal);
+	}
+
+	/**
+	 * Freeze the newest running task (we always leave at least one task running)
+	 */
+	void freezeNewest() {
+		Task newest = null;
+		int running = 0;
+		for (Task task : tasks) {
+			if (tasksFrozen.contains(task) || Gpr.parseIntSafe(task.getPid()) <= 0) continue;
+			running++;
+
+			Date start = task.getRunningStartTime();
+			if (newest == null || (start != null && newest.getRunningStartTime() != null && start.after(newest.getRunningStartTime()))) newest = task;
+		}
+
+		if (running <= 1) return;
+		if (verbose) log("Memory available below " + Gpr.toStringMem(memReserve / 2) + ", freezing task '" + newest.getId() + "'");
+		if (signal(newest, "STOP")) tasksFrozen.add(newest);
+	}
+
+	public long getMemReserve() {
+		return memReserve;
+	}
+
+	public long getMemTotal() {
+		return memTotal;
+	}
+
+	public boolean isFrozen(Task task) {
+		return tasksFrozen.contains(task);
+	}
+
+	void log(String msg) {
+		Timer.showStdErr(getClass().getSimpleName() + ": " + msg);
+	}
+
+	/**
+	 * Memory available in this host. Note: '/proc/meminfo' is
+	 * read at most once every CHECK_TIME seconds
+	 */
+	long memAvailable() {
+		if (latestMemAvail == null || latestMemAvail.elapsedSecs() >= CHECK_TIME) {
+			memAvail = ProcStat.memInfo("MemAvailable");
+			latestMemAvail = new Timer();
+		}
+		return memAvail;
+	}
+
+	/**
+	 * Memory that running tasks have declared, but might have not allocated
+	 * yet (i.e. tasks that have not been sampled since they started)
+	 */
+	long memPending() {
+		long mem = 0;
+		for (Task task : tasks)
+			if (monitorTaskResources.getMemCurrent(task) < 0) mem += Math.max(0, task.getResources().getMem());
+		return mem;
+	}
+
+	/**
+	 * Task finished (or is about to be killed): Remove it (resume if frozen)
+	 */
+	public synchronized void remove(Task task) {
+		tasks.remove(task);
+		if (tasksFrozen.contains(task)) resume(task);
+	}
+
+	/**
+	 * Resume a frozen task
+	 */
+	void resume(Task task) {
+		if (verbose) log("Resuming task '" + task.getId() + "'");
+		signal(task, "CONT");
+		tasksFrozen.remove(task);
+	}
+
+	/**
+	 * Resume all frozen tasks
+	 */
+	public synchronized void resumeAll() {
+		for (Task task : new ArrayList<Task>(tasksFrozen))
+			resume(task);
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public void setFreeze(boolean freeze) {
+		this.freeze = freeze;
+	}
+
+	public void setMemReserve(long memReserve) {
+		this.memReserve = memReserve;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Send a signal to a task's process group
+	 * Note: Local tasks are executed by 'bds exec' (or 'bds launcher')
+	 *       in their own process group, so PID is also the group ID
+	 */
+	boolean signal(Task task, String signal) {
+		String pid = task.getPid();
+		if (Gpr.parseIntSafe(pid) <= 0) return false;
+
+		ArrayList<String> args = new ArrayList<String>();
+		args.add("kill");
+		args.add("-" + signal);
+		args.add("--");
+		args.add("-" + pid);
+		return Exec.exec(args, true).exitValue == 0;
+	}
+
+}
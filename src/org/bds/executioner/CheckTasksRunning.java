@@ -1,9 +1,11 @@
 package org.bds.executioner;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -29,12 +31,18 @@ import org.bds.util.Timer;
 public class CheckTasksRunning {
 
 	public static final int CHECK_TASK_RUNNING_INTERVAL = 60;
+	public static final int CHECK_TASK_RUNNING_INTERVAL_MIN = 15; // Shortest interval when polling adaptively
+	public static final int CHECK_TASK_RUNNING_INTERVAL_MAX = 120; // Longest interval when polling adaptively
 	public static final int TASK_STATE_MIN_START_TIME = 30; // We assume that in less then this number of seconds we might not have a task reported by the cluster system
 	public static final int TASK_NOT_FOUND_DISAPPEARED = 3; // How many times do we have to 'not find' a task to consider it gone
 
 	protected boolean debug;
 	protected boolean verbose;
 	protected Timer time; // Timer for checking that tasks are still running
+	protected int interval; // Current interval between checks (seconds)
+	protected int intervalMin, intervalMax; // Interval adapts between these two values (seconds)
+	protected int minStartTime; // Tasks running for less than this number of seconds are never considered missing
+	protected long snapshotTime; // Time when the command output was produced (milliseconds)
 	protected String[] defaultCmdArgs;
 	protected Executioner executioner;
 	protected ExecResult cmdExecResult;
@@ -47,6 +55,8 @@ public class CheckTasksRunning {
 		this.executioner = executioner;
 		defaultCmdArgs = new String[0];
 		missingCount = new HashMap<String, Integer>();
+		intervalMin = intervalMax = interval = CHECK_TASK_RUNNING_INTERVAL;
+		minStartTime = TASK_STATE_MIN_START_TIME;
 
 		// Set debug
 		debug = config.isDebug();
@@ -75,6 +85,7 @@ public class CheckTasksRunning {
 	 */
 	public void check() {
 		if (!shouldCheck()) return; // Check every now and then
+		if (executioner.getTasksRunning().isEmpty()) return; // Nothing to check, no need to run a command
 
 		// Run a command to query running PIDs
 		if (!runCommand()) return;
@@ -84,6 +95,28 @@ public class CheckTasksRunning {
 
 		// If any 'running' tasks was not not found, mark is as finished ('ERROR')
 		tasksRunning(taskFoundId);
+
+		// Adapt interval for next check
+		updateInterval();
+	}
+
+	/**
+	 * Create command line arguments for the command
+	 * that queries running PIDs
+	 */
+	protected List<String> commandArgs() {
+		ArrayList<String> args = new ArrayList<String>();
+		for (String arg : defaultCmdArgs)
+			args.add(arg);
+		return args;
+	}
+
+	/**
+	 * Execute the command that queries running PIDs
+	 */
+	protected ExecResult exec(List<String> args) {
+		snapshotTime = System.currentTimeMillis();
+		return Exec.exec(args, true);
 	}
 
 	/**
@@ -108,6 +141,10 @@ public class CheckTasksRunning {
 		return tasks;
 	}
 
+	public int getInterval() {
+		return interval;
+	}
+
 	/**
 	 * Increment counter that keeps track on how many times in a row a task was missing
 	 * @return true if task should be considered 'missing'
@@ -121,6 +158,27 @@ public class CheckTasksRunning {
 		return count > TASK_NOT_FOUND_DISAPPEARED;
 	}
 
+	/**
+	 * Is this task close to its timeout?
+	 * These tasks are likely to finish (or be killed) soon, so we check more often
+	 */
+	protected boolean isNearTimeout(Task task) {
+		if (task.getResources() == null) return false;
+		long wallTimeout = task.getResources().getWallTimeout();
+		if (wallTimeout <= 0) return false;
+		return task.elapsedSecs() + intervalMax >= wallTimeout;
+	}
+
+	/**
+	 * Has this task been running long enough (at the time the command output
+	 * was produced) to be reported by the cluster system?
+	 */
+	protected boolean isRunningSinceSnapshot(Task task) {
+		Date start = task.getRunningStartTime();
+		if (start == null) return false;
+		return (snapshotTime - start.getTime()) > 1000L * minStartTime;
+	}
+
 	void log(String msg) {
 		executioner.log(this.getClass().getSimpleName() + ":" + msg);
 	}
@@ -227,15 +285,13 @@ public class CheckTasksRunning {
 	 */
 	protected boolean runCommand() {
 		// Prepare command line arguments
-		ArrayList<String> args = new ArrayList<String>();
+		List<String> args = commandArgs();
 		StringBuilder cmdsb = new StringBuilder();
-		for (String arg : defaultCmdArgs) {
-			args.add(arg);
+		for (String arg : args)
 			cmdsb.append(" " + arg);
-		}
 
 		// Execute command
-		cmdExecResult = Exec.exec(args, true);
+		cmdExecResult = exec(args);
 		if (debug) Timer.showStdErr("Check task running:" //
 				+ "\n\tCommand    : '" + cmdsb.toString().trim() + "'" //
 				+ "\n\tExit value : " + cmdExecResult.exitValue //
@@ -276,6 +332,20 @@ public class CheckTasksRunning {
 		this.debug = debug;
 	}
 
+	/**
+	 * Set interval range (seconds). Polling adapts between
+	 * 'intervalMin' and 'intervalMax'
+	 */
+	public void setInterval(int intervalMin, int intervalMax) {
+		this.intervalMin = Math.max(0, intervalMin);
+		this.intervalMax = Math.max(this.intervalMin, intervalMax);
+		interval = this.intervalMin;
+	}
+
+	public void setMinStartTime(int minStartTime) {
+		this.minStartTime = minStartTime;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
@@ -285,7 +355,7 @@ public class CheckTasksRunning {
 	 */
 	protected boolean shouldCheck() {
 		if (time == null) time = new Timer();
-		if (time.elapsedSecs() > CHECK_TASK_RUNNING_INTERVAL) {
+		if (time.elapsedSecs() >= interval) {
 			time.start(); // Restart timer
 			return true;
 		}
@@ -302,7 +372,7 @@ public class CheckTasksRunning {
 		for (Task task : executioner.getTasksRunning().values()) {
 
 			if (!taskFoundId.contains(task) // Task not found by command?
-					&& (task.elapsedSecs() > TASK_STATE_MIN_START_TIME) // Make sure that it's been running for a while (otherwise it might that the task has just started and the cluster is not reporting it yet)
+					&& isRunningSinceSnapshot(task) // Make sure that it's been running for a while (otherwise it might that the task has just started and the cluster is not reporting it yet)
 					&& !task.isDone() // Is the task "not finished"?
 			) {
 				// Task is missing.
@@ -334,4 +404,20 @@ public class CheckTasksRunning {
 		}
 	}
 
+	/**
+	 * Adapt interval: Check often when tasks are about to finish (or
+	 * seem to be missing), back off exponentially when nothing happens
+	 */
+	protected void updateInterval() {
+		boolean fast = !missingCount.isEmpty();
+		for (Task task : executioner.getTasksRunning().values())
+			fast |= isNearTimeout(task);
+
+		int intervalOld = interval;
+		if (fast) interval = intervalMin;
+		else interval = Math.min(Math.max(2 * interval, 1), intervalMax);
+
+		if (debug && interval != intervalOld) log("Check interval changed from " + intervalOld + " to " + interval + " seconds");
+	}
+
 }
@@ -1,11 +1,29 @@
 package org.bds.executioner;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+
 import org.bds.Config;
+import org.bds.osCmd.ExecResult;
+import org.bds.task.Task;
+import org.bds.util.Gpr;
 
 /**
  * Check that tasks are still running.
  * Use a 'qstat' command
  *
+ * Polling is adaptive (see 'clusterStatIntervalMin' and 'clusterStatIntervalMax'),
+ * it can query only our own job IDs ('clusterStatJobIds') and 'qstat' output can
+ * be shared amongst all bds processes from the same user using a cache file
+ * ('clusterStatCache')
+ *
  * TODO: We should try to implement an XML parsing. Unfortunately, some
  * 		 clusters do not have 'qstat -xml' option (yikes!)
  *
@@ -13,9 +31,159 @@ import org.bds.Config;
  */
 public class CheckTasksRunningCluster extends CheckTasksRunning {
 
+	public static final int MAX_JOB_IDS = 500; // Too many job IDs? Query all jobs instead (command line would be too long)
+	public static final String CACHE_FILE_PREFIX = "bds.clusterStat.";
+
+	protected boolean statJobIds; // Add job IDs to 'stat' command
+	protected boolean queryAll; // Is current command querying all jobs (i.e. no job IDs)?
+	protected boolean cache; // Share 'stat' output amongst bds processes
+	protected int cacheMaxAge; // Maximum age of shared 'stat' output (seconds)
+	protected String cacheDir;
+	protected String user;
+
 	public CheckTasksRunningCluster(Config config, Executioner executioner, String cmdArgs[]) {
 		super(config, executioner);
 		defaultCmdArgs = cmdArgs;
+
+		// Adaptive interval
+		int min = (int) config.getLong(Config.CLUSTER_STAT_INTERVAL_MIN, CHECK_TASK_RUNNING_INTERVAL_MIN);
+		int max = (int) config.getLong(Config.CLUSTER_STAT_INTERVAL_MAX, CHECK_TASK_RUNNING_INTERVAL_MAX);
+		setInterval(min, max);
+
+		// Query only our job IDs?
+		statJobIds = config.getBool(Config.CLUSTER_STAT_JOB_IDS, false);
+
+		// Shared cache
+		cache = config.getBool(Config.CLUSTER_STAT_CACHE, false);
+		cacheMaxAge = (int) config.getLong(Config.CLUSTER_STAT_CACHE_MAX_AGE, intervalMin);
+		cacheDir = config.getTmpDir();
+		user = System.getProperty("user.name");
+
+		if (debug) log("Check interval: [" + intervalMin + ", " + intervalMax + "], query job IDs: " + statJobIds + ", shared cache: " + cache + " (max age " + cacheMaxAge + ")");
+	}
+
+	/**
+	 * Cache file for this command
+	 */
+	protected File cacheFile(List<String> args) {
+		StringBuilder sb = new StringBuilder();
+		for (String arg : args)
+			sb.append(arg + "\t");
+
+		String name = CACHE_FILE_PREFIX + Gpr.sanityzeName(user) + "." + Integer.toHexString(sb.toString().hashCode()) + ".txt";
+		return new File(cacheDir, name);
+	}
+
+	/**
+	 * Add job IDs to 'stat' command (unless there are too many)
+	 */
+	@Override
+	protected List<String> commandArgs() {
+		List<String> args = super.commandArgs();
+		queryAll = true;
+		if (!statJobIds) return args;
+
+		Collection<Task> tasks = executioner.getTasksRunning().values();
+		if (tasks.size() > MAX_JOB_IDS) return args;
+
+		for (Task task : tasks) {
+			String pid = task.getPid();
+			if (pid != null && !pid.isEmpty()) {
+				args.add(pid);
+				queryAll = false;
+			}
+		}
+
+		return args;
+	}
+
+	@Override
+	protected ExecResult exec(List<String> args) {
+		if (!queryAll) {
+			// Query our job IDs
+			ExecResult res = super.exec(args);
+			if (res.exitValue == 0 && res.stdErr.isEmpty()) return res;
+
+			// Usually 'stat' fails if any of the jobs is no longer
+			// known by the cluster. Query all jobs instead
+			if (debug) log("Command failed when querying job IDs, querying all jobs. Exit code: " + res.exitValue + ", stderr: " + res.stdErr);
+			args = super.commandArgs();
+			queryAll = true;
+		}
+
+		if (cache) return execCached(args);
+		return super.exec(args);
+	}
+
+	/**
+	 * Execute command, but use shared output if it is recent enough.
+	 * A lock makes sure that only one bds process runs the command
+	 */
+	protected ExecResult execCached(List<String> args) {
+		File cacheFile = cacheFile(args);
+
+		// Recent output available?
+		ExecResult res = readCache(cacheFile);
+		if (res != null) return res;
+
+		Path lockPath = new File(cacheFile.getPath() + ".lock").toPath();
+		try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			channel.lock(); // Lock is released when the channel is closed
+
+			// Another process may have updated the cache while we were waiting for the lock
+			res = readCache(cacheFile);
+			if (res != null) return res;
+
+			// Run command and share output
+			res = super.exec(args);
+			if (res.exitValue == 0 && res.stdErr.isEmpty()) writeCache(cacheFile, res.stdOut);
+			return res;
+		} catch (IOException e) {
+			// Cannot lock (e.g. file belongs to another user)? Just run the command
+			if (debug) log("Cannot lock file '" + lockPath + "': " + e.getMessage());
+			return super.exec(args);
+		}
+	}
+
+	/**
+	 * Read command's output from cache file
+	 * @return null if the cache file is missing, too old or cannot be trusted
+	 */
+	protected ExecResult readCache(File cacheFile) {
+		if (!cacheFile.exists()) return null;
+
+		try {
+			Path path = cacheFile.toPath();
+			if (!Files.getOwner(path).getName().equals(user)) return null; // Do not trust files written by other users
+
+			long lastModified = cacheFile.lastModified();
+			if (System.currentTimeMillis() - lastModified > 1000L * cacheMaxAge) return null; // Too old
+
+			String stdOut = new String(Files.readAllBytes(path));
+			snapshotTime = lastModified;
+			if (debug) log("Using shared output from file '" + cacheFile + "'");
+			return new ExecResult(stdOut, "", 0);
+		} catch (IOException e) {
+			if (debug) log("Cannot read file '" + cacheFile + "': " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Write command's output to cache file.
+	 * File is written and then renamed, so other processes never read partial outputs
+	 */
+	protected void writeCache(File cacheFile, String stdOut) {
+		File tmpFile = null;
+		try {
+			tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+			Files.write(tmpFile.toPath(), stdOut.getBytes());
+			Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			if (debug) log("Cannot write file '" + cacheFile + "': " + e.getMessage());
+		} finally {
+			if (tmpFile != null) tmpFile.delete();
+		}
 	}
 
 }
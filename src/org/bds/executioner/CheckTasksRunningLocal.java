@@ -1,18 +1,123 @@
 package org.bds.executioner;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import org.bds.Config;
+import org.bds.task.Task;
+import org.bds.util.ProcStat;
 
 /**
  * Check that tasks are still running.
- * Use a 'ps' command
+ *
+ * On Linux, each task's process is looked up directly in '/proc'
+ * (no need to run a command and parse the whole process table).
+ * The process' start time is recorded the first time the task is
+ * found, so a PID re-used by another process is not mistaken for
+ * the task. Since each check costs one read per running task, the
+ * interval between checks grows with the number of running tasks
+ * (starting from PROC_INTERVAL_MIN, much shorter than 'ps' intervals).
+ *
+ * Other systems use a 'ps' command
  *
  * @author pcingola
  */
 public class CheckTasksRunningLocal extends CheckTasksRunning {
 
+	public static final int PROC_CHECKS_PER_SEC = 100; // Interval is adjusted so that we do (on average) less than this number of '/proc' reads per second
+	public static final int PROC_INTERVAL_MIN = 1; // Shortest interval when using '/proc' (seconds)
+
+	boolean useProc; // Use '/proc' instead of running 'ps'
+	Map<String, Long> startTimeByPid; // Process start time (when it was first found)
+
 	public CheckTasksRunningLocal(Config config, Executioner executioner) {
 		super(config, executioner);
 		defaultCmdArgs = ExecutionerLocal.LOCAL_STAT_COMMAND;
+		useProc = ProcStat.isAvailable();
+		startTimeByPid = new HashMap<String, Long>();
+		if (useProc) setInterval(PROC_INTERVAL_MIN, CHECK_TASK_RUNNING_INTERVAL_MAX);
+	}
+
+	/**
+	 * Is the process still alive? Make sure the PID has not been re-used
+	 */
+	boolean isAlive(String pid) {
+		ProcStat ps = ProcStat.read(pid);
+		if (ps == null || !ps.isAlive()) return false;
+
+		Long startTime = startTimeByPid.get(pid);
+		if (startTime == null) {
+			startTimeByPid.put(pid, ps.getStartTime());
+			return true;
+		}
+
+		return startTime == ps.getStartTime();
+	}
+
+	/**
+	 * Find running tasks by looking up their PIDs in '/proc'
+	 */
+	@Override
+	protected Set<Task> parseCommandOutput() {
+		if (!useProc) return super.parseCommandOutput();
+
+		HashSet<Task> tasks = new HashSet<Task>();
+		HashSet<String> pids = new HashSet<String>();
+		for (Task task : executioner.getTasksRunning().values()) {
+			String pid = task.getPid();
+			if (pid == null || pid.isEmpty()) continue;
+
+			pids.add(pid);
+			if (isAlive(pid)) {
+				if (debug) log("Found task PID '" + pid + "'");
+				tasks.add(task);
+			}
+		}
+
+		// Forget processes that are no longer running
+		startTimeByPid.keySet().retainAll(pids);
+
+		return tasks;
+	}
+
+	/**
+	 * Interval (seconds) for a number of running tasks, so that
+	 * we do at most PROC_CHECKS_PER_SEC reads per second
+	 */
+	public int procInterval(int numTasks) {
+		int secs = (numTasks + PROC_CHECKS_PER_SEC - 1) / PROC_CHECKS_PER_SEC;
+		return Math.min(Math.max(secs, intervalMin), intervalMax);
+	}
+
+	@Override
+	protected boolean runCommand() {
+		if (!useProc) return super.runCommand();
+		snapshotTime = System.currentTimeMillis(); // No command to run, '/proc' is read when parsing
+		return true;
+	}
+
+	public void setUseProc(boolean useProc) {
+		this.useProc = useProc;
+	}
+
+	/**
+	 * Interval is proportional to the number of running tasks
+	 * (checks are more frequent if some tasks seem to be missing)
+	 */
+	@Override
+	protected void updateInterval() {
+		if (!useProc) {
+			super.updateInterval();
+			return;
+		}
+
+		int intervalOld = interval;
+		if (!missingCount.isEmpty()) interval = intervalMin;
+		else interval = procInterval(executioner.getTasksRunning().size());
+
+		if (debug && interval != intervalOld) log("Check interval changed from " + intervalOld + " to " + interval + " seconds");
 	}
 
 }
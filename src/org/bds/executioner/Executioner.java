@@ -2,16 +2,21 @@ package org.bds.executioner;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.bds.Config;
 import org.bds.cluster.Cluster;
+import org.bds.cluster.ResourcePools;
 import org.bds.cluster.host.Host;
 import org.bds.cluster.host.HostLocal;
 import org.bds.osCmd.Cmd;
 import org.bds.osCmd.Exec;
+import org.bds.report.Metrics;
 import org.bds.task.DependencyState;
 import org.bds.task.Tail;
 import org.bds.task.Task;
@@ -40,11 +45,12 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	protected boolean running, valid;
 	protected boolean removeTaskCannotExecute; // Should a task be finished if there are no resources to execute it? In most cases yes, but some clusters host are dynamic (they appear and disappear), so even if there are no resources now there might be resources in the future.
 	protected int hostIdx = 0;
-	protected List<Task> tasksToRun; // Tasks queued for execution
+	protected Map<String, Task> tasksToRun; // Tasks queued for execution, indexed by ID (in queuing order)
 	protected Map<Task, Host> tasksSelected; // Tasks that has been selected and it will be immediately start execution in host
 	protected Map<String, Task> tasksRunning; // Tasks running
 	protected Map<String, Task> tasksDone; // Tasks that fin
-	protected List<Tuple<Task, TaskState>> taskUpdateStates; // Tasks to be updated
+	protected Queue<Tuple<Task, TaskState>> taskUpdateStates; // Tasks to be updated (added by any thread, consumed by executioner's thread)
+	protected List<Tuple<Task, TaskState>> taskUpdateStatesRetry; // Task updates that could not be applied yet (only used by executioner's thread)
 	private Map<String, Cmd> cmdById;
 	protected Tail tail;
 	protected Config config;
@@ -53,14 +59,16 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	protected Cluster cluster; // Local computer is the 'server' (localhost)
 	protected Timer timer; // Task timer (when was the task started)
 	protected CheckTasksRunning checkTasksRunning;
+	protected SpeculativeExecution speculativeExecution; // Launch copies of straggler tasks (null if disabled)
 	protected LinkedList<Task> finishTask;
 
 	public Executioner(Config config) {
 		super();
 		valid = true;
 		this.config = config;
-		tasksToRun = new ArrayList<>();
-		taskUpdateStates = new ArrayList<>();
+		tasksToRun = new LinkedHashMap<>();
+		taskUpdateStates = new ConcurrentLinkedQueue<>();
+		taskUpdateStatesRetry = new ArrayList<>();
 		tail = config.getTail();
 		taskLogger = config.getTaskLogger();
 		tasksSelected = new HashMap<>();
@@ -71,6 +79,13 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		verbose = config.isVerbose();
 		removeTaskCannotExecute = true;
 
+		// Speculative execution of straggler tasks
+		if (config.getSpeculativeFactor() > 0) {
+			speculativeExecution = new SpeculativeExecution(this, config.getSpeculativeFactor());
+			speculativeExecution.setDebug(debug);
+			speculativeExecution.setVerbose(verbose);
+		}
+
 		// Create a cluster having only one host (this computer)
 		cluster = new Cluster();
 		new HostLocal(cluster);
@@ -82,7 +97,8 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	public synchronized void add(Task task) {
 		if (verbose) log("Queuing task: " + task.getId());
 		task.state(TaskState.SCHEDULED);
-		tasksToRun.add(task);
+		tasksToRun.put(task.getId(), task);
+		if (config.getTaskEventLog() != null) config.getTaskEventLog().scheduled(task, getExecutionerId(), task.dependencyState() == DependencyState.WAIT);
 	}
 
 	protected synchronized void addCmd(Task task, Cmd cmd) {
@@ -102,6 +118,13 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		return count;
 	}
 
+	/**
+	 * Number of tasks waiting to be executed (queued and not selected yet)
+	 */
+	public synchronized int countTasksToRun() {
+		return tasksToRun.size() - tasksSelected.size();
+	}
+
 	/**
 	 * Create a command form a task
 	 */
@@ -119,10 +142,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		t = tasksDone.get(id);
 		if (t != null) return t;
 
-		for (Task tt : tasksToRun)
-			if (tt.getId().equals(id)) return tt;
-
-		return null;
+		return tasksToRun.get(id);
 	}
 
 	/**
@@ -235,12 +255,13 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		// Kill all 'tasksToRun'.
 		// Note: We need to create a new list to avoid concurrent modification exceptions
 		ArrayList<Task> tokill = new ArrayList<>();
-		tokill.addAll(tasksToRun);
+		tokill.addAll(tasksToRun.values());
 		tokill.addAll(tasksRunning.values());
 		for (Task t : tokill)
 			kill(t);
 
 		running = valid = false;
+		if (config.getTaskEventLog() != null) config.getTaskEventLog().executioner(this, "killed");
 	}
 
 	/**
@@ -325,6 +346,9 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		// Check that task are still running
 		if (getCheckTasksRunning() != null) getCheckTasksRunning().check();
 
+		// Launch copies of straggler tasks
+		if (speculativeExecution != null) speculativeExecution.check();
+
 	}
 
 	/**
@@ -357,6 +381,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	 */
 	public void runExecutioner() {
 		running = true;
+		if (config.getTaskEventLog() != null) config.getTaskEventLog().executioner(this, "started");
 
 		runExecutionerLoopBefore(); // Initialize, before run loop
 
@@ -483,7 +508,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		finishTask = null;
 
 		// Try to find a task matching a host
-		for (Task task : tasksToRun) {
+		for (Task task : tasksToRun.values()) {
 			// Already selected? Skip
 			if (tasksSelected.containsKey(task)) continue;
 
@@ -509,9 +534,20 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 
 				}
 
+				// Named resource pools (e.g. 'db:1'): Can this task ever run? Are resources available now?
+				ResourcePools resourcePools = config.getResourcePools();
+				if (resourcePools.exceedsCapacity(task)) {
+					task.setErrorMsg("Not enough resources in pool to execute task: " + task.getResources().getPools() + ", pools: " + resourcePools);
+					if (finishTask == null) finishTask = new LinkedList<>();
+					finishTask.add(task);
+					continue;
+				}
+				if (!resourcePools.acquire(task)) continue;
+
 				// Select a suitable host in the cluster that satisfies task resources
 				Tuple<Task, Host> taskHost = selectTask(task);
 				if (taskHost != null) return taskHost;
+				resourcePools.release(task); // Could not select a host: Release pool resources
 			}
 		}
 
@@ -627,7 +663,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	 * Task finished executing
 	 */
 	@Override
-	public synchronized void taskFinished(Task task, TaskState taskState) {
+	public void taskFinished(Task task, TaskState taskState) {
 		if (taskState == null) {
 			// Set task state. Infer form exit code if no state is available.
 			// Note: This is the last thing we do in order for wait() methods to
@@ -644,18 +680,18 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	 * Move a task from 'tasksToRun' to 'tasksRunning'
 	 */
 	@Override
-	public synchronized void taskRunning(Task task) {
+	public void taskRunning(Task task) {
 		taskUpdateStates.add(new Tuple<>(task, TaskState.RUNNING));
-
 	}
 
 	@Override
-	public synchronized void taskStarted(Task task) {
+	public void taskStarted(Task task) {
 		taskUpdateStates.add(new Tuple<>(task, TaskState.STARTED));
 	}
 
 	protected synchronized boolean taskUpdateFinished(Task task, TaskState taskState) {
 		if (task == null) throw new RuntimeException("Task finished invoked with null task. This should never happen.");
+		if (speculativeExecution != null && speculativeExecution.ignoreUpdate(task)) return true; // Already finished by speculative execution, ignore update
 		if (!task.canChangeState(taskState)) return false;
 
 		String id = task.getId();
@@ -668,11 +704,12 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 			remove(task, host); // Remove task form host
 		}
 		removeCmd(task); // Remove command (if any)
+		config.getResourcePools().release(task); // Release named resources (if any)
 
 		followStop(task); // Remove from 'tail' thread
 
 		// Move from 'running' (or 'toRun') to 'done'
-		tasksToRun.remove(task);
+		tasksToRun.remove(task.getId());
 		tasksSelected.remove(task);
 		tasksRunning.remove(task.getId());
 		tasksDone.put(task.getId(), task);
@@ -683,6 +720,9 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		// Set task state
 		task.state(taskState);
 
+		// Finished OK? Files not needed any more can be deleted now (if not logging)
+		if (!log && task.isDone() && !task.isFailed()) config.getTaskCleanup().deleteNow(task);
+
 		// Task finished in error condition?
 		if (task.isFailed()) {
 			// Can we re-try?
@@ -693,7 +733,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 				// Move task form 'taskDone' back to 'tasksToRun' queue
 				task.reset(); // Prepare to re-run task
 				tasksDone.remove(task.getId());
-				tasksToRun.add(task);
+				tasksToRun.put(task.getId(), task);
 				task.state(TaskState.SCHEDULED);
 			} else {
 				// May be we can look for additional information to asses the error
@@ -701,6 +741,18 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 			}
 		}
 
+		// Speculative execution: Kill the other copy (if any)
+		if (speculativeExecution != null && task.isDone()) speculativeExecution.finished(task);
+
+		// Incremental report: Render task in the background
+		if (task.isDone() && config.getReportIncremental() != null) config.getReportIncremental().add(task);
+
+		// Log task event: finished, killed or retry
+		if (config.getTaskEventLog() != null) config.getTaskEventLog().finished(task, getExecutionerId());
+
+		// Task is finished: Move its information out of the heap
+		if (task.isDone() && config.getTaskStore() != null) task.store(config.getTaskStore());
+
 		return true;
 	}
 
@@ -715,6 +767,8 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 
 		// Change state
 		task.state(TaskState.RUNNING);
+		Metrics.get().dispatched(this, task);
+		if (config.getTaskEventLog() != null) config.getTaskEventLog().running(task, getExecutionerId());
 
 		// Follow STDOUT and STDERR
 		follow(task);
@@ -731,12 +785,17 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		if (!task.canChangeState(TaskState.STARTED)) return false;
 
 		// Move from 'tasksToRun' to 'tasksRunning'
-		tasksToRun.remove(task);
+		tasksToRun.remove(task.getId());
 		tasksSelected.remove(task);
 		tasksRunning.put(task.getId(), task);
 
 		// Change state
 		task.state(TaskState.STARTED);
+
+		if (config.getTaskEventLog() != null) {
+			Cmd cmd = getCmd(task);
+			config.getTaskEventLog().started(task, getExecutionerId(), (cmd != null ? cmd.getHost() : null));
+		}
 		return true;
 	}
 
@@ -744,13 +803,16 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	 * Update task states
 	 */
 	protected synchronized void taskUpdateStates() {
-		if (taskUpdateStates.isEmpty()) return;
+		if (taskUpdateStates.isEmpty() && taskUpdateStatesRetry.isEmpty()) return;
 
-		// Get a list ready for next iteration
-		ArrayList<Tuple<Task, TaskState>> taskUpdateStatesNew = new ArrayList<>();
+		// Updates that could not be applied last time go first (keep order)
+		List<Tuple<Task, TaskState>> updates = taskUpdateStatesRetry;
+		taskUpdateStatesRetry = new ArrayList<>();
+		for (Tuple<Task, TaskState> taskAndState = taskUpdateStates.poll(); taskAndState != null; taskAndState = taskUpdateStates.poll())
+			updates.add(taskAndState);
 
 		// Update each task sequentially, to avoid race conditions
-		for (Tuple<Task, TaskState> taskAndState : taskUpdateStates) {
+		for (Tuple<Task, TaskState> taskAndState : updates) {
 			Task task = taskAndState.first;
 			TaskState state = taskAndState.second;
 
@@ -760,12 +822,10 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 			else if (state.isRunning()) ok = taskUpdateRunning(task);
 			else ok = taskUpdateFinished(task, state);
 
-			// Could not change state? Keep task update
-			if (!ok) taskUpdateStatesNew.add(taskAndState);
+			// Could not change state? Keep task update for next time
+			// Note: Updates for finished tasks are dropped (e.g. a killed task's process reporting its state)
+			if (!ok && !task.isDone()) taskUpdateStatesRetry.add(taskAndState);
 		}
-
-		// Keep unchanged states for next time
-		taskUpdateStates = taskUpdateStatesNew;
 	}
 
 	@Override
@@ -787,7 +847,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		String table[][] = new String[tasksToRun.size() + tasksRunning.size()][5];
 
 		// Pending
-		for (Task t : tasksToRun) {
+		for (Task t : tasksToRun.values()) {
 			table[rowNum][0] = t.getPid() != null ? t.getPid() : "";
 			table[rowNum][1] = "pending (" + t.getTaskState() + ")";
 			table[rowNum][2] = t.getName();
@@ -258,8 +258,8 @@ public class ExecutionerCluster extends Executioner {
 
 		// Make sure 'cluster' files are also removed if we are not logging
 		if (!log && (task != null)) {
-			new File(clusterStdFile(task.getStdoutFile())).deleteOnExit();
-			new File(clusterStdFile(task.getStderrFile())).deleteOnExit();
+			config.getTaskCleanup().addFile(clusterStdFile(task.getStdoutFile()));
+			config.getTaskCleanup().addFile(clusterStdFile(task.getStderrFile()));
 		}
 	}
 
@@ -0,0 +1,170 @@
+package org.bds.executioner;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.bds.Config;
+import org.bds.cluster.host.Host;
+import org.bds.executioner.Executioners.ExecutionerType;
+import org.bds.task.Task;
+import org.bds.util.Timer;
+
+/**
+ * Hybrid executioner: Run tasks locally and overflow to a cluster.
+ *
+ * This executioner does not run tasks, it only decides where each task
+ * is executed (local computer or cluster) and adds the task to the
+ * corresponding executioner:
+ *
+ * 		i) Tasks that do not fit in the local computer (declared 'cpus'
+ * 		   or 'mem' are larger than local host's) run on the cluster.
+ *
+ * 		ii) Tasks created by a program line whose previous tasks finished
+ * 		   in less than 'hybridShortTask' seconds (on average) run locally,
+ * 		   since cluster's queueing latency would be larger than the task.
+ *
+ * 		iii) Tasks overflow to the cluster when there are at least
+ * 		   'hybridOverflow' tasks waiting in the local queue.
+ *
+ * @author pcingola
+ */
+public class ExecutionerHybrid extends Executioner {
+
+	public static final int HISTORY_MIN_TASKS = 3; // Minimum number of finished tasks required to use runtime history
+	public static final int SHORT_TASK = 60; // Default 'short task' time (seconds)
+
+	int overflow; // Overflow to cluster when local queue has this many tasks waiting
+	int shortTask; // Tasks shorter than this (seconds) always run locally. Zero disables runtime history
+	int countLocal, countCluster; // Number of tasks sent to each executioner
+	ExecutionerType clusterType;
+	Map<String, long[]> runtimeByLine; // Runtime history: Task's program line => { number of tasks, total runtime }
+	LinkedList<Task> tasksAdded; // Tasks added, not finished yet (used to update runtime history)
+
+	protected ExecutionerHybrid(Config config) {
+		super(config);
+		clusterType = ExecutionerType.parseSafe(config.getHybridCluster());
+		if (clusterType == ExecutionerType.HYBRID || clusterType == ExecutionerType.LOCAL) throw new RuntimeException("Invalid hybrid cluster system '" + config.getHybridCluster() + "'");
+		overflow = config.getHybridOverflow();
+		shortTask = config.getHybridShortTask();
+		runtimeByLine = new HashMap<>();
+		tasksAdded = new LinkedList<>();
+	}
+
+	/**
+	 * Add task to local or cluster executioner
+	 */
+	@Override
+	public synchronized void add(Task task) {
+		Executioner executioner = select(task);
+		if (executioner == getLocal()) countLocal++;
+		else countCluster++;
+
+		if (verbose) log("Task '" + task.getId() + "' sent to '" + executioner.getExecutionerId() + "'");
+		tasksAdded.add(task);
+		executioner.add(task);
+	}
+
+	/**
+	 * Add a finished task's runtime to history
+	 */
+	public synchronized void addRuntime(Task task, int elapsedSecs) {
+		String key = lineKey(task);
+		long stats[] = runtimeByLine.get(key);
+		if (stats == null) {
+			stats = new long[2];
+			runtimeByLine.put(key, stats);
+		}
+		stats[0]++;
+		stats[1] += elapsedSecs;
+	}
+
+	/**
+	 * Can this task run in the local computer?
+	 */
+	boolean fitsLocal(Task task) {
+		for (Host host : getLocal().getCluster())
+			if (host.getResources().hasResources(task.getResources())) return true;
+		return false;
+	}
+
+	public int getCountCluster() {
+		return countCluster;
+	}
+
+	public int getCountLocal() {
+		return countLocal;
+	}
+
+	Executioner getExecutionerCluster() {
+		return Executioners.getInstance().get(clusterType);
+	}
+
+	Executioner getLocal() {
+		return Executioners.getInstance().get(ExecutionerType.LOCAL);
+	}
+
+	/**
+	 * Is this task short, according to previous tasks from the same program line?
+	 */
+	boolean isShort(Task task) {
+		if (shortTask <= 0) return false;
+		long stats[] = runtimeByLine.get(lineKey(task));
+		if (stats == null || stats[0] < HISTORY_MIN_TASKS) return false;
+		return stats[1] / stats[0] < shortTask;
+	}
+
+	/**
+	 * Tasks are not executed by this executioner
+	 */
+	@Override
+	public String[] osKillCommand(Task task) {
+		return null;
+	}
+
+	/**
+	 * Key used for runtime history (program line that created the task)
+	 */
+	String lineKey(Task task) {
+		return task.getBdsFileName() + ":" + task.getBdsLineNum();
+	}
+
+	/**
+	 * Update runtime history
+	 */
+	@Override
+	protected synchronized void reportsChecksUpdates() {
+		for (Iterator<Task> it = tasksAdded.iterator(); it.hasNext();) {
+			Task task = it.next();
+			if (!task.isDone()) continue;
+			it.remove();
+
+			// Only tasks that finished OK are used
+			int elapsed = task.elapsedSecs();
+			if (!task.isFailed() && elapsed >= 0) addRuntime(task, elapsed);
+		}
+
+		if (debug && isReportTime()) Timer.showStdErr("ExecutionerHybrid: Tasks sent to local: " + countLocal + ", cluster: " + countCluster);
+	}
+
+	/**
+	 * Select an executioner for this task
+	 */
+	public synchronized Executioner select(Task task) {
+		Executioner local = getLocal();
+		if (!fitsLocal(task)) return getExecutionerCluster(); // Task does not fit in this computer
+		if (isShort(task)) return local; // Not worth paying cluster's queueing latency
+		if (local.countTasksToRun() >= overflow) return getExecutionerCluster(); // Too many tasks waiting: Overflow to cluster
+		return local;
+	}
+
+	public void setOverflow(int overflow) {
+		this.overflow = overflow;
+	}
+
+	public void setShortTask(int shortTask) {
+		this.shortTask = shortTask;
+	}
+
+}
@@ -1,13 +1,21 @@
 package org.bds.executioner;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.LinkedList;
 
 import org.bds.Config;
+import org.bds.cluster.host.Host;
 import org.bds.osCmd.Cmd;
+import org.bds.osCmd.CmdLauncher;
 import org.bds.osCmd.CmdLocal;
+import org.bds.osCmd.Launcher;
+import org.bds.osCmd.ProcessReaper;
 import org.bds.task.Task;
 import org.bds.util.Gpr;
+import org.bds.util.ProcStat;
 import org.bds.util.Timer;
+import org.bds.util.Tuple;
 
 /**
  * Execute tasks in local computer.
@@ -22,15 +30,38 @@ public class ExecutionerLocal extends Executioner {
 	public static String LOCAL_EXEC_COMMAND[] = { "bds", "exec" };
 	public static String LOCAL_KILL_COMMAND[] = { "bds", "kill" };
 	public static String LOCAL_STAT_COMMAND[] = { "ps" };
+	public static String LOCAL_LAUNCHER_COMMAND[] = { "bds", "launcher" };
+
+	protected Launcher launcher; // Long lived process used to execute tasks (null if not used)
+	protected boolean scriptStdin; // Feed task's program through STDIN (instead of creating a program file)
+	protected ProcessReaper processReaper; // Single thread waiting for all processes (null if not used)
+	protected MonitorTaskResources monitorTaskResources; // Measure resources used by running tasks
+	protected AdmissionControl admissionControl; // Admit tasks based on measured memory (null if not used)
 
 	/**
 	 * Create command line arguments for "bds -exec"
 	 */
 	public static String[] createBdsExecCmdArgs(Task task) {
+		return createBdsExecCmdArgs(task, false);
+	}
+
+	/**
+	 * Create command line arguments for "bds -exec"
+	 * @param scriptStdin : If true, execute task's shell (program will be fed through STDIN) instead of program file
+	 */
+	public static String[] createBdsExecCmdArgs(Task task, boolean scriptStdin) {
 		// Create command line
 		ArrayList<String> args = new ArrayList<String>();
 		for (String arg : LOCAL_EXEC_COMMAND)
 			args.add(arg);
+		addBdsExecArgs(task, args, scriptStdin);
+		return args.toArray(Cmd.ARGS_ARRAY_TYPE);
+	}
+
+	/**
+	 * Add "bds exec" parameters (also used by "bds launcher")
+	 */
+	static void addBdsExecArgs(Task task, ArrayList<String> args, boolean scriptStdin) {
 		long timeout = task.getResources().getTimeout() > 0 ? task.getResources().getTimeout() : 0;
 
 		// Add command line parameters for "bds exec"
@@ -38,13 +69,38 @@ public class ExecutionerLocal extends Executioner {
 		args.add(task.getStdoutFile() != null ? task.getStdoutFile() : "-"); // Redirect STDOUT to this file
 		args.add(task.getStderrFile() != null ? task.getStderrFile() : "-"); // Redirect STDERR to this file
 		args.add(task.getExitCodeFile() != null ? task.getExitCodeFile() : "-"); // Redirect exit code
-		args.add(task.getProgramFileName()); // Program to execute
-
-		return args.toArray(Cmd.ARGS_ARRAY_TYPE);
+		if (scriptStdin) {
+			// Execute shell, program is fed through STDIN
+			for (String arg : Config.get().getTaskShell().trim().split("\\s+"))
+				args.add(arg);
+		} else args.add(task.getProgramFileName()); // Program to execute
 	}
 
 	protected ExecutionerLocal(Config config) {
 		super(config);
+
+		if (config.isLocalLauncher()) {
+			launcher = new Launcher(LOCAL_LAUNCHER_COMMAND);
+			launcher.setDebug(config.isDebug());
+		}
+		scriptStdin = config.isLocalScriptStdin();
+		if (config.isLocalProcessReaper()) processReaper = ProcessReaper.getInstance();
+
+		monitorTaskResources = new MonitorTaskResources();
+		monitorTaskResources.setDebug(config.isDebug());
+		monitorTaskResources.setSampleTime(config.getMonitorTaskResources());
+
+		// Admit tasks based on measured memory? Then declared memory is not accounted in local host's resources
+		if (config.isLocalMemAdmission() && ProcStat.isAvailable()) {
+			admissionControl = new AdmissionControl(monitorTaskResources);
+			admissionControl.setDebug(config.isDebug());
+			admissionControl.setVerbose(config.isVerbose());
+			admissionControl.setFreeze(config.isLocalMemFreeze());
+			if (config.getLocalMemReserve() >= 0) admissionControl.setMemReserve(config.getLocalMemReserve());
+			for (Host host : cluster)
+				host.getResources().setMem(-1);
+		}
+
 		checkTasksRunning = new CheckTasksRunningLocal(config, this);
 		checkTasksRunning.setDebug(config.isDebug());
 		checkTasksRunning.setVerbose(config.isVerbose());
@@ -97,12 +153,31 @@ public class ExecutionerLocal extends Executioner {
 	 */
 	@Override
 	protected synchronized Cmd createRunCmd(Task task) {
-		task.createProgramFile(); // We must create a program file
+		// Feed program through STDIN? Then there is no need to create a program file (or wait for it to be closed).
+		// Note: Program files are kept when logging, and the launcher does not support STDIN
+		boolean stdin = scriptStdin && !log && (launcher == null);
+		if (stdin) {
+			task.createProgramDir();
+		} else {
+			task.createProgramFile(); // We must create a program file
+			avoidTextFileBusyError();
+		}
 
-		// Create command line
-		String args[] = createBdsExecCmdArgs(task);
+		// Use launcher process?
+		if (launcher != null) {
+			launcher.open(); // Start launcher (if not already running)
+
+			ArrayList<String> args = new ArrayList<String>();
+			addBdsExecArgs(task, args, false);
+			if (debug) Timer.showStdErr("Running command using launcher: " + String.join(" ", args));
 
-		avoidTextFileBusyError();
+			CmdLauncher cmd = new CmdLauncher(task.getId(), args.toArray(Cmd.ARGS_ARRAY_TYPE), launcher);
+			cmd.setDebug(debug);
+			return cmd;
+		}
+
+		// Create command line
+		String args[] = createBdsExecCmdArgs(task, stdin);
 
 		// Join args
 		String cmdStr = "";
@@ -114,6 +189,8 @@ public class ExecutionerLocal extends Executioner {
 		CmdLocal cmd = new CmdLocal(task.getId(), args);
 		cmd.setDebug(debug);
 		cmd.setReadPid(true); // We execute using "bds exec" which prints PID number before executing the sub-process
+		cmd.setProcessReaper(processReaper); // One thread waits for all processes (if not null)
+		if (stdin) cmd.setStdin(task.getProgramStdin());
 
 		return cmd;
 	}
@@ -124,6 +201,15 @@ public class ExecutionerLocal extends Executioner {
 	@Override
 	protected synchronized void follow(Task task) {
 		if (taskLogger != null) taskLogger.add(task, this); // Log PID (if any)
+		monitorTaskResources.add(task);
+
+		// Launcher writes STDOUT and STDERR to files and reports exit
+		// status, so we only need to follow the files
+		if (launcher != null) {
+			tail.add(task.getStdoutFile(), false);
+			tail.add(task.getStderrFile(), true);
+			return;
+		}
 
 		// We need to feed the InputStreams from the process, instead of file names
 		CmdLocal cmd = (CmdLocal) getCmd(task);
@@ -144,10 +230,74 @@ public class ExecutionerLocal extends Executioner {
 		if (monitorTask != null) monitorTask.add(this, task); // Start monitoring exit file
 	}
 
+	@Override
+	protected synchronized void followStop(Task task) {
+		super.followStop(task);
+		monitorTaskResources.remove(task);
+		if (admissionControl != null) admissionControl.remove(task);
+	}
+
+	/**
+	 * Make sure a frozen task is resumed, so it can be killed
+	 */
+	@Override
+	public synchronized void kill(Task task) {
+		if (admissionControl != null) admissionControl.remove(task);
+		super.kill(task);
+	}
+
 	@Override
 	public String[] osKillCommand(Task task) {
 		// This is killed internally by 'bds' (see GO program)
 		// So, there is no need for special commands
 		return null;
 	}
+
+	/**
+	 * Task failed: If the program was fed through STDIN, create the
+	 * program file now, so that the user can debug it
+	 */
+	@Override
+	protected void postMortemInfo(Task task) {
+		super.postMortemInfo(task);
+		if (scriptStdin && !(new File(task.getProgramFileName())).exists()) task.createProgramFile();
+	}
+
+	@Override
+	protected void reportsChecksUpdates() {
+		super.reportsChecksUpdates();
+		monitorTaskResources.check(); // Sample resources used by tasks
+		if (admissionControl != null) admissionControl.check(); // Freeze or resume tasks under memory pressure
+	}
+
+	/**
+	 * Clean up after run loop: Stop launcher process (it kills all running tasks)
+	 */
+	@Override
+	protected void runExecutionerLoopAfter() {
+		super.runExecutionerLoopAfter();
+		if (launcher != null) launcher.kill();
+	}
+
+	/**
+	 * Select a task only if there is enough (measured) memory available
+	 */
+	@Override
+	protected synchronized Tuple<Task, Host> selectTask(Task task) {
+		if (admissionControl != null) {
+			if (admissionControl.exceedsTotal(task)) {
+				// This task will never be admitted
+				task.setErrorMsg("Not enough resources to execute task: " + task.getResources());
+				if (finishTask == null) finishTask = new LinkedList<>();
+				finishTask.add(task);
+				return null;
+			}
+
+			if (!admissionControl.admit(task)) return null;
+		}
+
+		Tuple<Task, Host> taskHost = super.selectTask(task);
+		if (taskHost != null && admissionControl != null) admissionControl.add(task);
+		return taskHost;
+	}
 }
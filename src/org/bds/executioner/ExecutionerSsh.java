@@ -1,14 +1,20 @@
 package org.bds.executioner;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.bds.Config;
 import org.bds.cluster.ClusterSsh;
+import org.bds.cluster.DataLocality;
+import org.bds.cluster.HostSelector;
+import org.bds.cluster.host.Host;
 import org.bds.cluster.host.HostSsh;
 import org.bds.osCmd.Cmd;
 import org.bds.osCmd.CmdSsh;
 import org.bds.task.Task;
+import org.bds.task.TaskState;
 import org.bds.util.Timer;
+import org.bds.util.Tuple;
 
 /**
  * Execute tasks in a remote computer, using ssh
@@ -23,6 +29,9 @@ import org.bds.util.Timer;
  *       computer, but there is no "cluster" software to coordinate
  *       jobs
  *
+ * Hosts are selected based on their load (see HostSelector). Optionally,
+ * tasks are run on the host that created their input files (see DataLocality)
+ *
  * @author pcingola
  */
 public class ExecutionerSsh extends Executioner {
@@ -30,9 +39,14 @@ public class ExecutionerSsh extends Executioner {
 	public static final String CONFIG_SSH_NODES = "ssh.nodes";
 	public static String SSH_EXEC_COMMAND[] = { "/bin/bash", "-e" };
 
+	HostSelector hostSelector;
+	DataLocality dataLocality; // Data locality (null if disabled)
+
 	protected ExecutionerSsh(Config config) {
 		super(config);
 		createCluster();
+		hostSelector = new HostSelector();
+		if (config.getSshLocalityDelay() > 0) dataLocality = new DataLocality(config.getSshLocalityDelay());
 	}
 
 	protected void createCluster() {
@@ -100,4 +114,51 @@ public class ExecutionerSsh extends Executioner {
 		((ClusterSsh) cluster).stopHostInfoUpdaters();
 	}
 
+	/**
+	 * Select the least loaded host (power of two choices) among
+	 * the ones having enough resources to run this task
+	 */
+	@Override
+	protected synchronized Tuple<Task, Host> selectTask(Task task) {
+		// Data locality: Prefer the host that created task's inputs
+		if (dataLocality != null) {
+			Host preferred = dataLocality.preferredHost(task);
+			if (preferred != null) {
+				if (preferred.isAlive() && preferred.getResourcesAvaialble().hasResources(task.getResources())) {
+					if (debug) log("Selected task '" + task.getId() + "' on host '" + preferred + "' (data locality)");
+					selectTask(task, preferred);
+					return new Tuple<>(task, preferred);
+				}
+
+				if (dataLocality.isWaiting(task)) return null; // Wait for preferred host (delay scheduling)
+			}
+		}
+
+		List<Host> candidates = new ArrayList<Host>();
+		for (Host host : cluster)
+			if (host.isAlive() && host.getResourcesAvaialble().hasResources(task.getResources())) candidates.add(host);
+
+		// No host available? Default method decides whether the task can be executed at all
+		if (candidates.isEmpty()) return super.selectTask(task);
+
+		Host host = hostSelector.select(candidates);
+		if (debug) log("Selected task '" + task.getId() + "' on host '" + host + "', score: " + hostSelector.score(host) + ", candidates: " + candidates.size());
+		selectTask(task, host);
+		return new Tuple<>(task, host);
+	}
+
+	@Override
+	protected synchronized void selectTask(Task task, Host host) {
+		super.selectTask(task, host);
+		hostSelector.placed(host);
+		if (dataLocality != null) dataLocality.placed(task, host);
+	}
+
+	@Override
+	protected synchronized boolean taskUpdateFinished(Task task, TaskState taskState) {
+		boolean ok = super.taskUpdateFinished(task, taskState);
+		if (ok && dataLocality != null && task.isDone()) dataLocality.finished(task); // Remember where output files are
+		return ok;
+	}
+
 }
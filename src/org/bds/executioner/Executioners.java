@@ -19,7 +19,7 @@ public class Executioners {
 	 * Type of executioners
 	 */
 	public enum ExecutionerType {
-		CLUSTER, FAKE, GENERIC, LOCAL, MESOS, MOAB, PBS, SGE, SSH, SYS;
+		CLUSTER, FAKE, GENERIC, HYBRID, LOCAL, MESOS, MOAB, PBS, SGE, SSH, SYS;
 
 		/**
 		 * Parse an executioner name
@@ -101,6 +101,10 @@ public class Executioners {
 			executioner = new ExecutionerClusterGeneric(config);
 			break;
 
+		case HYBRID:
+			executioner = new ExecutionerHybrid(config);
+			break;
+
 		case LOCAL:
 			executioner = new ExecutionerLocal(config);
 			break;
@@ -3,15 +3,29 @@ package org.bds.executioner;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import org.bds.task.Task;
 import org.bds.task.TaskState;
+import org.bds.util.DirWatcher;
 import org.bds.util.Gpr;
 import org.bds.util.Timer;
+import org.bds.util.TimingWheel;
 
 /**
  * Monitor a task: Check if a task finished by checking if 'exitFile' exists
  *
+ * Exit files are detected using a WatchService on each exit file's
+ * directory, so we don't need to 'stat' every exit file. Directories
+ * that cannot be watched are polled. A slow full re-scan catches any
+ * event that might have been missed.
+ *
+ * Note: Network file systems (e.g. NFS) do not create events when
+ * files are written by other hosts, so these directories are polled
+ *
+ * Timeouts are kept in a timing wheel, so only tasks whose deadline
+ * has passed are checked (instead of checking all tasks every time)
+ *
  * @author pcingola
  */
 public class MonitorTask {
@@ -19,15 +33,30 @@ public class MonitorTask {
 	// Cluster scheduling is usually quite slow, so we don't need a short monitoring interval.
 	// Reducing this sleep time adds processing and probably has not many benefits.
 	public static final int SLEEP_TIME = 500;
+	public static final int RESCAN_TIME = 60; // Full re-scan interval (seconds)
 
 	boolean debug = false;
 	boolean verbose;
+	boolean rescan; // Force a full re-scan
+	int rescanTime = RESCAN_TIME;
 	HashMap<Task, Executioner> execByTask;
+	HashMap<String, Task> taskByExitFile; // Exit file (absolute path) => Task
+	HashSet<Task> toCheck; // Tasks that need a check (e.g. an event was received)
+	HashSet<Task> timedOut; // Tasks that run out of time
+	TimingWheel<Task> timeouts; // Tasks' deadlines
+	DirWatcher dirWatcher;
 	Timer latestUpdate;
+	Timer latestRescan;
 
 	public MonitorTask() {
 		execByTask = new HashMap<Task, Executioner>();
+		taskByExitFile = new HashMap<String, Task>();
+		dirWatcher = new DirWatcher(getClass().getSimpleName());
+		toCheck = new HashSet<Task>();
+		timedOut = new HashSet<Task>();
+		timeouts = new TimingWheel<Task>();
 		latestUpdate = new Timer();
+		latestRescan = new Timer();
 	}
 
 	/**
@@ -37,38 +66,133 @@ public class MonitorTask {
 	 * @param task : Task (timeout is inferred from task.resources)
 	 */
 	public synchronized void add(Executioner executioner, Task task) {
-		if (debug) Timer.showStdErr("MonitorTask: Adding task " + task.getId());
 		if (task == null) return;
+		if (debug) Timer.showStdErr("MonitorTask: Adding task " + task.getId());
 		execByTask.put(task, executioner);
+
+		// Watch exit file's directory
+		File exitFile = new File(task.getExitCodeFile()).getAbsoluteFile();
+		taskByExitFile.put(exitFile.getPath(), task);
+		dirWatcher.isWatched(exitFile.getParent());
+
+		// Check once: The exit file might have been created before we started watching
+		toCheck.add(task);
+
+		// Register task's deadline
+		addTimeout(task);
+	}
+
+	/**
+	 * Add task's deadline to timing wheel
+	 * Note: Timeout is measured from the moment the task started running,
+	 *       which might be in the future (e.g. task is queued in a cluster).
+	 *       In that case, the deadline is re-calculated when it expires.
+	 */
+	void addTimeout(Task task) {
+		long now = System.currentTimeMillis();
+		long start = (task.getRunningStartTime() != null ? task.getRunningStartTime().getTime() : now);
+		long timeout = task.getResources().getWallTimeout();
+		long deadline = start + (timeout + 1) * 1000L; // See Task.isTimedOut()
+		timeouts.add(task, Math.max(deadline, now));
 	}
 
 	/**
 	 * Run once every SLEEP_TIME
+	 * (or as soon as there is an exit file event)
 	 */
 	public synchronized void check() {
+		events();
+		timeouts();
+
 		// Is it time to update?
-		if (latestUpdate.elapsed() < SLEEP_TIME) return;
+		if (latestUpdate.elapsed() < SLEEP_TIME && toCheck.isEmpty()) return;
 
 		updateFinished();
 		latestUpdate.start();
 	}
 
+	/**
+	 * Process all pending WatchService events (do not block)
+	 */
+	void events() {
+		for (String file : dirWatcher.events(0)) {
+			Task task = taskByExitFile.get(file);
+			if (task != null) toCheck.add(task);
+		}
+
+		if (dirWatcher.isOverflow()) rescan = true; // Some events were lost
+	}
+
+	/**
+	 * Has this task finished?
+	 */
+	boolean isFinished(Task task, boolean fullRescan) {
+		if (timedOut.contains(task)) return true;
+
+		// No need to check watched files, unless there was an event
+		File exitFile = new File(task.getExitCodeFile());
+		if (!fullRescan && !toCheck.contains(task) && dirWatcher.isWatched(exitFile.getAbsoluteFile().getParent())) return false;
+
+		// Check that 'exitFile' exists and it is not zero length
+		// From 'Fedor Gusev':
+		//     ...here NFS is somewhat slow, and the file is still empty
+		//     and it report exit code as 1. But if I check the file manually, it
+		//     has 0 in it. I've introduced a check for non-zero length of
+		//     the file and the problem is gone.
+		// Note: length() is zero when the file does not exist, so there is
+		//       no need for an additional 'exists()' call
+		return exitFile.length() > 0;
+	}
+
+	/**
+	 * Stop watching directories
+	 */
+	public synchronized void kill() {
+		dirWatcher.close();
+	}
+
 	/**
 	 * Remove task (do not monitor)
 	 */
 	public synchronized void remove(Task task) {
 		if (debug) Timer.showStdErr("MonitorTask: Removing task " + task.getId());
 		execByTask.remove(task);
+		taskByExitFile.remove(new File(task.getExitCodeFile()).getAbsolutePath());
+		toCheck.remove(task);
+		timedOut.remove(task);
+		timeouts.remove(task);
 	}
 
 	public void setDebug(boolean debug) {
 		this.debug = debug;
+		dirWatcher.setDebug(debug);
+	}
+
+	public void setRescanTime(int rescanTime) {
+		this.rescanTime = rescanTime;
 	}
 
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
 
+	public void setWatch(boolean watch) {
+		dirWatcher.setEnabled(watch);
+	}
+
+	/**
+	 * Check tasks whose deadline expired
+	 */
+	void timeouts() {
+		for (Task task : timeouts.expired()) {
+			if (task.isTimedOut()) {
+				if (debug) Timer.showStdErr("MonitorTask: Task timed out " + task.getId());
+				timedOut.add(task);
+				toCheck.add(task);
+			} else addTimeout(task); // Not running yet (or started later than expected)
+		}
+	}
+
 	/**
 	 * Update finished tasks.
 	 * Check if 'exitFile' exist and update states accordingly
@@ -76,25 +200,24 @@ public class MonitorTask {
 	synchronized void updateFinished() {
 		ArrayList<Task> toUpdate = null;
 
+		boolean fullRescan = rescan || (latestRescan.elapsedSecs() >= rescanTime);
+		if (fullRescan && debug) Timer.showStdErr("MonitorTask: Full re-scan");
+
 		for (Task task : execByTask.keySet()) {
-			String exitFileName = task.getExitCodeFile();
-
-			// Check that 'exitFile' exists and it is not zero length
-			// From 'Fedor Gusev':
-			//     ...here NFS is somewhat slow, and the file is still empty
-			//     and it report exit code as 1. But if I check the file manually, it
-			//     has 0 in it. I've introduced a check for non-zero length of
-			//     the file and the problem is gone.
-			File exitFile = new File(exitFileName);
-			boolean exitFileOk = exitFile.exists() && exitFile.length() > 0;
-
-			if (exitFileOk || task.isTimedOut()) {
+			if (isFinished(task, fullRescan)) {
 				// Create (or add) to tasks to delete
 				if (toUpdate == null) toUpdate = new ArrayList<Task>();
 				toUpdate.add(task);
 			}
 		}
 
+		// All pending checks are done
+		toCheck.clear();
+		if (fullRescan) {
+			rescan = false;
+			latestRescan.start();
+		}
+
 		// An task to delete?
 		if (toUpdate != null) {
 			for (Task task : toUpdate) {
@@ -113,7 +236,7 @@ public class MonitorTask {
 		int exitCode = 0;
 		TaskState taskState = null;
 
-		if (task.isTimedOut()) {
+		if (timedOut.contains(task)) {
 			// Timed out
 			exitCode = Task.EXITCODE_TIMEOUT;
 			taskState = TaskState.ERROR_TIMEOUT;
@@ -0,0 +1,122 @@
+package org.bds.executioner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.bds.task.Task;
+import org.bds.task.TaskResourceUsage;
+import org.bds.util.Gpr;
+import org.bds.util.ProcStat;
+import org.bds.util.Timer;
+
+/**
+ * Measure resources used by local tasks (memory, CPU, I/O, threads),
+ * by sampling '/proc' every 'sampleTime' seconds.
+ *
+ * All processes are read once per sample and the process tree of
+ * each task (i.e. all descendants of the task's PID) is added up.
+ *
+ * Note: Tasks shorter than 'sampleTime' might not be sampled at all
+ *
+ * @author pcingola
+ */
+public class MonitorTaskResources {
+
+	public static final int SAMPLE_TIME = 5; // Default sample time (seconds)
+
+	boolean debug;
+	boolean enabled;
+	int sampleTime = SAMPLE_TIME;
+	HashSet<Task> tasks;
+	HashMap<Task, TaskResourceUsage> samples; // Latest sample for each task
+	Timer latestSample;
+
+	public MonitorTaskResources() {
+		tasks = new HashSet<Task>();
+		samples = new HashMap<Task, TaskResourceUsage>();
+		latestSample = new Timer();
+		enabled = ProcStat.isAvailable(); // We need '/proc' (i.e. Linux)
+	}
+
+	/**
+	 * Add a task to be monitored
+	 */
+	public synchronized void add(Task task) {
+		if (enabled) tasks.add(task);
+	}
+
+	/**
+	 * Sample resources if 'sampleTime' has elapsed
+	 */
+	public synchronized void check() {
+		if (tasks.isEmpty() || latestSample.elapsedSecs() < sampleTime) return;
+		sample();
+		latestSample.start();
+	}
+
+	/**
+	 * Memory currently used by a task (according to the latest sample)
+	 * @return Memory in bytes or -1 if the task has not been sampled yet
+	 */
+	public synchronized long getMemCurrent(Task task) {
+		TaskResourceUsage sample = samples.get(task);
+		return sample != null ? sample.getMemPeak() : -1;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Stop monitoring a task
+	 */
+	public synchronized void remove(Task task) {
+		tasks.remove(task);
+		samples.remove(task);
+	}
+
+	/**
+	 * Sample all processes and update tasks
+	 */
+	synchronized void sample() {
+		Timer timer = new Timer();
+		List<ProcStat> procStats = ProcStat.readAll();
+		Map<Integer, ProcStat> byPid = ProcStat.byPid(procStats);
+		Map<Integer, List<ProcStat>> byParent = ProcStat.byParent(procStats);
+
+		for (Task task : tasks) {
+			int pid = Gpr.parseIntSafe(task.getPid());
+			if (pid <= 0) continue;
+
+			// Add up all processes in task's process tree
+			List<ProcStat> tree = new ArrayList<ProcStat>();
+			ProcStat.tree(pid, byPid, byParent, tree);
+			for (ProcStat ps : tree)
+				ps.readIo();
+
+			if (!tree.isEmpty()) {
+				TaskResourceUsage sample = TaskResourceUsage.sum(tree);
+				task.getResourceUsage().update(sample);
+				samples.put(task, sample);
+			}
+		}
+
+		if (debug) Timer.showStdErr("MonitorTaskResources: Sampled " + procStats.size() + " processes, " + tasks.size() + " tasks, elapsed " + timer.elapsed() + " ms");
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * Sample time in seconds (zero or negative disables monitoring)
+	 */
+	public void setSampleTime(int sampleTime) {
+		this.sampleTime = sampleTime;
+		if (sampleTime <= 0) enabled = false;
+	}
+
+}
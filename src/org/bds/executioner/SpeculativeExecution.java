@@ -0,0 +1,341 @@
+package org.bds.executioner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bds.data.Data;
+import org.bds.osCmd.Cmd;
+import org.bds.task.Task;
+import org.bds.task.TaskState;
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * Speculative execution of 'straggler' tasks.
+ *
+ * When an idempotent task has been running much longer ('factor' times)
+ * than the median runtime of its peers (finished tasks having the same
+ * name, or created by the same program line), a copy of the task is
+ * launched. The first one to finish successfully wins and the other
+ * one is killed.
+ *
+ * The copy writes its output files to temporary names (see 'tmpExt()'),
+ * so two copies of the same task never write the same file. If the copy
+ * wins, its outputs are renamed once it has finished successfully. Tasks
+ * whose outputs cannot be safely renamed in the copy's program (e.g. file
+ * names derived from an output, such as 'out.bam.bai') are not copied.
+ *
+ * @author pcingola
+ */
+public class SpeculativeExecution {
+
+	public static final int CHECK_TIME = 10; // Look for stragglers every this number of seconds
+	public static final int MIN_PEERS = 3; // Minimum number of finished peers required to estimate runtime
+	public static final int MIN_TIME = 30; // Tasks running less than this number of seconds are never copied
+	public static final String COPY_ID = ".spec"; // Suffix added to task ID (and program file) of a speculative copy
+	public static final String TMP_EXT = ".bds_tmp."; // Temporary output files extension
+	public static final String WORD_START = "(?<![^\\s'\"<>=])"; // File names are separated by spaces, quotes or redirections
+	public static final String WORD_END = "(?![^\\s'\";|&)])";
+
+	boolean debug, verbose;
+	int checkTime = CHECK_TIME;
+	int minTime = MIN_TIME;
+	double factor;
+	Executioner executioner;
+	Map<String, List<Integer>> runtimes; // Runtimes of tasks that finished OK, by peer group
+	Map<Task, Task> copyByTask; // Original task => copy
+	Map<Task, Task> taskByCopy; // Copy => original task
+	Set<Task> resolved; // Tasks finished (or killed) by speculative execution, having a pending state update from their process (ignored)
+	Set<Task> noCopy; // Straggler tasks that cannot be copied safely
+	Set<Task> finishing; // Tasks being finished by speculative execution (their runtime is not used)
+	Timer latestCheck;
+
+	/**
+	 * Temporary extension used for a task's output files
+	 */
+	public static String tmpExt(String taskId) {
+		return TMP_EXT + Gpr.sanityzeName(taskId);
+	}
+
+	public SpeculativeExecution(Executioner executioner, double factor) {
+		this.executioner = executioner;
+		this.factor = factor;
+		runtimes = new HashMap<>();
+		copyByTask = new HashMap<>();
+		taskByCopy = new HashMap<>();
+		resolved = new HashSet<>();
+		noCopy = new HashSet<>();
+		finishing = new HashSet<>();
+	}
+
+	/**
+	 * Add a finished task's runtime
+	 */
+	public synchronized void addRuntime(Task task, int elapsedSecs) {
+		String key = peerKey(task);
+		List<Integer> secs = runtimes.get(key);
+		if (secs == null) {
+			secs = new ArrayList<>();
+			runtimes.put(key, secs);
+		}
+		secs.add(elapsedSecs);
+	}
+
+	/**
+	 * Look for stragglers and launch speculative copies
+	 */
+	public synchronized void check() {
+		if (latestCheck != null && latestCheck.elapsedSecs() < checkTime) return;
+		latestCheck = new Timer();
+
+		for (Task task : new ArrayList<>(executioner.getTasksRunning().values()))
+			if (isStraggler(task)) launch(task);
+	}
+
+	/**
+	 * Copy's program: Output files are written to temporary names
+	 * @return Program or null if outputs cannot be renamed safely
+	 */
+	String copyProgram(Task task, String copyId) {
+		String programTxt = task.getProgramTxt();
+		List<String> outputs = task.getOutputs();
+		if (outputs == null) return programTxt;
+
+		List<String> inputs = task.getInputs();
+		String currentDir = task.getCurrentDir();
+		for (String out : outputs) {
+			if (Data.factory(out).isRemote()) return null; // Remote outputs are uploaded by the program itself
+			if (inputs != null && inputs.contains(out)) return null; // Output is also an input
+
+			// Output's absolute path or path relative to 'currentDir'
+			String names = Pattern.quote(out);
+			if (currentDir != null && out.startsWith(currentDir + "/")) names += "|" + Pattern.quote(out.substring(currentDir.length() + 1));
+
+			// Output must be named in the program, always as a separate word (otherwise some file names are derived from it)
+			Pattern any = Pattern.compile(names);
+			Pattern word = Pattern.compile(WORD_START + "(?:" + names + ")" + WORD_END);
+			int count = count(word, programTxt);
+			if (count == 0 || count(any, programTxt) != count) return null;
+
+			programTxt = word.matcher(programTxt).replaceAll("$0" + Matcher.quoteReplacement(tmpExt(copyId)));
+		}
+
+		return programTxt;
+	}
+
+	int count(Pattern pattern, String str) {
+		int count = 0;
+		for (Matcher matcher = pattern.matcher(str); matcher.find();)
+			count++;
+		return count;
+	}
+
+	/**
+	 * Create a speculative copy of a task (null if the task cannot be copied)
+	 */
+	Task createCopy(Task task) {
+		String id = task.getId() + COPY_ID;
+		String programFileName = Gpr.removeExt(task.getProgramFileName()) + COPY_ID + ".sh";
+		String programTxt = copyProgram(task, id);
+		if (programTxt == null) return null;
+
+		Task copy = new Task(id, programFileName, programTxt, task.getBdsFileName(), task.getBdsLineNum());
+		copy.setVerbose(verbose);
+		copy.setDebug(debug);
+		copy.setTaskName(task.getTaskName());
+		copy.setCurrentDir(task.getCurrentDir());
+		copy.setQueue(task.getQueue());
+		copy.setCanFail(true); // A failed copy does not affect the original task
+		copy.setMaxFailCount(1);
+		copy.getResources().set(task.getResources());
+		return copy;
+	}
+
+	/**
+	 * Remove temporary output files created by a task
+	 */
+	void deleteTmpOutputs(Task task, String taskId) {
+		if (task.getOutputs() == null) return;
+		for (String out : task.getOutputs())
+			new File(out + tmpExt(taskId)).delete();
+	}
+
+	/**
+	 * A task (or a copy) finished
+	 */
+	public synchronized void finished(Task task) {
+		// Is this a copy?
+		Task original = taskByCopy.remove(task);
+		if (original != null) {
+			copyByTask.remove(original);
+			if (!task.isFailed() && !original.isDone()) win(task, original);
+			deleteTmpOutputs(original, task.getId());
+			return;
+		}
+
+		// Original task finished: Kill the copy (if any)
+		noCopy.remove(task);
+		Task copy = copyByTask.remove(task);
+		if (copy != null) {
+			taskByCopy.remove(copy);
+			if (!copy.isDone()) {
+				if (verbose) Timer.showStdErr("Speculative execution: Task '" + task.getId() + "' finished, killing copy '" + copy.getId() + "'");
+				killProcess(copy);
+				finish(copy, Task.EXITCODE_KILLED, TaskState.KILLED);
+			}
+			deleteTmpOutputs(task, copy.getId());
+		}
+
+		// Only tasks that finished OK are used
+		int elapsed = task.elapsedSecs();
+		if (!task.isFailed() && !finishing.contains(task) && elapsed >= 0) addRuntime(task, elapsed);
+	}
+
+	public synchronized Task getCopy(Task task) {
+		return copyByTask.get(task);
+	}
+
+	/**
+	 * A state update for a task: Is it a late update from a process
+	 * killed by speculative execution? If so, the update is ignored
+	 * (and the task is no longer tracked)
+	 */
+	public synchronized boolean ignoreUpdate(Task task) {
+		return task.isDone() && resolved.remove(task);
+	}
+
+	/**
+	 * Has this task a pending (ignored) state update from a process killed by speculative execution?
+	 */
+	public synchronized boolean isResolved(Task task) {
+		return resolved.contains(task);
+	}
+
+	/**
+	 * Is this task much slower than its peers?
+	 */
+	boolean isStraggler(Task task) {
+		if (!task.isIdempotent() || !task.isStateRunning()) return false;
+		if (copyByTask.containsKey(task) || taskByCopy.containsKey(task) || noCopy.contains(task)) return false; // Already copied, it is a copy or it cannot be copied
+
+		int elapsed = task.elapsedSecs();
+		if (elapsed < minTime) return false;
+
+		List<Integer> secs = runtimes.get(peerKey(task));
+		if (secs == null || secs.size() < MIN_PEERS) return false;
+		return elapsed > factor * median(secs);
+	}
+
+	/**
+	 * Finish a task (its process has been killed)
+	 */
+	void finish(Task task, int exitValue, TaskState taskState) {
+		finishing.add(task);
+		task.setExitValue(exitValue);
+		executioner.taskUpdateFinished(task, taskState);
+		finishing.remove(task);
+	}
+
+	/**
+	 * Kill a task's process. The process is detached from the task, so
+	 * it does not change the task's exit value when it exits
+	 */
+	void killProcess(Task task) {
+		Cmd cmd = executioner.getCmd(task);
+		if (cmd != null && cmd.killDetached()) resolved.add(task); // Process finished before it was detached: Ignore its state update
+	}
+
+	/**
+	 * Launch a speculative copy of a task
+	 */
+	void launch(Task task) {
+		Task copy = createCopy(task);
+		if (copy == null) {
+			if (verbose) Timer.showStdErr("Speculative execution: Task '" + task.getId() + "' running for " + task.elapsedSecs() + " seconds, but its outputs cannot be renamed safely. Not copied");
+			noCopy.add(task);
+			return;
+		}
+
+		if (verbose) Timer.showStdErr("Speculative execution: Task '" + task.getId() + "' running for " + task.elapsedSecs() + " seconds, launching copy '" + copy.getId() + "'");
+		copyByTask.put(task, copy);
+		taskByCopy.put(copy, task);
+		executioner.add(copy);
+	}
+
+	int median(List<Integer> secs) {
+		List<Integer> sorted = new ArrayList<>(secs);
+		Collections.sort(sorted);
+		return sorted.get(sorted.size() / 2);
+	}
+
+	/**
+	 * Move a file (ignore missing files)
+	 */
+	void move(String src, String dst) {
+		if (src == null || dst == null || !Gpr.exists(src)) return;
+		try {
+			Files.move(new File(src).toPath(), new File(dst).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException("Error moving file '" + src + "' to '" + dst + "'\n", e);
+		}
+	}
+
+	/**
+	 * Peers: Tasks having the same name, or created by the same program line
+	 */
+	String peerKey(Task task) {
+		if (task.getTaskName() != null && !task.getTaskName().isEmpty()) return task.getTaskName();
+		return task.getBdsFileName() + ":" + task.getBdsLineNum();
+	}
+
+	public void setCheckTime(int checkTime) {
+		this.checkTime = checkTime;
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public void setMinTime(int minTime) {
+		this.minTime = minTime;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * A copy finished OK before the original task: The original
+	 * task is finished using the copy's results and its process
+	 * is killed
+	 */
+	void win(Task copy, Task original) {
+		if (verbose) Timer.showStdErr("Speculative execution: Copy '" + copy.getId() + "' finished first, killing task '" + original.getId() + "'");
+
+		// Kill original's process
+		killProcess(original);
+
+		// Use copy's output
+		move(copy.getStdoutFile(), original.getStdoutFile());
+		move(copy.getStderrFile(), original.getStderrFile());
+		if (original.getOutputs() != null) {
+			for (String out : original.getOutputs())
+				move(out + tmpExt(copy.getId()), out);
+		}
+
+		// Original task finished OK
+		finish(original, Task.EXITCODE_OK, TaskState.FINISHED);
+	}
+
+}
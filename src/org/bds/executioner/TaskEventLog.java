@@ -0,0 +1,208 @@
+package org.bds.executioner;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.bds.cluster.host.Host;
+import org.bds.task.Task;
+import org.bds.task.TaskResourceUsage;
+import org.bds.task.TaskState;
+import org.bds.util.Gpr;
+import org.bds.util.GprString;
+
+/**
+ * Task event log: An append-only JSON Lines file (one JSON object per
+ * line) recording task lifecycle events (created, blocked, scheduled,
+ * started, running, finished, killed, retry), checkpoints and
+ * executioner events.
+ *
+ * Events are formatted by the caller and queued. A single background
+ * thread appends them to the file, in batches, so logging never
+ * blocks on disk.
+ *
+ * Every event has 'time' (milliseconds since epoch) and 'event' fields.
+ *
+ * @author pcingola
+ */
+public class TaskEventLog extends Thread {
+
+	public static final String EVENT_LOG_EXT = ".events.jsonl";
+	public static final int BATCH_TIME = 1000; // Write events at least every this number of milliseconds
+
+	boolean debug;
+	volatile boolean done;
+	long count; // Number of events written
+	String fileName;
+	BufferedWriter out;
+	ConcurrentLinkedQueue<String> events; // Events not written yet
+
+	public TaskEventLog(String fileName) {
+		super("TaskEventLog");
+		setDaemon(true);
+		this.fileName = fileName;
+		events = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * A checkpoint was created
+	 */
+	public void checkpoint(String checkpointFile, long elapsedMs) {
+		event("checkpoint", "file", checkpointFile, "elapsedMs", elapsedMs);
+	}
+
+	/**
+	 * Close file (write pending events first)
+	 */
+	public synchronized void close() {
+		if (done) return;
+		write();
+		done = true;
+		try {
+			if (out != null) out.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error closing file '" + fileName + "'", e);
+		}
+		out = null;
+		notifyAll();
+	}
+
+	/**
+	 * Task created
+	 */
+	public void created(Task task, String bdsThreadId) {
+		event("created", "taskId", task.getId() //
+				, "name", task.getName() //
+				, "bdsFile", task.getBdsFileName() //
+				, "bdsLine", task.getBdsLineNum() //
+				, "bdsThreadId", bdsThreadId //
+				, "dependencies", (task.getDependencies() != null ? task.getDependencies().size() : 0) //
+				, "cpus", task.getResources().getCpus() //
+				, "mem", task.getResources().getMem() //
+		);
+	}
+
+	/**
+	 * Queue an event: Name followed by key-value pairs
+	 */
+	public void event(String event, Object... keyValues) {
+		if (done) return;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"time\":" + System.currentTimeMillis() + ",\"event\":\"" + event + "\"");
+		for (int i = 0; i < keyValues.length; i += 2) {
+			Object value = keyValues[i + 1];
+			sb.append(",\"" + keyValues[i] + "\":");
+			if (value == null) sb.append("null");
+			else if (value instanceof Number || value instanceof Boolean) sb.append(value);
+			else sb.append("\"" + GprString.escape(value.toString()) + "\"");
+		}
+		sb.append("}\n");
+
+		events.add(sb.toString());
+	}
+
+	/**
+	 * Executioner event (e.g. started, killed)
+	 */
+	public void executioner(Executioner executioner, String event) {
+		event("executioner", "executioner", executioner.getExecutionerId(), "state", event);
+	}
+
+	/**
+	 * Task finished: Either finished (OK or error), killed or it is going to be re-tried
+	 */
+	public void finished(Task task, String executionerId) {
+		String event = task.isDone() ? (task.getTaskState() == TaskState.KILLED ? "killed" : "finished") : "retry";
+		TaskResourceUsage ru = task.getResourceUsage();
+		event(event, "taskId", task.getId() //
+				, "executioner", executionerId //
+				, "state", task.getTaskState() //
+				, "exitCode", task.getExitValue() //
+				, "failCount", task.getFailCount() //
+				, "start", (task.getRunningStartTime() != null ? task.getRunningStartTime().getTime() : null) //
+				, "end", (task.getRunningEndTime() != null ? task.getRunningEndTime().getTime() : null) //
+				, "elapsedSecs", task.elapsedSecs() //
+				, "memPeak", ru.getMemPeak() //
+				, "cpuUserMs", ru.getCpuUser() //
+				, "cpuSysMs", ru.getCpuSys() //
+				, "ioRead", ru.getIoRead() //
+				, "ioWrite", ru.getIoWrite() //
+		);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	@Override
+	public void run() {
+		while (!done) {
+			write();
+
+			synchronized (this) {
+				try {
+					if (!done) wait(BATCH_TIME);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Task running
+	 */
+	public void running(Task task, String executionerId) {
+		event("running", "taskId", task.getId(), "executioner", executionerId, "pid", task.getPid());
+	}
+
+	/**
+	 * Task scheduled in an executioner (also logs if the task is blocked by dependencies)
+	 */
+	public void scheduled(Task task, String executionerId, boolean blocked) {
+		event("scheduled", "taskId", task.getId(), "executioner", executionerId);
+		if (blocked) event("blocked", "taskId", task.getId(), "executioner", executionerId);
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * Task started (or queued in a cluster)
+	 */
+	public void started(Task task, String executionerId, Host host) {
+		event("started", "taskId", task.getId() //
+				, "executioner", executionerId //
+				, "host", (host != null ? host.getHostName() : null) //
+				, "pid", task.getPid() //
+		);
+	}
+
+	/**
+	 * Write all queued events
+	 */
+	synchronized void write() {
+		if (done || events.isEmpty()) return;
+
+		try {
+			if (out == null) out = new BufferedWriter(new FileWriter(fileName, true));
+			for (String event = events.poll(); event != null; event = events.poll()) {
+				out.write(event);
+				count++;
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing to file '" + fileName + "'", e);
+		}
+
+		if (debug) Gpr.debug("TaskEventLog: Events written " + count);
+	}
+
+}
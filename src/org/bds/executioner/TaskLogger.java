@@ -1,9 +1,13 @@
 package org.bds.executioner;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 
 import org.bds.task.Task;
 import org.bds.util.Gpr;
@@ -16,20 +20,36 @@ import org.bds.util.Timer;
  * 		i) Kill remaining processes invoking appropriate commands (kill, qdel, etc.)
  * 		ii) Remove stale file from unfinished tasks
  *
+ * The file is kept open and written using a buffer, which is flushed
+ * every FLUSH_TIME milliseconds (and on shutdown). Once in a while the
+ * file is compacted (i.e. re-written with running tasks only), so it
+ * does not grow for ever. Compaction writes a new file and renames it,
+ * so the file is always consistent when parsed by bds-exec.
+ *
  * @author pcingola
  */
 public class TaskLogger {
 
 	public static final String CMD_REMOVE_FILE = "rm";
+	public static final int FLUSH_TIME = 100; // Flush every this number of milliseconds
+	public static final int COMPACT_MIN_LINES = 10000; // Compact file when it has at least this number of lines...
+	public static final int COMPACT_RATIO = 4; // ...and this many times more than running tasks entries
 
 	boolean debug = false;
+	boolean dirty; // Is there any data not flushed yet?
+	int lines; // Number of lines in file
+	int linesRunning; // Number of lines from running tasks
 	String pidFile;
 	HashSet<String> pids;
+	LinkedHashMap<Task, String> entries; // Lines for running tasks (used when compacting the file)
+	BufferedWriter out;
+	Thread flusher;
 
 	public TaskLogger(String pidFile) {
 		if (pidFile == null) throw new RuntimeException("Cannot initialize using a null file!");
 		this.pidFile = pidFile;
 		pids = new HashSet<String>();
+		entries = new LinkedHashMap<Task, String>();
 		if (debug) Gpr.debug("Creating PID logger " + pidFile);
 	}
 
@@ -72,7 +92,11 @@ public class TaskLogger {
 		//---
 		// Append all lines to file
 		//---
-		append(lines.toString());
+		String str = lines.toString();
+		String old = entries.put(task, str);
+		if (old != null) linesRunning -= countLines(old);
+		linesRunning += countLines(str);
+		append(str);
 	}
 
 	/**
@@ -81,18 +105,114 @@ public class TaskLogger {
 	protected void append(String str) {
 		try {
 			if (debug) Timer.showStdErr("TaskLogger: Appending to PidFile '" + pidFile + "', lines:\n" + Gpr.prependEachLine("\t\t|", str));
-			PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(pidFile, true)));
-			out.print(str);
-			out.close(); // We need to flush this as fast as possible to avoid missing PID values in the file
+			if (out == null) open();
+			out.write(str);
+			lines += countLines(str);
+			dirty = true;
 		} catch (Exception e) {
 			throw new RuntimeException("Error appending information to file '" + pidFile + "'\n", e);
 		}
 	}
 
+	/**
+	 * Flush and close file
+	 */
+	public synchronized void close() {
+		if (out == null) return;
+		flush();
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error closing file '" + pidFile + "'\n", e);
+		}
+		out = null;
+	}
+
+	/**
+	 * Re-write pidFile using only running tasks' entries
+	 */
+	protected void compact() {
+		if (debug) Timer.showStdErr("TaskLogger: Compacting PidFile '" + pidFile + "', lines: " + lines + ", running tasks lines: " + linesRunning);
+		try {
+			// Write to a temporary file
+			File tmpFile = new File(pidFile + ".tmp");
+			BufferedWriter tmp = new BufferedWriter(new FileWriter(tmpFile));
+			for (String str : entries.values())
+				tmp.write(str);
+			tmp.close();
+
+			// Replace old file (atomic rename, so pidFile is always consistent)
+			out.close();
+			Files.move(tmpFile.toPath(), new File(pidFile).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			out = new BufferedWriter(new FileWriter(pidFile, true));
+			lines = linesRunning;
+			dirty = false;
+		} catch (IOException e) {
+			throw new RuntimeException("Error compacting file '" + pidFile + "'\n", e);
+		}
+	}
+
+	int countLines(String str) {
+		int count = 0;
+		for (int i = 0; i < str.length(); i++)
+			if (str.charAt(i) == '\n') count++;
+		return count;
+	}
+
+	/**
+	 * Write buffered data to file (compact file if needed)
+	 */
+	public synchronized void flush() {
+		if (out == null) return;
+
+		try {
+			if (lines >= COMPACT_MIN_LINES && lines >= COMPACT_RATIO * linesRunning) compact();
+			else if (dirty) {
+				out.flush();
+				dirty = false;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing to file '" + pidFile + "'\n", e);
+		}
+	}
+
 	public HashSet<String> getPids() {
 		return pids;
 	}
 
+	/**
+	 * Open file and start 'flusher' thread
+	 */
+	protected void open() throws IOException {
+		out = new BufferedWriter(new FileWriter(pidFile, true));
+
+		if (flusher == null) {
+			flusher = new Thread("TaskLogger") {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							sleep(FLUSH_TIME);
+							TaskLogger.this.flush();
+						}
+					} catch (InterruptedException e) {
+						// Stop thread
+					}
+				}
+			};
+			flusher.setDaemon(true);
+			flusher.start();
+
+			// Make sure everything is written if bds is stopped (e.g. Ctrl-C)
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					TaskLogger.this.close();
+				}
+			});
+		}
+	}
+
 	/**
 	 * Remove a task
 	 */
@@ -101,6 +221,9 @@ public class TaskLogger {
 		String pid = task.getPid();
 		pids.remove(pid);
 
+		String old = entries.remove(task);
+		if (old != null) linesRunning -= countLines(old);
+
 		StringBuilder lines = new StringBuilder();
 
 		// Append process PID
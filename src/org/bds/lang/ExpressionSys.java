@@ -39,6 +39,31 @@ public class ExpressionSys extends Expression {
 		return sys;
 	}
 
+	/**
+	 * Add a 'shard' sub-directory to a file name, so that files are spread
+	 * over 'shards' directories instead of a single (huge) one.
+	 * E.g.: 'dir/task.line_7.id_198' => 'dir/3f/task.line_7.id_198'
+	 */
+	public static String shard(String fileName, int shards) {
+		if (shards <= 1) return fileName;
+
+		int idx = fileName.lastIndexOf('/');
+		String dir = fileName.substring(0, idx + 1);
+		String base = fileName.substring(idx + 1);
+
+		// Use enough hex digits to represent all shards
+		int digits = Integer.toHexString(shards - 1).length();
+		// Mix hash bits ('murmur3' finalizer), since similar names have similar 'hashCode()'
+		int hash = base.hashCode();
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		int shard = (hash & Integer.MAX_VALUE) % shards;
+		return dir + String.format("%0" + digits + "x", shard) + "/" + base;
+	}
+
 	/**
 	 * Get a sys ID
 	 */
@@ -89,7 +114,7 @@ public class ExpressionSys extends Expression {
 	public String getSysFileName(String execId) {
 		if (execId == null) throw new RuntimeException("Exec ID is null. This should never happen!");
 
-		String sysFileName = execId + ".sh";
+		String sysFileName = shard(execId, Config.get().getLogShards()) + ".sh";
 		File f = new File(sysFileName);
 		try {
 			return f.getCanonicalPath();
@@ -29,6 +29,7 @@ public class ExpressionTask extends ExpressionWithScope {
 	public static final String TASK_OPTION_CPUS = "cpus";
 	public static final String TASK_OPTION_MEM = "mem";
 	public static final String TASK_OPTION_CAN_FAIL = "canFail";
+	public static final String TASK_OPTION_IDEMPOTENT = "idempotent";
 	public static final String TASK_OPTION_ALLOW_EMPTY = "allowEmpty";
 	public static final String TASK_OPTION_NODE = "node";
 	public static final String TASK_OPTION_PHYSICAL_PATH = "ppwd";
@@ -37,6 +38,7 @@ public class ExpressionTask extends ExpressionWithScope {
 	public static final String TASK_OPTION_SYSTEM = "system";
 	public static final String TASK_OPTION_TASKNAME = "taskName";
 	public static final String TASK_OPTION_TIMEOUT = "timeout";
+	public static final String TASK_OPTION_USE_POOLS = "usePools";
 	public static final String TASK_OPTION_WALL_TIMEOUT = "walltimeout";
 
 	public static final String CMD_DOWNLOAD = "bds -download";
@@ -183,6 +185,7 @@ public class ExpressionTask extends ExpressionWithScope {
 		task.setTaskName(taskName);
 		task.setCanFail(bdsThread.getBool(TASK_OPTION_CAN_FAIL));
 		task.setAllowEmpty(bdsThread.getBool(TASK_OPTION_ALLOW_EMPTY));
+		task.setIdempotent(bdsThread.getBool(TASK_OPTION_IDEMPOTENT));
 		task.setNode(bdsThread.getString(TASK_OPTION_NODE));
 		task.setQueue(bdsThread.getString(TASK_OPTION_QUEUE));
 		task.setMaxFailCount((int) bdsThread.getInt(TASK_OPTION_RETRY) + 1); // Note: Max fail count is the number of retries plus one (we always run at least once)
@@ -193,6 +196,11 @@ public class ExpressionTask extends ExpressionWithScope {
 		task.getResources().setMem(bdsThread.getInt(TASK_OPTION_MEM));
 		task.getResources().setWallTimeout(bdsThread.getInt(TASK_OPTION_WALL_TIMEOUT));
 		task.getResources().setTimeout(bdsThread.getInt(TASK_OPTION_TIMEOUT));
+		task.getResources().setPools(bdsThread.getString(TASK_OPTION_USE_POOLS));
+
+		// Resource pools declared in the program
+		String pools = bdsThread.getString(Scope.GLOBAL_VAR_POOL_CAPACITY);
+		if (!pools.isEmpty()) bdsThread.getConfig().getResourcePools().declare(pools);
 		if (taskDependency != null) task.setTaskDependency(taskDependency);
 
 		return task;
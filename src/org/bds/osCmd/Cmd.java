@@ -20,6 +20,7 @@ public abstract class Cmd extends Thread {
 	public static final int ERROR_EXECUTING = -1;
 
 	protected boolean debug;
+	protected boolean detached; // 'execCmd()' does not wait for the command to finish: 'execDone()' is invoked later
 	protected String id;
 	protected String commandArgs[]; // Command and arguments
 	protected String error = ""; // Errors
@@ -75,6 +76,7 @@ public abstract class Cmd extends Thread {
 			stateRunningBefore(); // Change state before executing command
 			if (debug) log("Running");
 			execCmd();
+			if (detached) return exitValue; // Command is still running, it will be finished by someone else (e.g. ProcessReaper)
 			stateRunningAfter(); // Change state after executing command (e.g. when sending a task to a cluster system)
 		} catch (Throwable t) {
 			execError(t, TaskState.ERROR, Task.EXITCODE_ERROR);
@@ -92,10 +94,20 @@ public abstract class Cmd extends Thread {
 	 */
 	protected abstract void execCmd() throws Exception;
 
+	/**
+	 * Detach command from its task: The task is no longer updated or notified
+	 * @return true if the command finished (and notified) before being detached
+	 */
+	protected synchronized boolean detach() {
+		task = null;
+		notifyTaskState = null;
+		return isDone();
+	}
+
 	/**
 	 * Finished executing a command, update states, notify
 	 */
-	protected void execDone() {
+	protected synchronized void execDone() {
 		stateDone();
 		if (task != null) {
 			task.setExitValue(exitValue);
@@ -106,7 +118,7 @@ public abstract class Cmd extends Thread {
 	/**
 	 * Error while trying to 'exec' of a command, update states
 	 */
-	protected void execError(Throwable t, TaskState taskState, int exitCode) {
+	protected synchronized void execError(Throwable t, TaskState taskState, int exitCode) {
 		stateDone();
 		exitValue = exitCode;
 
@@ -177,6 +189,18 @@ public abstract class Cmd extends Thread {
 
 	}
 
+	/**
+	 * Kill a process and detach it from its task: The task's exit value
+	 * is not updated when the process exits (e.g. the task was already
+	 * finished by a speculative copy)
+	 * @return true if the command finished (and notified) before being detached
+	 */
+	public boolean killDetached() {
+		if (debug) log("Process killed (detached from task)");
+		killCmd();
+		return detach();
+	}
+
 	/**
 	 * Cmd-specfic implementation: How to kill the process.
 	 */
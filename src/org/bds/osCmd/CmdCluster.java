@@ -30,7 +30,7 @@ public class CmdCluster extends CmdLocal {
 	 * only means that the task is queued.
 	 */
 	@Override
-	protected void execDone() {
+	protected synchronized void execDone() {
 		stateDone();
 		if (notifyTaskState != null) notifyTaskState.taskRunning(task);
 	}
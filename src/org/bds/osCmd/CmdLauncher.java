@@ -0,0 +1,154 @@
+package org.bds.osCmd;
+
+import org.bds.task.Task;
+import org.bds.task.TaskResourceUsage;
+import org.bds.util.Gpr;
+
+/**
+ * Execute a command in the local computer using a (shared) Launcher process.
+ *
+ * Unlike CmdLocal, no process is created for each command: The
+ * launcher starts the command, enforces timeout, writes the exit
+ * file and reports exit status back. This thread only waits
+ * until the launcher reports the command's PID.
+ *
+ * @author pcingola
+ */
+public class CmdLauncher extends Cmd {
+
+	public static final int BLOCK_SIZE = 512; // Units of 'inblock' and 'oublock' in rusage (Linux)
+
+	protected Launcher launcher;
+	protected String pid; // Reported by the launcher
+	protected String launchError; // Error reported by the launcher
+	protected String exitStr; // Exit status reported by the launcher
+
+	/**
+	 * Convert exit status reported by launcher into an exit value
+	 */
+	public static int exitValue(String exitStr) {
+		if (exitStr.equals("0")) return Task.EXITCODE_OK;
+		if (exitStr.equals("Time out")) return Task.EXITCODE_TIMEOUT;
+		return Task.EXITCODE_ERROR;
+	}
+
+	/**
+	 * @param args : Arguments for launcher's 'exec' request: timeout, stdout file, stderr file, exit file and command
+	 */
+	public CmdLauncher(String id, String args[], Launcher launcher) {
+		super(id, args);
+		this.launcher = launcher;
+	}
+
+	@Override
+	protected synchronized void execCmd() throws Exception {
+		// Already finished? Then 'exec()' finishes normally
+		if (exitStr != null) exitValue = exitValue(exitStr);
+		else detached = true; // The launcher will report when the command finishes
+	}
+
+	@Override
+	protected boolean execPrepare() throws Exception {
+		if (!launcher.exec(this)) {
+			addError("Launcher is not running");
+			return false;
+		}
+
+		// Wait for the launcher to report PID
+		synchronized (this) {
+			while (pid == null && launchError == null)
+				wait();
+		}
+
+		if (launchError != null) {
+			addError(launchError);
+			return false;
+		}
+
+		if (task != null) task.setPid(pid); // Update task's pid
+		return true;
+	}
+
+	/**
+	 * Launcher could not start (or finish) this command
+	 */
+	void failed(String msg) {
+		boolean finish;
+		synchronized (this) {
+			if (pid == null) {
+				// Still waiting in 'execPrepare()'
+				launchError = msg;
+				notifyAll();
+				return;
+			}
+
+			addError(msg);
+			exitStr = msg;
+			finish = detached;
+		}
+
+		if (finish) {
+			exitValue = Task.EXITCODE_ERROR;
+			execDone();
+		}
+	}
+
+	/**
+	 * Command finished (reported by the launcher)
+	 */
+	void finished(String exitStr) {
+		synchronized (this) {
+			this.exitStr = exitStr;
+			if (!detached) return; // 'exec()' has not reached 'execCmd()' yet, it will finish the command
+		}
+
+		exitValue = exitValue(exitStr);
+		if (debug) log("Done");
+		execDone();
+	}
+
+	public String getPid() {
+		return pid;
+	}
+
+	@Override
+	protected void killCmd() {
+		if (pid == null) return;
+		if (debug) log("Killing process '" + pid + "'");
+
+		addError("Killed!\n");
+		launcher.kill(this);
+	}
+
+	/**
+	 * Command started (launcher reported its PID)
+	 */
+	synchronized void started(String pid) {
+		this.pid = pid;
+		notifyAll();
+	}
+
+	/**
+	 * Resources used by the command (reported by the launcher when the command finishes)
+	 */
+	void usage(String usage) {
+		if (task == null) return;
+
+		String fields[] = usage.split("\t");
+		if (fields.length < 5) {
+			if (debug) log("Invalid usage '" + usage + "'");
+			return;
+		}
+
+		long memPeak = Gpr.parseLongSafe(fields[0]) * 1024; // Linux reports 'maxrss' in KB
+		long cpuUser = Gpr.parseLongSafe(fields[1]);
+		long cpuSys = Gpr.parseLongSafe(fields[2]);
+		long ioRead = Gpr.parseLongSafe(fields[3]) * BLOCK_SIZE;
+		long ioWrite = Gpr.parseLongSafe(fields[4]) * BLOCK_SIZE;
+
+		// Exact values (from 'wait4') are more accurate than samples, but samples are the only source of 'threadsMax'
+		TaskResourceUsage resourceUsage = task.getResourceUsage();
+		resourceUsage.set(memPeak, cpuUser, cpuSys, ioRead, ioWrite, resourceUsage.getThreadsMax());
+	}
+
+}
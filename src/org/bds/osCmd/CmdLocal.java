@@ -9,6 +9,8 @@ import java.util.ArrayList;
 
 import org.bds.executioner.Executioner;
 import org.bds.executioner.ExecutionerLocal;
+import org.bds.task.Task;
+import org.bds.task.TaskState;
 import org.bds.util.Gpr;
 import org.bds.util.Timer;
 
@@ -37,6 +39,7 @@ public class CmdLocal extends Cmd {
 	protected boolean readPid;
 	protected String pid; // Only if child process reports PID and readPid is true
 	protected String feedStdin; // Feed this string to stdin when the process starts
+	protected ProcessReaper processReaper; // If not null, the reaper waits for the process (instead of this thread)
 
 	public CmdLocal(String id, String args[]) {
 		super(id, args);
@@ -44,8 +47,14 @@ public class CmdLocal extends Cmd {
 
 	@Override
 	protected void execCmd() throws Exception {
-		// Wait for the process to finish and store exit value
-		exitValue = process.waitFor();
+		if (processReaper != null) {
+			// Do not block this thread: The reaper will finish the command when the process exits
+			detached = true;
+			processReaper.add(this);
+		} else {
+			// Wait for the process to finish and store exit value
+			exitValue = process.waitFor();
+		}
 	}
 
 	@Override
@@ -105,6 +114,10 @@ public class CmdLocal extends Cmd {
 		return pid;
 	}
 
+	public Process getProcess() {
+		return process;
+	}
+
 	public InputStream getStderr() {
 		if (process == null) return null;
 		return process.getErrorStream();
@@ -172,6 +185,22 @@ public class CmdLocal extends Cmd {
 		}
 	}
 
+	/**
+	 * Process finished (invoked by ProcessReaper): Store exit value, update states and notify
+	 */
+	protected void reaped() {
+		try {
+			exitValue = process.exitValue();
+			stateRunningAfter();
+		} catch (Throwable t) {
+			execError(t, TaskState.ERROR, Task.EXITCODE_ERROR);
+			return;
+		}
+
+		if (debug) log("Done");
+		execDone();
+	}
+
 	/**
 	 * Read child process pid (or cluster job id)
 	 */
@@ -213,6 +242,10 @@ public class CmdLocal extends Cmd {
 		return true;
 	}
 
+	public void setProcessReaper(ProcessReaper processReaper) {
+		this.processReaper = processReaper;
+	}
+
 	public void setReadPid(boolean readPid) {
 		this.readPid = readPid;
 	}
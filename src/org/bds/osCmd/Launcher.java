@@ -0,0 +1,191 @@
+package org.bds.osCmd;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.bds.util.Timer;
+
+/**
+ * A long lived process that executes local tasks (see 'bds launcher'),
+ * so we don't need to start one 'bds exec' process per task.
+ *
+ * Requests are sent to launcher's STDIN (one line per request):
+ * 		exec \t id \t timeout \t file.stdout \t file.stderr \t file.exit \t command
+ * 		kill \t id
+ *
+ * Replies are read from launcher's STDOUT (one line per reply):
+ * 		pid \t id \t pid
+ * 		usage \t id \t maxRssKb \t userMs \t sysMs \t inBlocks \t outBlocks
+ * 		exit \t id \t exitStr
+ * 		error \t id \t message
+ *
+ * This thread reads replies and updates the corresponding commands
+ *
+ * @author pcingola
+ */
+public class Launcher extends Thread {
+
+	boolean debug;
+	boolean running;
+	String commandArgs[];
+	Process process;
+	BufferedWriter stdin;
+	HashMap<String, CmdLauncher> cmdById; // Commands sent to the launcher that have not finished yet
+
+	public Launcher(String commandArgs[]) {
+		super("Launcher");
+		this.commandArgs = commandArgs;
+		cmdById = new HashMap<String, CmdLauncher>();
+		setDaemon(true);
+	}
+
+	/**
+	 * Execute a command
+	 * @return true if the request was sent to the launcher
+	 */
+	public synchronized boolean exec(CmdLauncher cmd) {
+		if (!running) return false;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("exec\t" + cmd.getCmdId());
+		for (String arg : cmd.getCommandArgs())
+			sb.append("\t" + arg);
+
+		cmdById.put(cmd.getCmdId(), cmd);
+		if (send(sb.toString())) return true;
+
+		cmdById.remove(cmd.getCmdId());
+		return false;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Kill a command
+	 */
+	public synchronized void kill(CmdLauncher cmd) {
+		if (running) send("kill\t" + cmd.getCmdId());
+	}
+
+	/**
+	 * Stop launcher: Closing STDIN makes the launcher kill all
+	 * running tasks and exit
+	 */
+	public synchronized void kill() {
+		if (!running) return;
+		if (debug) log("Killed");
+
+		running = false;
+		try {
+			stdin.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	void log(String msg) {
+		Timer.showStdErr(getClass().getSimpleName() + ": " + msg);
+	}
+
+	/**
+	 * Start launcher process and reply reader thread
+	 */
+	public synchronized void open() {
+		if (running) return;
+		if (debug) log("Starting launcher process: " + String.join(" ", commandArgs));
+
+		try {
+			process = new ProcessBuilder(commandArgs).start();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot start launcher process '" + String.join(" ", commandArgs) + "'", e);
+		}
+
+		stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+
+		// Show launcher's error messages
+		StreamGobbler stderr = new StreamGobbler(process.getErrorStream(), true);
+		stderr.setDaemon(true);
+		stderr.start();
+
+		running = true;
+		start();
+	}
+
+	/**
+	 * Process a reply from the launcher
+	 */
+	void reply(String line) {
+		if (debug) log("Reply: " + line);
+
+		String fields[] = line.split("\t", 3);
+		if (fields.length < 3) {
+			log("Invalid reply: '" + line + "'");
+			return;
+		}
+
+		String type = fields[0], id = fields[1], value = fields[2];
+		CmdLauncher cmd;
+		synchronized (this) {
+			boolean finished = !(type.equals("pid") || type.equals("usage"));
+			cmd = (finished ? cmdById.remove(id) : cmdById.get(id));
+		}
+
+		if (cmd == null) {
+			if (debug) log("Unknown command '" + id + "'");
+		} else if (type.equals("pid")) cmd.started(value);
+		else if (type.equals("usage")) cmd.usage(value);
+		else if (type.equals("exit")) cmd.finished(value);
+		else cmd.failed(value);
+	}
+
+	@Override
+	public void run() {
+		try {
+			BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			for (String line = stdout.readLine(); line != null; line = stdout.readLine())
+				reply(line);
+		} catch (IOException e) {
+			if (debug) e.printStackTrace();
+		}
+
+		// Launcher process finished: No replies will arrive for pending commands
+		ArrayList<CmdLauncher> pending;
+		synchronized (this) {
+			if (running) log("Launcher process finished unexpectedly");
+			running = false;
+			pending = new ArrayList<CmdLauncher>(cmdById.values());
+			cmdById.clear();
+		}
+
+		for (CmdLauncher cmd : pending)
+			cmd.failed("Launcher process finished");
+	}
+
+	/**
+	 * Send a request to launcher process
+	 */
+	boolean send(String line) {
+		if (debug) log("Request: " + line);
+		try {
+			stdin.write(line);
+			stdin.write('\n');
+			stdin.flush();
+			return true;
+		} catch (IOException e) {
+			log("Error sending request to launcher: " + e.getMessage());
+			return false;
+		}
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+}
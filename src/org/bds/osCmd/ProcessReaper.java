@@ -0,0 +1,129 @@
+package org.bds.osCmd;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * Wait for local processes to finish using a single thread,
+ * instead of having one thread per process blocked on 'waitFor()'
+ *
+ * Note: Java 8 does not provide a way to wait for any of several
+ * processes (e.g. 'waitpid(-1)' or 'ProcessHandle.onExit()'). Since
+ * the exit status is collected by the JVM, 'Process.isAlive()' is
+ * cheap, so we check all processes in a loop. Sleep time between
+ * checks is adapted: short when processes are finishing, longer
+ * when nothing happens.
+ *
+ * @author pcingola
+ */
+public class ProcessReaper extends Thread {
+
+	public static final int SLEEP_TIME_MIN = 1; // Milliseconds
+	public static final int SLEEP_TIME_MAX = 50; // Milliseconds
+
+	private static ProcessReaper processReaper;
+
+	boolean debug;
+	int sleepTime = SLEEP_TIME_MIN;
+	ConcurrentLinkedQueue<CmdLocal> added; // Commands added since latest check
+	List<CmdLocal> cmds; // Commands being waited for (only used by this thread)
+
+	/**
+	 * Get (and start, if needed) the reaper
+	 */
+	public static synchronized ProcessReaper getInstance() {
+		if (processReaper == null || !processReaper.isAlive()) {
+			processReaper = new ProcessReaper();
+			processReaper.start();
+		}
+		return processReaper;
+	}
+
+	ProcessReaper() {
+		super("ProcessReaper");
+		added = new ConcurrentLinkedQueue<CmdLocal>();
+		cmds = new ArrayList<CmdLocal>();
+		setDaemon(true);
+	}
+
+	/**
+	 * Wait for this command's process to finish
+	 */
+	public void add(CmdLocal cmd) {
+		if (debug) log("Adding command '" + cmd.getCmdId() + "'");
+		added.add(cmd);
+		sleepTime = SLEEP_TIME_MIN; // Check new processes soon (they might be short)
+	}
+
+	/**
+	 * Check all processes, collect finished ones
+	 * @return Finished commands (or null if none finished)
+	 */
+	List<CmdLocal> check() {
+		// Add new commands
+		for (CmdLocal cmd = added.poll(); cmd != null; cmd = added.poll())
+			cmds.add(cmd);
+
+		// Remove finished commands
+		List<CmdLocal> finished = null;
+		for (Iterator<CmdLocal> it = cmds.iterator(); it.hasNext();) {
+			CmdLocal cmd = it.next();
+			if (!cmd.getProcess().isAlive()) {
+				it.remove();
+				if (finished == null) finished = new ArrayList<CmdLocal>();
+				finished.add(cmd);
+			}
+		}
+
+		return finished;
+	}
+
+	void log(String msg) {
+		Timer.showStdErr(getClass().getSimpleName() + ": " + msg);
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			List<CmdLocal> finished = check();
+
+			// Notify finished commands
+			if (finished != null) {
+				for (CmdLocal cmd : finished) {
+					try {
+						if (debug) log("Process finished, command '" + cmd.getCmdId() + "'");
+						cmd.reaped();
+					} catch (Throwable t) {
+						// Keep reaping other processes
+						log("Error finishing command '" + cmd.getCmdId() + "': " + t.getMessage());
+						if (debug) Gpr.debug(t);
+					}
+				}
+				sleepTime = SLEEP_TIME_MIN;
+			} else sleepTime = Math.min(2 * sleepTime, SLEEP_TIME_MAX);
+
+			try {
+				sleep(sleepTime);
+			} catch (InterruptedException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * Number of processes being waited for
+	 */
+	public int size() {
+		return cmds.size() + added.size();
+	}
+
+}
@@ -0,0 +1,281 @@
+package org.bds.report;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostResources;
+import org.bds.executioner.Executioner;
+import org.bds.executioner.Executioners;
+import org.bds.run.BdsThreads;
+import org.bds.task.Task;
+import org.bds.task.TaskDependecies;
+import org.bds.task.TaskState;
+import org.bds.util.GprString;
+
+/**
+ * Run-time metrics: Tasks by state, executioners' queues, dispatch
+ * latency, hosts' resources, checkpoint durations, threads and heap.
+ *
+ * Histograms are updated as events happen, all other values are
+ * collected when metrics are requested (see MetricsServer).
+ *
+ * @author pcingola
+ */
+public class Metrics {
+
+	public static final double LATENCY_BUCKETS[] = { 0.1, 0.5, 1, 5, 10, 30, 60, 300, 600, 1800, 3600 }; // Dispatch latency buckets (seconds)
+	public static final double CHECKPOINT_BUCKETS[] = { 0.01, 0.1, 0.5, 1, 5, 10, 30, 60 }; // Checkpoint duration buckets (seconds)
+
+	private static Metrics metrics = new Metrics();
+
+	Map<String, Histogram> dispatchLatency; // Dispatch latency histogram, by executioner
+	Histogram checkpointTime;
+
+	/**
+	 * A (Prometheus style) histogram: Cumulative bucket counts, sum and count
+	 */
+	public static class Histogram {
+		double buckets[];
+		long counts[];
+		long count;
+		double sum;
+
+		public Histogram(double buckets[]) {
+			this.buckets = buckets;
+			counts = new long[buckets.length];
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized void observe(double value) {
+			for (int i = 0; i < buckets.length; i++)
+				if (value <= buckets[i]) counts[i]++;
+			count++;
+			sum += value;
+		}
+
+		/**
+		 * Append histogram in Prometheus text format
+		 */
+		public synchronized void toPrometheus(StringBuilder sb, String name, String labels) {
+			String sep = labels.isEmpty() ? "" : ",";
+			for (int i = 0; i < buckets.length; i++)
+				sb.append(name + "_bucket{" + labels + sep + "le=\"" + buckets[i] + "\"} " + counts[i] + "\n");
+			sb.append(name + "_bucket{" + labels + sep + "le=\"+Inf\"} " + count + "\n");
+			sb.append(name + "_sum" + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + sum + "\n");
+			sb.append(name + "_count" + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + count + "\n");
+		}
+	}
+
+	public static Metrics get() {
+		return metrics;
+	}
+
+	/**
+	 * Reset metrics
+	 */
+	public static void reset() {
+		metrics = new Metrics();
+	}
+
+	public Metrics() {
+		dispatchLatency = new TreeMap<>();
+		checkpointTime = new Histogram(CHECKPOINT_BUCKETS);
+	}
+
+	/**
+	 * A checkpoint was created
+	 */
+	public void checkpoint(long elapsedMs) {
+		checkpointTime.observe(elapsedMs / 1000.0);
+	}
+
+	/**
+	 * A task started running: Add time since it was scheduled
+	 */
+	public void dispatched(Executioner executioner, Task task) {
+		if (task.getScheduledTime() <= 0 || task.getRunningStartTime() == null) return;
+		double latency = (task.getRunningStartTime().getTime() - task.getScheduledTime()) / 1000.0;
+		getDispatchLatency(executioner.getExecutionerId()).observe(Math.max(0, latency));
+	}
+
+	/**
+	 * All executioners (empty if executioners have not been created yet)
+	 */
+	Collection<Executioner> executioners() {
+		Executioners executioners = Executioners.getInstance();
+		if (executioners == null) return new ArrayList<>();
+		synchronized (executioners) {
+			return new ArrayList<>(executioners.getAll());
+		}
+	}
+
+	public synchronized Histogram getDispatchLatency(String executionerId) {
+		Histogram hist = dispatchLatency.get(executionerId);
+		if (hist == null) {
+			hist = new Histogram(LATENCY_BUCKETS);
+			dispatchLatency.put(executionerId, hist);
+		}
+		return hist;
+	}
+
+	/**
+	 * A 'name="value"' label. Prometheus' text format only escapes backslash, double quote and new line in label values
+	 */
+	String label(String name, String value) {
+		if (value == null) value = "";
+		String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+		return name + "=\"" + escaped + "\"";
+	}
+
+	/**
+	 * Append a metric's header (help and type)
+	 */
+	void header(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP " + name + " " + help + "\n");
+		sb.append("# TYPE " + name + " " + type + "\n");
+	}
+
+	/**
+	 * A copy of executioner's running tasks
+	 */
+	List<Task> tasksRunning(Executioner executioner) {
+		synchronized (executioner) {
+			return new ArrayList<>(executioner.getTasksRunning().values());
+		}
+	}
+
+	/**
+	 * Running tasks in JSON format
+	 */
+	public String tasksJson() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat(Report.DATE_FORMAT_HTML);
+		StringBuilder sb = new StringBuilder();
+		sb.append("[");
+
+		long now = System.currentTimeMillis();
+		boolean first = true;
+		for (Executioner executioner : executioners()) {
+			for (Task task : tasksRunning(executioner)) {
+				sb.append(first ? "\n" : ",\n");
+				first = false;
+
+				String host = null;
+				for (Host h : executioner.getCluster())
+					if (h.getTasksRunning().contains(task)) host = h.getHostName();
+
+				sb.append("  {");
+				sb.append("\"id\": \"" + GprString.escape(task.getId()) + "\"");
+				sb.append(", \"name\": \"" + GprString.escape(task.getName()) + "\"");
+				sb.append(", \"executioner\": \"" + GprString.escape(executioner.getExecutionerId()) + "\"");
+				sb.append(", \"host\": " + (host != null ? "\"" + GprString.escape(host) + "\"" : "null"));
+				sb.append(", \"pid\": " + (task.getPid() != null ? "\"" + GprString.escape(task.getPid()) + "\"" : "null"));
+				sb.append(", \"state\": \"" + task.getTaskState() + "\"");
+				if (task.getRunningStartTime() != null) {
+					sb.append(", \"start\": \"" + dateFormat.format(task.getRunningStartTime()) + "\"");
+					sb.append(", \"elapsedSecs\": " + (now - task.getRunningStartTime().getTime()) / 1000);
+				}
+				sb.append("}");
+			}
+		}
+
+		sb.append(first ? "]\n" : "\n]\n");
+		return sb.toString();
+	}
+
+	/**
+	 * All metrics in Prometheus text format
+	 */
+	public String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+
+		// Tasks by state
+		Map<TaskState, Integer> countByState = new HashMap<>();
+		for (Task task : TaskDependecies.get().getTasks()) {
+			Integer count = countByState.get(task.getTaskState());
+			countByState.put(task.getTaskState(), (count != null ? count : 0) + 1);
+		}
+
+		header(sb, "bds_tasks", "gauge", "Number of tasks, by state");
+		for (TaskState state : TaskState.values()) {
+			Integer count = countByState.get(state);
+			sb.append("bds_tasks{" + label("state", state.toString()) + "} " + (count != null ? count : 0) + "\n");
+		}
+
+		// Executioners: Queues
+		header(sb, "bds_executioner_tasks", "gauge", "Number of tasks in each executioner's queue");
+		for (Executioner ex : executioners()) {
+			String exLabel = label("executioner", ex.getExecutionerId());
+			sb.append("bds_executioner_tasks{" + exLabel + "," + label("queue", "pending") + "} " + ex.countTasksToRun() + "\n");
+			sb.append("bds_executioner_tasks{" + exLabel + "," + label("queue", "running") + "} " + tasksRunning(ex).size() + "\n");
+		}
+
+		// Executioners: Dispatch latency
+		header(sb, "bds_task_dispatch_latency_seconds", "histogram", "Time from task scheduled to task running");
+		synchronized (this) {
+			for (Map.Entry<String, Histogram> e : dispatchLatency.entrySet())
+				e.getValue().toPrometheus(sb, "bds_task_dispatch_latency_seconds", label("executioner", e.getKey()));
+		}
+
+		// Hosts
+		StringBuilder sbCpus = new StringBuilder(), sbCpusAvail = new StringBuilder();
+		StringBuilder sbMem = new StringBuilder(), sbMemAvail = new StringBuilder();
+		StringBuilder sbTasks = new StringBuilder();
+		for (Executioner ex : executioners()) {
+			for (Host host : ex.getCluster()) {
+				String labels = "{" + label("executioner", ex.getExecutionerId()) + "," + label("host", host.getHostName()) + "}";
+				HostResources hr = host.getResources();
+				HostResources avail = host.getResourcesAvaialble();
+				sbCpus.append("bds_host_cpus" + labels + " " + hr.getCpus() + "\n");
+				sbCpusAvail.append("bds_host_cpus_available" + labels + " " + avail.getCpus() + "\n");
+				sbMem.append("bds_host_mem_bytes" + labels + " " + hr.getMem() + "\n");
+				sbMemAvail.append("bds_host_mem_available_bytes" + labels + " " + avail.getMem() + "\n");
+				sbTasks.append("bds_host_tasks_running" + labels + " " + host.getTasksRunning().size() + "\n");
+			}
+		}
+		header(sb, "bds_host_cpus", "gauge", "Host's number of CPUs");
+		sb.append(sbCpus);
+		header(sb, "bds_host_cpus_available", "gauge", "Host's CPUs not used by tasks");
+		sb.append(sbCpusAvail);
+		header(sb, "bds_host_mem_bytes", "gauge", "Host's memory");
+		sb.append(sbMem);
+		header(sb, "bds_host_mem_available_bytes", "gauge", "Host's memory not used by tasks");
+		sb.append(sbMemAvail);
+		header(sb, "bds_host_tasks_running", "gauge", "Number of tasks running on host");
+		sb.append(sbTasks);
+
+		// Checkpoints
+		header(sb, "bds_checkpoint_duration_seconds", "histogram", "Time to create a checkpoint");
+		checkpointTime.toPrometheus(sb, "bds_checkpoint_duration_seconds", "");
+
+		// Threads
+		header(sb, "bds_threads", "gauge", "Number of bds threads (program and 'par' threads)");
+		sb.append("bds_threads " + BdsThreads.getInstance().size() + "\n");
+		header(sb, "bds_jvm_threads", "gauge", "Number of JVM threads");
+		sb.append("bds_jvm_threads " + ManagementFactory.getThreadMXBean().getThreadCount() + "\n");
+
+		// Heap
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		header(sb, "bds_jvm_heap_used_bytes", "gauge", "JVM heap used");
+		sb.append("bds_jvm_heap_used_bytes " + heap.getUsed() + "\n");
+		header(sb, "bds_jvm_heap_max_bytes", "gauge", "JVM maximum heap");
+		sb.append("bds_jvm_heap_max_bytes " + heap.getMax() + "\n");
+
+		// Uptime
+		header(sb, "bds_uptime_seconds", "gauge", "Time since bds started");
+		sb.append("bds_uptime_seconds " + ManagementFactory.getRuntimeMXBean().getUptime() / 1000 + "\n");
+
+		return sb.toString();
+	}
+
+}
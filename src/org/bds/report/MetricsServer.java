@@ -0,0 +1,102 @@
+package org.bds.report;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server, exposing run-time metrics:
+ *
+ * 		- '/metrics' : All metrics, in Prometheus text format
+ *
+ * 		- '/tasks' : Running tasks, in JSON format
+ *
+ * The server is bound to 'localhost' by default.
+ *
+ * @author pcingola
+ */
+public class MetricsServer {
+
+	public static final String CONTENT_TYPE_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+	public static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+
+	boolean debug;
+	String host;
+	int port;
+	HttpServer server;
+
+	public MetricsServer(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	public int getPort() {
+		return server != null ? server.getAddress().getPort() : port;
+	}
+
+	/**
+	 * Create a handler
+	 */
+	HttpHandler handler(final String contentType, final boolean tasks) {
+		return new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					String body = tasks ? Metrics.get().tasksJson() : Metrics.get().toPrometheus();
+					send(exchange, 200, contentType, body);
+				} catch (RuntimeException e) {
+					if (debug) e.printStackTrace();
+					send(exchange, 500, "text/plain; charset=utf-8", "Error: " + e.getMessage() + "\n");
+				}
+			}
+		};
+	}
+
+	/**
+	 * Stop server
+	 */
+	public synchronized void kill() {
+		if (server == null) return;
+		server.stop(0);
+		server = null;
+	}
+
+	void send(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+		byte bytes[] = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(code, bytes.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(bytes);
+		os.close();
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * Start server (requests are served by a background thread)
+	 */
+	public synchronized void start() {
+		try {
+			server = HttpServer.create(new InetSocketAddress(host, port), 0);
+			server.createContext("/metrics", handler(CONTENT_TYPE_PROMETHEUS, false));
+			server.createContext("/tasks", handler(CONTENT_TYPE_JSON, true));
+			server.start();
+			if (debug) Gpr.debug("Metrics server started at 'http://" + host + ":" + getPort() + "/metrics'");
+		} catch (IOException e) {
+			// Metrics are not essential: Show a warning and continue
+			Timer.showStdErr("WARNING: Cannot start metrics server on '" + host + ":" + port + "': " + e.getMessage());
+			server = null;
+		}
+	}
+
+}
@@ -1,9 +1,16 @@
 package org.bds.report;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.bds.util.AutoHashMap;
@@ -21,6 +28,13 @@ import org.bds.util.Gpr;
  * 						... more text including {{variables}}
  * 					... final line }}}
  *
+ * A line (or multiline block) is repeated once per value of its keys.
+ * Missing keys are an error, unless the template is not 'strict' (in
+ * that case the line is not shown).
+ *
+ * Templates are compiled (split into literal parts and keys) only
+ * once, output is written directly to a (buffered) file.
+ *
  * @author pcingola
  */
 public class RTemplate {
@@ -33,12 +47,37 @@ public class RTemplate {
 	public static final String PATTERN_STRING = "\\{\\{(\\S+)\\}\\}";
 	public static final Pattern PATTERN = Pattern.compile(PATTERN_STRING);
 
+	static Map<String, List<RTemplateLine>> compiledByResource = new HashMap<>(); // Compiled templates cache
+
+	boolean strict = true;
 	String outFile;
 	@SuppressWarnings("rawtypes")
 	Class baseClass;
 	String resourceName;
 	AutoHashMap<String, List<String>> keyValues;
 
+	/**
+	 * Compile blocks (alternating 'regular' and 'multi-line' blocks) into template lines
+	 */
+	public static List<RTemplateLine> compile(List<String> blocks) {
+		List<RTemplateLine> lines = new ArrayList<>();
+		boolean isMultiLine = false;
+		for (String block : blocks) {
+			if (isMultiLine) {
+				// Whole block as multi-line
+				lines.add(new RTemplateLine(block, true));
+			} else {
+				// Each line independently
+				for (String line : block.split("\n")) {
+					if (line.startsWith("DEBUG")) debug = true; // Debug command from template?
+					lines.add(new RTemplateLine(line, false));
+				}
+			}
+			isMultiLine = !isMultiLine;
+		}
+		return lines;
+	}
+
 	@SuppressWarnings("rawtypes")
 	public RTemplate(Class baseClass, String resourceName, String outFile) {
 		this.outFile = outFile;
@@ -53,46 +92,51 @@ public class RTemplate {
 	}
 
 	/**
-	 * Create output file
+	 * Remove all values
 	 */
-	public void createOuptut() {
-		// Open input and read the whole file
-		InputStream inStream = baseClass.getResourceAsStream(resourceName);
-		if (inStream == null) throw new RuntimeException("Cannot open resource '" + resourceName + "' (class '" + baseClass.getCanonicalName() + "')");
-		String input = Gpr.read(inStream);
-		if (debug) Gpr.debug("Input:\n" + input);
-
-		// Split by multi-line delimiter '{{{'
-		List<String> linesMulti = splitMultiLine(input);
-
-		// Parse input, line by line
-		StringBuilder out = new StringBuilder();
-		boolean isMultiLine = false;
-		for (String lines : linesMulti) {
+	public void clear() {
+		keyValues.clear();
+	}
 
-			if (isMultiLine) {
-				// Parse while block as multi-line
-				out.append(parseLine(lines));
-			} else {
-				// Parse each line independently
-				for (String line : lines.split("\n"))
-					out.append(parseLine(line));
+	/**
+	 * Compiled template (compiled only once)
+	 */
+	public List<RTemplateLine> compile() {
+		String key = baseClass.getCanonicalName() + ":" + resourceName;
+		synchronized (compiledByResource) {
+			List<RTemplateLine> lines = compiledByResource.get(key);
+			if (lines == null) {
+				lines = compile(splitMultiLine(readTemplate()));
+				compiledByResource.put(key, lines);
 			}
-
-			isMultiLine = !isMultiLine;
+			return lines;
 		}
+	}
 
-		// Create output file
-		Gpr.toFile(outFile, out.toString());
+	/**
+	 * Create output file
+	 */
+	public void createOuptut() {
+		try {
+			Writer out = new BufferedWriter(new FileWriter(outFile));
+			render(compile(), out);
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error creating file '" + outFile + "'", e);
+		}
 	}
 
+	/**
+	 * Render lines (each line is parsed independently)
+	 */
 	public String createOuptut(String lines) {
-		// Parse input, line by line
-		StringBuilder out = new StringBuilder();
-		for (String line : lines.split("\n"))
-			out.append(parseLine(line));
-
-		return out.toString();
+		try {
+			StringWriter out = new StringWriter();
+			render(compile(Collections.singletonList(lines)), out);
+			return out.toString();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	/**
@@ -109,96 +153,41 @@ public class RTemplate {
 	}
 
 	/**
-	 * Parse each input line
+	 * Values for a key (null if the key does not exist)
 	 */
-	String parseLine(String line) {
-		// Debug command from template?
-		if (line.startsWith("DEBUG")) {
-			debug = true;
-		}
-
-		Matcher m = PATTERN.matcher(line);
-
-		ArrayList<String> lineParts = new ArrayList<String>(); // Collect the parts of the line that do not match regex here
-		ArrayList<String> keys = new ArrayList<String>(); // Collect keys here
-
-		// Find all matching names
-		boolean found = false;
-		int prevIdx = 0;
-		while (m.find()) {
-			found = true;
-
-			if (debug) Gpr.debug("Line: |" + line);
-			int countGroups = m.groupCount();
-
-			// Groups number 0 is the whole text, so we skip it
-			for (int i = 1; i <= countGroups; i++) {
-				String linePart = line.substring(prevIdx, m.start());
-				lineParts.add(linePart);
-				keys.add(m.group(i));
-				if (debug) Gpr.debug("\t\tpart: '" + linePart + "'\tkey: '" + m.group(i) + "'\t");
-				prevIdx = m.end();
-			}
-		}
-
-		// Add last bit
-		if (found) {
-			String linePart = line.substring(prevIdx, line.length());
-			lineParts.add(linePart);
-			if (debug) Gpr.debug("\t\tpart: '" + linePart + "'");
-		}
+	public List<String> getValues(String key) {
+		return keyValues.get(key);
+	}
 
-		if (!found) return line + "\n";
+	public boolean hasKey(String key) {
+		return keyValues.containsKey(key);
+	}
 
-		// Replace values
-		return replaceValues(lineParts, keys);
+	public boolean isStrict() {
+		return strict;
 	}
 
 	/**
-	 * Replace by values
+	 * Read the whole template
 	 */
-	String replaceValues(ArrayList<String> lineParts, ArrayList<String> keys) {
-		// How many times do we repeat the line?
-		int maxLen = Integer.MAX_VALUE;
-
-		for (String key : keys) {
-			if (!keyValues.containsKey(key)) error("Key '" + key + "' not found!");
-			List<String> values = keyValues.get(key);
-			int len = values.size();
-			maxLen = Math.min(maxLen, len);
-			if (debug) Gpr.debug("\t\tKey '': " + key + "\tNum. values: " + maxLen + "\tMax len: " + maxLen);
-		}
-		if (debug) Gpr.debug("\t\tMax len: " + maxLen);
-
-		// Repeat
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < maxLen; i++)
-			sb.append(replaceValues(lineParts, keys, i) + "\n");
-
-		return sb.toString();
+	public String readTemplate() {
+		InputStream inStream = baseClass.getResourceAsStream(resourceName);
+		if (inStream == null) throw new RuntimeException("Cannot open resource '" + resourceName + "' (class '" + baseClass.getCanonicalName() + "')");
+		String input = Gpr.read(inStream);
+		if (debug) Gpr.debug("Input:\n" + input);
+		return input;
 	}
 
 	/**
-	 * Replace by values (list item number 'idx')
+	 * Render template lines using this template's values
 	 */
-	String replaceValues(ArrayList<String> lineParts, ArrayList<String> keys, int idx) {
-		StringBuilder sb = new StringBuilder();
-
-		// Add all parts and values
-		for (int i = 0; i < keys.size(); i++) {
-			String key = keys.get(i);
-			String value = keyValues.get(key).get(idx);
-
-			sb.append(lineParts.get(i));
-			sb.append(value);
-		}
-
-		// Add last part
-		sb.append(lineParts.get(lineParts.size() - 1));
-
-		if (debug) Gpr.debug("ReplaceValues, idx " + idx + " : '" + sb + "'");
-		return sb.toString();
+	public void render(List<RTemplateLine> lines, Writer out) throws IOException {
+		for (RTemplateLine line : lines)
+			line.render(this, out);
+	}
 
+	public void setStrict(boolean strict) {
+		this.strict = strict;
 	}
 
 	/**
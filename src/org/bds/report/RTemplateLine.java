@@ -0,0 +1,100 @@
+package org.bds.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * A compiled template line (or multi-line block): Literal parts and
+ * keys are parsed only once. When rendered, the line is repeated once
+ * per value of its keys.
+ *
+ * @author pcingola
+ */
+public class RTemplateLine {
+
+	String parts[]; // Literal parts (there is always one more part than keys)
+	String keys[];
+	boolean multiLine;
+
+	public RTemplateLine(String line, boolean multiLine) {
+		this.multiLine = multiLine;
+		parse(line);
+	}
+
+	public List<String> getKeys() {
+		return Arrays.asList(keys);
+	}
+
+	public boolean isMultiLine() {
+		return multiLine;
+	}
+
+	/**
+	 * Split line into literal parts and keys
+	 */
+	void parse(String line) {
+		List<String> lineParts = new ArrayList<String>();
+		List<String> lineKeys = new ArrayList<String>();
+
+		Matcher m = RTemplate.PATTERN.matcher(line);
+		int prevIdx = 0;
+		while (m.find()) {
+			lineParts.add(line.substring(prevIdx, m.start()));
+			lineKeys.add(m.group(1));
+			prevIdx = m.end();
+		}
+		lineParts.add(line.substring(prevIdx));
+
+		parts = lineParts.toArray(new String[0]);
+		keys = lineKeys.toArray(new String[0]);
+	}
+
+	/**
+	 * Render line using template's values
+	 */
+	public void render(RTemplate rTemplate, Writer out) throws IOException {
+		// No keys? Nothing to replace
+		if (keys.length == 0) {
+			out.write(parts[0]);
+			out.write('\n');
+			return;
+		}
+
+		// How many times do we repeat the line?
+		List<List<String>> values = new ArrayList<>(keys.length);
+		int maxLen = Integer.MAX_VALUE;
+		for (int i = 0; i < keys.length; i++) {
+			List<String> keyValues = rTemplate.getValues(keys[i]);
+			if (keyValues == null) {
+				if (rTemplate.isStrict()) rTemplate.error("Key '" + keys[i] + "' not found!");
+				return; // Not strict: Missing keys have no values
+			}
+			values.add(keyValues);
+			maxLen = Math.min(maxLen, keyValues.size());
+		}
+
+		// Repeat
+		for (int idx = 0; idx < maxLen; idx++) {
+			for (int i = 0; i < keys.length; i++) {
+				out.write(parts[i]);
+				out.write(values.get(i).get(idx));
+			}
+			out.write(parts[keys.length]);
+			out.write('\n');
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < keys.length; i++)
+			sb.append(parts[i] + "{{" + keys[i] + "}}");
+		sb.append(parts[keys.length]);
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,168 @@
+package org.bds.report;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bds.Config;
+import org.bds.util.Gpr;
+
+/**
+ * A template split into sections (lines or multi-line blocks), used
+ * to create a report incrementally:
+ *
+ * 		- Task sections (all keys are task keys) are rendered once per
+ * 		  task and appended to a temporary file (one file per section).
+ *
+ * 		- Summary sections are rendered when the output is created,
+ * 		  task sections are copied from the temporary files.
+ *
+ * @author pcingola
+ */
+public class RTemplateSections {
+
+	public static final String SECTION_EXT = ".section.";
+
+	boolean debug;
+	String outFile;
+	List<RTemplateLine> sections;
+	List<String> sectionFiles; // Temporary file for each task section (null if it's a summary section)
+	List<Writer> writers;
+
+	/**
+	 * Is this a key rendered for each task?
+	 */
+	public static boolean isTaskKey(String key) {
+		return key.startsWith("task") && !key.equals("taskCount") && !key.startsWith("taskFailed");
+	}
+
+	@SuppressWarnings("rawtypes")
+	public RTemplateSections(Class baseClass, String resourceName, String outFile) {
+		this.outFile = outFile;
+		sections = new RTemplate(baseClass, resourceName, outFile).compile();
+		sectionFiles = new ArrayList<>();
+		writers = new ArrayList<>();
+
+		// Create a temporary file for each task section
+		for (RTemplateLine section : sections)
+			add(section);
+	}
+
+	void add(RTemplateLine section) {
+		int num = sectionFiles.size();
+		if (isTaskSection(section)) {
+			String sectionFile = outFile + SECTION_EXT + num;
+			sectionFiles.add(sectionFile);
+			writers.add(open(sectionFile));
+		} else {
+			sectionFiles.add(null);
+			writers.add(null);
+		}
+	}
+
+	/**
+	 * Render a task's sections and append them to the temporary files
+	 * Note: The template should not be strict (e.g. tasks without dependencies do not have 'edge' keys)
+	 */
+	public synchronized void append(RTemplate taskValues) {
+		for (int i = 0; i < sections.size(); i++) {
+			if (writers.get(i) == null) continue;
+			try {
+				sections.get(i).render(taskValues, writers.get(i));
+			} catch (IOException e) {
+				throw new RuntimeException("Error writing to file '" + sectionFiles.get(i) + "'", e);
+			}
+		}
+	}
+
+	/**
+	 * Close and delete temporary files
+	 */
+	public synchronized void close() {
+		for (int i = 0; i < sections.size(); i++) {
+			if (writers.get(i) == null) continue;
+			try {
+				writers.get(i).close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+			writers.set(i, null);
+			new File(sectionFiles.get(i)).delete();
+		}
+	}
+
+	/**
+	 * Create output file: Render summary sections, copy task sections
+	 * from temporary files. Tasks not yet appended to the temporary files
+	 * (e.g. running tasks) can be added in 'pendingValues' (can be null)
+	 *
+	 * The file is written to a temporary name and then renamed, so
+	 * that the report can be viewed while it's being updated.
+	 */
+	public synchronized void createOutput(RTemplate summaryValues, RTemplate pendingValues) {
+		String tmpFile = outFile + ".tmp";
+		if (debug) Gpr.debug("Creating file '" + outFile + "'");
+
+		try {
+			OutputStream os = new FileOutputStream(tmpFile);
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(os));
+			for (int i = 0; i < sections.size(); i++) {
+				RTemplateLine section = sections.get(i);
+				Writer writer = writers.get(i);
+
+				if (writer != null) {
+					// Task section: Copy rendered tasks
+					writer.flush();
+					out.flush();
+					Files.copy(new File(sectionFiles.get(i)).toPath(), os);
+					if (pendingValues != null) section.render(pendingValues, out);
+				} else {
+					section.render(summaryValues, out);
+				}
+			}
+			out.close();
+
+			Files.move(new File(tmpFile).toPath(), new File(outFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException("Error creating file '" + outFile + "'", e);
+		}
+	}
+
+	public String getOutFile() {
+		return outFile;
+	}
+
+	/**
+	 * Are all keys in this section task keys?
+	 */
+	boolean isTaskSection(RTemplateLine section) {
+		List<String> keys = section.getKeys();
+		if (keys.isEmpty()) return false;
+		for (String key : keys)
+			if (!isTaskKey(key)) return false;
+		return true;
+	}
+
+	Writer open(String sectionFile) {
+		try {
+			Config.get().getTaskCleanup().addFile(sectionFile); // Delete section files on exit
+			return new BufferedWriter(new FileWriter(sectionFile));
+		} catch (IOException e) {
+			throw new RuntimeException("Error creating file '" + sectionFile + "'", e);
+		}
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+}
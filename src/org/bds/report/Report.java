@@ -4,8 +4,8 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bds.Bds;
 import org.bds.Config;
@@ -19,6 +19,7 @@ import org.bds.scope.ScopeSymbol;
 import org.bds.task.TailFile;
 import org.bds.task.Task;
 import org.bds.task.TaskDependecies;
+import org.bds.task.TaskResourceUsage;
 import org.bds.util.Gpr;
 import org.bds.util.GprString;
 import org.bds.util.Timer;
@@ -78,6 +79,13 @@ public class Report {
 		debug = Config.get().isDebug();
 	}
 
+	/**
+	 * Add a task to 'task to bdsThread' map
+	 */
+	void addTaskId2BdsThread(Task task, BdsThread bdsThread) {
+		taskId2BdsThread.put(task.getId(), bdsThread);
+	}
+
 	/**
 	 * Create an HTML report (after execution finished)
 	 */
@@ -91,86 +99,33 @@ public class Report {
 			return;
 		}
 
-		// Get report base name or create one
-		String reportBaseName = Config.get().getReportFileName();
-		if (reportBaseName == null) reportBaseName = bdsThread.getBdsThreadId();
-
 		// Create report file names
-		String outFile = reportBaseName + ".report." + (yaml ? "yaml" : "html");
-		String dagJsFile = reportBaseName + ".dag.js";
+		String outFile = getOutFile();
+		String dagJsFile = getDagJsFile();
 		if (verbose) Timer.showStdErr("Writing report file '" + outFile + "'");
 
-		SimpleDateFormat outFormat = new SimpleDateFormat(DATE_FORMAT_HTML);
+		// Incremental report? Tasks have already been rendered
+		ReportIncremental reportIncremental = Config.get().getReportIncremental();
+		if (reportIncremental != null) {
+			reportIncremental.createReport(yaml);
+			if (debug) Gpr.debug("CreateReport: End");
+			return;
+		}
 
 		// Create a template
 		RTemplate rTemplate = new RTemplate(Bds.class, (yaml ? REPORT_TEMPLATE_YAML : REPORT_TEMPLATE), outFile);
 
-		//---
-		// Add summary table values
-		//---
-		Statement statement = bdsThread.getStatement();
-		Timer timer = bdsThread.getTimer();
-		rTemplate.add("fileName", statement.getFileName());
-		rTemplate.add("progName", Gpr.baseName(statement.getFileName()));
-		rTemplate.add("threadIdRoot", bdsThreadId);
-		rTemplate.add("runTime", (timer != null ? timer.toString() : ""));
-		rTemplate.add("startTime", (timer != null ? outFormat.format(timer.getStart()) : ""));
-		rTemplate.add("dagJsFile", dagJsFile);
-
-		// Exit code
-		int exitValue = bdsThread.getExitValue();
-		rTemplate.add("exitValue", "" + exitValue);
-		if (exitValue > 0) rTemplate.add("exitColor", REPORT_RED_COLOR);
-		else rTemplate.add("exitColor", "");
-
 		// Populate task to bdsThread map
-		taskId2BdsThread = new HashMap<>();
-		taskId2BdsThread(bdsThread);
-
-		// Threads details
-		createReport(rTemplate, bdsThread);
+		initTaskId2BdsThread();
 
 		// Add task details and time-line
 		int taskNum = 1;
-		TaskDependecies taskDepsRoot = TaskDependecies.get();
-		for (Task task : taskDepsRoot.getTasks()) {
+		for (Task task : TaskDependecies.get().getTasks()) {
 			createReport(rTemplate, task, taskNum++, yaml);
 		}
 
-		// Number of tasks executed
-		rTemplate.add("taskCount", taskDepsRoot.size());
-		rTemplate.add("taskFailed", taskDepsRoot.countTaskFailed());
-		rTemplate.add("taskFailedNames", taskDepsRoot.taskFailedNames(MAX_TASK_FAILED_NAMES, "\n"));
-
-		// Timeline height
-		int timelineHeight = REPORT_TIMELINE_HEIGHT * (1 + taskNum);
-		rTemplate.add("timelineHeight", timelineHeight);
-
-		//---
-		// Show Scope
-		//---
-		Scope scope = bdsThread.getScope();
-		rTemplate.add("scope.VAR_ARGS_LIST", scope.getSymbol(Scope.GLOBAL_VAR_ARGS_LIST).getValue());
-		rTemplate.add("scope.TASK_OPTION_SYSTEM", scope.getSymbol(ExpressionTask.TASK_OPTION_SYSTEM).getValue());
-		rTemplate.add("scope.TASK_OPTION_CPUS", scope.getSymbol(ExpressionTask.TASK_OPTION_CPUS).getValue());
-
-		// Scope symbols
-		ArrayList<ScopeSymbol> ssyms = new ArrayList<ScopeSymbol>();
-		ssyms.addAll(scope.getSymbols());
-		Collections.sort(ssyms);
-
-		if (!ssyms.isEmpty()) {
-			for (ScopeSymbol ss : ssyms)
-				if (!ss.getType().isFunction()) {
-					rTemplate.add("symType", ss.getType());
-					rTemplate.add("symName", ss.getName());
-					rTemplate.add("symValue", GprString.escape(ss.getValue().toString()));
-				}
-		} else {
-			rTemplate.add("symType", "");
-			rTemplate.add("symName", "");
-			rTemplate.add("symValue", "");
-		}
+		// Summary, threads and scope
+		createReportSummary(rTemplate, taskNum);
 
 		// Create output file
 		rTemplate.createOuptut();
@@ -342,6 +297,15 @@ public class Report {
 			rTemplate.add("taskMem", "");
 		}
 
+		// Task resources used (measured)
+		TaskResourceUsage ru = task.getResourceUsage();
+		rTemplate.add("taskMemPeak", ru.toStringMemPeak());
+		rTemplate.add("taskCpuUser", ru.toStringCpuUser());
+		rTemplate.add("taskCpuSys", ru.toStringCpuSys());
+		rTemplate.add("taskIoRead", ru.toStringIoRead());
+		rTemplate.add("taskIoWrite", ru.toStringIoWrite());
+		rTemplate.add("taskThreadsMax", ru.toStringThreadsMax());
+
 		//---
 		// Graph plot
 		//---
@@ -360,6 +324,70 @@ public class Report {
 		if (debug) Gpr.debug("CreateReport Task '" + task.getId() + "': End");
 	}
 
+	/**
+	 * Add summary table values, threads details and scope
+	 */
+	void createReportSummary(RTemplate rTemplate, int taskNum) {
+		SimpleDateFormat outFormat = new SimpleDateFormat(DATE_FORMAT_HTML);
+
+		//---
+		// Add summary table values
+		//---
+		Statement statement = bdsThread.getStatement();
+		Timer timer = bdsThread.getTimer();
+		rTemplate.add("fileName", statement.getFileName());
+		rTemplate.add("progName", Gpr.baseName(statement.getFileName()));
+		rTemplate.add("threadIdRoot", bdsThread.getBdsThreadId());
+		rTemplate.add("runTime", (timer != null ? timer.toString() : ""));
+		rTemplate.add("startTime", (timer != null ? outFormat.format(timer.getStart()) : ""));
+		rTemplate.add("dagJsFile", getDagJsFile());
+
+		// Exit code
+		int exitValue = bdsThread.getExitValue();
+		rTemplate.add("exitValue", "" + exitValue);
+		if (exitValue > 0) rTemplate.add("exitColor", REPORT_RED_COLOR);
+		else rTemplate.add("exitColor", "");
+
+		// Threads details
+		createReport(rTemplate, bdsThread);
+
+		// Number of tasks executed
+		TaskDependecies taskDepsRoot = TaskDependecies.get();
+		rTemplate.add("taskCount", taskDepsRoot.size());
+		rTemplate.add("taskFailed", taskDepsRoot.countTaskFailed());
+		rTemplate.add("taskFailedNames", taskDepsRoot.taskFailedNames(MAX_TASK_FAILED_NAMES, "\n"));
+
+		// Timeline height
+		int timelineHeight = REPORT_TIMELINE_HEIGHT * (1 + taskNum);
+		rTemplate.add("timelineHeight", timelineHeight);
+
+		//---
+		// Show Scope
+		//---
+		Scope scope = bdsThread.getScope();
+		rTemplate.add("scope.VAR_ARGS_LIST", scope.getSymbol(Scope.GLOBAL_VAR_ARGS_LIST).getValue());
+		rTemplate.add("scope.TASK_OPTION_SYSTEM", scope.getSymbol(ExpressionTask.TASK_OPTION_SYSTEM).getValue());
+		rTemplate.add("scope.TASK_OPTION_CPUS", scope.getSymbol(ExpressionTask.TASK_OPTION_CPUS).getValue());
+
+		// Scope symbols
+		ArrayList<ScopeSymbol> ssyms = new ArrayList<ScopeSymbol>();
+		ssyms.addAll(scope.getSymbols());
+		Collections.sort(ssyms);
+
+		if (!ssyms.isEmpty()) {
+			for (ScopeSymbol ss : ssyms)
+				if (!ss.getType().isFunction()) {
+					rTemplate.add("symType", ss.getType());
+					rTemplate.add("symName", ss.getName());
+					rTemplate.add("symValue", GprString.escape(ss.getValue().toString()));
+				}
+		} else {
+			rTemplate.add("symType", "");
+			rTemplate.add("symName", "");
+			rTemplate.add("symValue", "");
+		}
+	}
+
 	/**
 	 * Create a DAG showing all tasks
 	 */
@@ -405,9 +433,34 @@ public class Report {
 		return str;
 	}
 
+	public String getDagJsFile() {
+		return getReportBaseName() + ".dag.js";
+	}
+
+	public String getOutFile() {
+		return getReportBaseName() + ".report." + (yaml ? "yaml" : "html");
+	}
+
+	/**
+	 * Get report base name or create one
+	 */
+	String getReportBaseName() {
+		String reportBaseName = Config.get().getReportFileName();
+		if (reportBaseName == null) reportBaseName = bdsThread.getBdsThreadId();
+		return reportBaseName;
+	}
+
 	/**
 	 * Convert multi-line string for report
 	 */
+	/**
+	 * Populate 'task to bdsThread' map
+	 */
+	void initTaskId2BdsThread() {
+		taskId2BdsThread = new ConcurrentHashMap<>(); // Tasks can be added while rendering (see ReportIncremental)
+		taskId2BdsThread(bdsThread);
+	}
+
 	String multilineString(String title, String str, boolean yaml) {
 		if (yaml) {
 			// Convert to YAML multi-line
@@ -0,0 +1,212 @@
+package org.bds.report;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.bds.Bds;
+import org.bds.Config;
+import org.bds.run.BdsThread;
+import org.bds.task.Task;
+import org.bds.task.TaskDependecies;
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * Incremental report: Tasks are rendered (in a background thread) as
+ * soon as they finish, and appended to each template's task sections
+ * (see RTemplateSections). Creating a report only requires rendering
+ * the summary and concatenating the pre-rendered sections, so tasks
+ * do not need to be rendered (or kept in memory) all at once.
+ *
+ * Note: Tasks are shown in the order they finished.
+ *
+ * @author pcingola
+ */
+public class ReportIncremental extends Thread {
+
+	public static final int BATCH_TIME = 1000; // Render finished tasks at least every this number of milliseconds
+
+	boolean debug;
+	volatile boolean done;
+	int taskNum; // Number of tasks rendered
+	Report report; // Used for rendering task values
+	RTemplate taskValues, taskValuesYaml;
+	RTemplateSections html, yaml, dag;
+	ConcurrentLinkedQueue<Task> finished; // Tasks finished, not rendered yet
+	Map<String, Task> unrendered; // Tasks created, not rendered yet (by task ID)
+
+	public ReportIncremental(BdsThread bdsThread) {
+		super("ReportIncremental");
+		setDaemon(true);
+
+		Config config = Config.get();
+		debug = config.isDebug();
+		report = new Report(bdsThread, false);
+		finished = new ConcurrentLinkedQueue<>();
+		unrendered = new LinkedHashMap<>();
+
+		// Tasks created before this report (e.g. recovered from a checkpoint)
+		report.initTaskId2BdsThread();
+		for (Task task : TaskDependecies.get().getTasks())
+			unrendered.put(task.getId(), task);
+
+		// Create sections for each template
+		if (config.isReportHtml()) {
+			taskValues = newTemplate(false);
+			html = new RTemplateSections(Bds.class, Report.REPORT_TEMPLATE, report.getOutFile());
+			dag = new RTemplateSections(Bds.class, Report.DAG_TEMPLATE, report.getDagJsFile());
+		}
+
+		if (config.isReportYaml()) {
+			taskValuesYaml = newTemplate(true);
+			yaml = new RTemplateSections(Bds.class, Report.REPORT_TEMPLATE_YAML, new Report(bdsThread, true).getOutFile());
+		}
+	}
+
+	/**
+	 * A task finished: Render it in the background
+	 */
+	public void add(Task task) {
+		if (!done) finished.add(task);
+	}
+
+	/**
+	 * A task was created by 'bdsThread'
+	 */
+	public void created(BdsThread bdsThread, Task task) {
+		if (done) return;
+		synchronized (unrendered) {
+			report.addTaskId2BdsThread(task, bdsThread);
+			unrendered.put(task.getId(), task);
+		}
+	}
+
+	/**
+	 * Create a report (progress or final)
+	 * Tasks that are not finished are rendered, but not appended to the sections
+	 */
+	public synchronized void createReport(boolean isYaml) {
+		RTemplateSections sections = isYaml ? yaml : html;
+		if (sections == null || done) return;
+		Timer timer = new Timer();
+
+		// Render all finished tasks
+		renderFinished();
+
+		// Render tasks not rendered yet (e.g. running tasks, or tasks that never run)
+		RTemplate pendingValues = newTemplate(isYaml);
+		RTemplate pendingDag = newTemplate(false);
+		int num = taskNum;
+		for (Task task : unrendered()) {
+			if (task.isDone()) {
+				render(task);
+			} else {
+				report.createReport(pendingValues, task, ++num, isYaml);
+				if (!isYaml) report.createReport(pendingDag, task, num, false);
+			}
+		}
+
+		// Create output files
+		sections.createOutput(summary(isYaml, num + 1), pendingValues);
+		if (!isYaml) dag.createOutput(summary(false, num + 1), pendingDag);
+
+		if (debug) Timer.showStdErr("ReportIncremental: Created report '" + sections.getOutFile() + "', tasks rendered: " + taskNum + ", elapsed: " + timer);
+	}
+
+	/**
+	 * Stop thread and delete temporary files
+	 */
+	public synchronized void kill() {
+		done = true;
+		finished.clear();
+		if (html != null) html.close();
+		if (dag != null) dag.close();
+		if (yaml != null) yaml.close();
+		notifyAll();
+	}
+
+	RTemplate newTemplate(boolean isYaml) {
+		RTemplate rTemplate = new RTemplate(Bds.class, (isYaml ? Report.REPORT_TEMPLATE_YAML : Report.REPORT_TEMPLATE), null);
+		rTemplate.setStrict(false);
+		return rTemplate;
+	}
+
+	/**
+	 * Render a finished task and append it to all sections
+	 */
+	void render(Task task) {
+		synchronized (unrendered) {
+			// Already rendered, or not a program's task (e.g. a speculative copy)
+			if (unrendered.remove(task.getId()) == null) return;
+		}
+		if (debug) Gpr.debug("ReportIncremental: Rendering task '" + task.getId() + "'");
+		taskNum++;
+
+		if (html != null) {
+			taskValues.clear();
+			report.createReport(taskValues, task, taskNum, false);
+			html.append(taskValues);
+			dag.append(taskValues);
+		}
+
+		if (yaml != null) {
+			taskValuesYaml.clear();
+			report.createReport(taskValuesYaml, task, taskNum, true);
+			yaml.append(taskValuesYaml);
+		}
+	}
+
+	/**
+	 * Render all tasks in the 'finished' queue
+	 */
+	synchronized void renderFinished() {
+		if (done) return;
+		for (Task task = finished.poll(); task != null; task = finished.poll())
+			render(task);
+	}
+
+	@Override
+	public void run() {
+		while (!done) {
+			renderFinished();
+
+			synchronized (this) {
+				try {
+					if (!done) wait(BATCH_TIME);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * Summary values (everything except tasks)
+	 */
+	RTemplate summary(boolean isYaml, int taskNum) {
+		RTemplate rTemplate = newTemplate(isYaml);
+		report.createReportSummary(rTemplate, taskNum);
+		return rTemplate;
+	}
+
+	public synchronized int size() {
+		return taskNum;
+	}
+
+	/**
+	 * A copy of the tasks not rendered yet
+	 */
+	List<Task> unrendered() {
+		synchronized (unrendered) {
+			return new ArrayList<>(unrendered.values());
+		}
+	}
+
+}
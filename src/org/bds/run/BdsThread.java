@@ -18,6 +18,7 @@ import org.bds.Config;
 import org.bds.data.Data;
 import org.bds.executioner.Executioner;
 import org.bds.executioner.Executioners;
+import org.bds.executioner.TaskEventLog;
 import org.bds.lang.BdsNode;
 import org.bds.lang.BlockWithFile;
 import org.bds.lang.Checkpoint;
@@ -31,7 +32,9 @@ import org.bds.lang.Type;
 import org.bds.lang.TypeList;
 import org.bds.lang.Wait;
 import org.bds.osCmd.Exec;
+import org.bds.report.Metrics;
 import org.bds.report.Report;
+import org.bds.report.ReportIncremental;
 import org.bds.scope.Scope;
 import org.bds.scope.ScopeSymbol;
 import org.bds.serialize.BdsSerialize;
@@ -150,7 +153,17 @@ public class BdsThread extends Thread implements BdsSerialize {
 	 * Add a task
 	 */
 	public synchronized void add(Task task) {
+		boolean added = !taskDependecies.hasTask(task.getId()); // A 'dep' task is added again when executed
 		taskDependecies.add(task);
+		if (!added || config == null) return;
+
+		// Task event log (includes dry run and 'dep' tasks)
+		TaskEventLog taskEventLog = config.getTaskEventLog();
+		if (taskEventLog != null) taskEventLog.created(task, getBdsThreadId());
+
+		// Incremental report: Keep track of tasks to render
+		ReportIncremental reportIncremental = config.getReportIncremental();
+		if (reportIncremental != null) reportIncremental.created(this, task);
 	}
 
 	/**
@@ -215,8 +228,11 @@ public class BdsThread extends Thread implements BdsSerialize {
 
 		// Save
 		if (isVerbose()) System.err.println("Creating checkpoint file: '" + checkpointFileName + "'");
+		Timer timer = new Timer();
 		BdsSerializer bdsSer = new BdsSerializer(checkpointFileName, config);
 		bdsSer.save(getRoot()); // Save root thread
+		Metrics.get().checkpoint(timer.elapsed());
+		if (config.getTaskEventLog() != null) config.getTaskEventLog().checkpoint(checkpointFileName, timer.elapsed());
 
 		return checkpointFileName;
 	}
@@ -252,7 +268,7 @@ public class BdsThread extends Thread implements BdsSerialize {
 		if (!logdir.exists()) logdir.mkdirs();
 
 		// No logging? Delete on exit
-		if ((config != null) && !config.isLog()) logdir.deleteOnExit();
+		if ((config != null) && !config.isLog()) config.getTaskCleanup().addDir(logdir.getAbsolutePath());
 	}
 
 	/**
@@ -926,6 +942,30 @@ public class BdsThread extends Thread implements BdsSerialize {
 		// Add this thread to collections
 		BdsThreads.getInstance().add(this);
 
+		// Task event log
+		if (isRoot() && config != null && config.isTaskEventLog()) {
+			TaskEventLog taskEventLog = new TaskEventLog(getBdsThreadId() + TaskEventLog.EVENT_LOG_EXT);
+			taskEventLog.setDebug(isDebug());
+			config.setTaskEventLog(taskEventLog);
+			taskEventLog.start();
+		}
+
+		// Profiler: Sample all threads' program counters
+		if (isRoot() && config != null && config.isProfile()) {
+			Profiler profiler = new Profiler(getBdsThreadId(), config.getProfileInterval());
+			profiler.setDebug(isDebug());
+			profiler.setQuiet(config.isQuiet());
+			config.setProfiler(profiler);
+			profiler.start();
+		}
+
+		// Incremental report: Render tasks in the background, as they finish
+		if (isRoot() && config != null && config.isLog() && config.isReportIncremental()) {
+			ReportIncremental reportIncremental = new ReportIncremental(this);
+			config.setReportIncremental(reportIncremental);
+			reportIncremental.start();
+		}
+
 		// Run statement (i.e. run program)
 		boolean ok = true;
 		runStatement();
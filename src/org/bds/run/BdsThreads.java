@@ -1,7 +1,9 @@
 package org.bds.run;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -62,6 +64,13 @@ public class BdsThreads {
 		return bdsThreadByThreadId.get(id);
 	}
 
+	/**
+	 * Get a copy of all (running) bdsThreads
+	 */
+	public synchronized List<BdsThread> getAll() {
+		return new ArrayList<BdsThread>(bdsThreadByThreadId.values());
+	}
+
 	/**
 	 * Remove a bdsThread
 	 */
@@ -74,6 +83,10 @@ public class BdsThreads {
 		} else throw new RuntimeException("Cannot remove thread '" + bdsThread.getBdsThreadId() + "'");
 	}
 
+	public synchronized int size() {
+		return bdsThreadByThreadId.size();
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
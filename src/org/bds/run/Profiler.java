@@ -0,0 +1,320 @@
+package org.bds.run;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bds.lang.BdsNode;
+import org.bds.lang.BdsNodeFactory;
+import org.bds.lang.BlockWithFile;
+import org.bds.lang.FunctionDeclaration;
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * Sampling profiler for bds programs: Every few milliseconds, the
+ * program counter of each running BdsThread (including 'par' threads)
+ * is sampled and node IDs are mapped to source file and line.
+ *
+ * When the profiler is killed, two files are created:
+ *
+ * 		- '<programId>.profile.folded' : Folded stacks (one stack and
+ * 		  sample count per line), for flame graph tools
+ *
+ * 		- '<programId>.profile.txt' : Time per source line, both 'self'
+ * 		  (line is at the top of the stack) and 'total' (line is anywhere
+ * 		  in the stack)
+ *
+ * Note: This is a wall-clock profiler, time spent waiting (e.g. 'wait'
+ * statements, 'sys' commands) is also counted. Times are added over
+ * all threads.
+ *
+ * @author pcingola
+ */
+public class Profiler extends Thread {
+
+	public static final String PROFILE_FOLDED_EXT = ".profile.folded";
+	public static final String PROFILE_TABLE_EXT = ".profile.txt";
+	public static final int SAMPLE_TIME = 10; // Sample every this number of milliseconds
+
+	static final Frame NO_FRAME = new Frame(null, null, 0);
+
+	boolean debug;
+	boolean quiet;
+	volatile boolean done;
+	int sampleTime;
+	long rounds; // Number of sampling rounds
+	long samples; // Number of samples (all threads)
+	long cpuNanos; // Profiler thread's CPU time (i.e. profiler's overhead), -1 if not available
+	long startTime, endTime;
+	String programId;
+	Map<Integer, Frame> frameByNodeId; // Cache: Frame for each node ID
+	Map<String, Long> countByStack; // Folded stacks
+	Map<Frame, Long> selfByFrame, totalByFrame; // Samples per source line
+	Map<String, String[]> codeLinesByFile;
+
+	/**
+	 * A source code line. Label is shown in folded stacks: Either
+	 * 'file:line', a function name (function's body) or a file name
+	 * (program or included file)
+	 */
+	static class Frame {
+		String label;
+		String fileName;
+		int lineNum;
+		String location;
+
+		Frame(String label, String fileName, int lineNum) {
+			this.fileName = fileName;
+			this.lineNum = lineNum;
+			location = (fileName != null ? Gpr.baseName(fileName) : "") + ":" + lineNum;
+			this.label = label != null ? label : location;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Frame)) return false;
+			Frame f = (Frame) obj;
+			return lineNum == f.lineNum && label.equals(f.label) && (fileName == null ? f.fileName == null : fileName.equals(f.fileName));
+		}
+
+		@Override
+		public int hashCode() {
+			return label.hashCode() * 31 + lineNum;
+		}
+	}
+
+	public Profiler(String programId, int sampleTime) {
+		super("Profiler");
+		setDaemon(true);
+		this.programId = programId;
+		this.sampleTime = sampleTime > 0 ? sampleTime : SAMPLE_TIME;
+		frameByNodeId = new HashMap<>();
+		countByStack = new HashMap<>();
+		selfByFrame = new HashMap<>();
+		totalByFrame = new HashMap<>();
+	}
+
+	/**
+	 * Source code line (empty string if not available)
+	 */
+	String code(Frame frame) {
+		if (codeLinesByFile == null) {
+			codeLinesByFile = new HashMap<>();
+			for (BdsNode node : BdsNodeFactory.get().getNodes()) {
+				if (node instanceof BlockWithFile) {
+					String code = ((BlockWithFile) node).getFileText();
+					if (node.getFileName() != null && code != null) codeLinesByFile.put(node.getFileName(), code.split("\n"));
+				}
+			}
+		}
+
+		String codeLines[] = codeLinesByFile.get(frame.fileName);
+		int idx = frame.lineNum - 1;
+		if (codeLines == null || idx < 0 || idx >= codeLines.length) return "";
+		return codeLines[idx].trim();
+	}
+
+	/**
+	 * Frame for a node ID (NO_FRAME if the node has no source line)
+	 */
+	Frame frame(int nodeId) {
+		Frame frame = frameByNodeId.get(nodeId);
+		if (frame != null) return frame;
+
+		frame = NO_FRAME;
+		BdsNode node = BdsNodeFactory.get().getNode(nodeId);
+		if (node != null && node.getFileName() != null) {
+			BdsNode parent = node.getParent();
+			if (node instanceof BlockWithFile) frame = new Frame(Gpr.baseName(node.getFileName()), node.getFileName(), 0); // Program or included file
+			else if (parent instanceof FunctionDeclaration) frame = new Frame(((FunctionDeclaration) parent).getFunctionName() + "()", node.getFileName(), node.getLineNum()); // Function body
+			else if (node.getLineNum() > 0) frame = new Frame(null, node.getFileName(), node.getLineNum());
+		}
+
+		frameByNodeId.put(nodeId, frame);
+		return frame;
+	}
+
+	public String getFoldedFileName() {
+		return programId + PROFILE_FOLDED_EXT;
+	}
+
+	public synchronized long getSamples() {
+		return samples;
+	}
+
+	public String getTableFileName() {
+		return programId + PROFILE_TABLE_EXT;
+	}
+
+	void inc(Map<Frame, Long> countByFrame, Frame frame) {
+		Long count = countByFrame.get(frame);
+		countByFrame.put(frame, (count != null ? count : 0) + 1);
+	}
+
+	/**
+	 * Stop sampling and write output files
+	 */
+	public synchronized void kill() {
+		if (done) return;
+		done = true;
+		endTime = System.currentTimeMillis();
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		cpuNanos = threadMXBean.isThreadCpuTimeSupported() ? threadMXBean.getThreadCpuTime(getId()) : -1;
+		notifyAll();
+
+		write();
+		if (!quiet) Timer.showStdErr("Profile: " + samples + " samples, written to '" + getFoldedFileName() + "' and '" + getTableFileName() + "'");
+	}
+
+	String pct(long count) {
+		return String.format("%.2f%%", samples > 0 ? (100.0 * count) / samples : 0.0);
+	}
+
+	@Override
+	public void run() {
+		startTime = System.currentTimeMillis();
+
+		while (!done) {
+			sample();
+
+			synchronized (this) {
+				try {
+					if (!done) wait(sampleTime);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sample all running threads
+	 */
+	synchronized void sample() {
+		if (done) return;
+		rounds++;
+
+		for (BdsThread bdsThread : BdsThreads.getInstance().getAll()) {
+			ProgramCounter pc = bdsThread.getPc();
+			if (pc != null) sample(pc.nodeIds());
+		}
+	}
+
+	/**
+	 * Add a stack sample: Map nodes to source lines, consecutive nodes in the same line are merged
+	 */
+	void sample(int nodeIds[]) {
+		StringBuilder stack = new StringBuilder();
+		Set<Frame> frames = new HashSet<>();
+		Frame prev = null;
+
+		for (int nodeId : nodeIds) {
+			Frame frame = frame(nodeId);
+			if (frame == NO_FRAME || frame.equals(prev)) continue;
+
+			if (stack.length() > 0) stack.append(';');
+			stack.append(frame.label);
+
+			frames.add(frame);
+			prev = frame;
+		}
+		if (prev == null) return; // Nothing executing (e.g. thread just started)
+
+		samples++;
+		Long count = countByStack.get(stack.toString());
+		countByStack.put(stack.toString(), (count != null ? count : 0) + 1);
+
+		inc(selfByFrame, prev);
+		for (Frame frame : frames)
+			inc(totalByFrame, frame);
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public void setQuiet(boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Time per line table
+	 */
+	String table() {
+		// Sort by 'self' samples, then 'total' samples
+		List<Frame> frames = new ArrayList<>();
+		for (Frame frame : totalByFrame.keySet())
+			if (frame.lineNum > 0) frames.add(frame); // Skip whole files
+		Collections.sort(frames, new Comparator<Frame>() {
+			@Override
+			public int compare(Frame f1, Frame f2) {
+				int cmp = Long.compare(self(f2), self(f1));
+				if (cmp != 0) return cmp;
+				return Long.compare(totalByFrame.get(f2), totalByFrame.get(f1));
+			}
+		});
+
+		// Each sample accounts for this much time (actual, not nominal, sampling interval)
+		double secsPerSample = rounds > 0 ? ((endTime - startTime) / 1000.0) / rounds : 0;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("# Samples: " + samples + ", sampling rounds: " + rounds + ", elapsed: " + ((endTime - startTime) / 1000.0) + " secs, profiler CPU: " + (cpuNanos >= 0 ? String.format("%.3f secs", cpuNanos / 1.0e9) : "NA") + "\n");
+		sb.append("#location\tself_secs\tself_pct\ttotal_secs\ttotal_pct\tcode\n");
+		for (Frame frame : frames) {
+			long self = self(frame);
+			long total = totalByFrame.get(frame);
+			sb.append(frame.location + (!frame.label.equals(frame.location) ? " " + frame.label : "") //
+					+ "\t" + String.format("%.3f", self * secsPerSample) //
+					+ "\t" + pct(self) //
+					+ "\t" + String.format("%.3f", total * secsPerSample) //
+					+ "\t" + pct(total) //
+					+ "\t" + code(frame) //
+					+ "\n" //
+			);
+		}
+
+		return sb.toString();
+	}
+
+	long self(Frame frame) {
+		Long count = selfByFrame.get(frame);
+		return count != null ? count : 0;
+	}
+
+	/**
+	 * Write folded stacks and time per line table
+	 */
+	void write() {
+		if (debug) Gpr.debug("Profiler: Samples " + samples + ", rounds " + rounds);
+
+		// Folded stacks
+		List<String> stacks = new ArrayList<>(countByStack.keySet());
+		Collections.sort(stacks);
+		StringBuilder folded = new StringBuilder();
+		for (String stack : stacks)
+			folded.append(stack + " " + countByStack.get(stack) + "\n");
+
+		write(getFoldedFileName(), folded.toString());
+		write(getTableFileName(), table());
+	}
+
+	void write(String fileName, String content) {
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(fileName))) {
+			out.write(content);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing to file '" + fileName + "'", e);
+		}
+	}
+
+}
@@ -89,6 +89,17 @@ public class ProgramCounter implements BdsSerialize, Iterable<Integer> {
 		return nodeIds.get(idx);
 	}
 
+	/**
+	 * A copy of all node IDs (can be called from other threads, e.g. Profiler)
+	 */
+	public int[] nodeIds() {
+		Integer ids[] = nodeIds.toArray(new Integer[0]); // Stack's methods are synchronized
+		int nodeIdsArray[] = new int[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			nodeIdsArray[i] = ids[i];
+		return nodeIdsArray;
+	}
+
 	/**
 	 * Add to program counter
 	 */
@@ -37,6 +37,7 @@ public class Scope implements BdsSerialize, Iterable<String> {
 	public static final String GLOBAL_VAR_DAY = "day";
 	public static final String GLOBAL_VAR_WEEK = "week";
 	public static final String GLOBAL_VAR_LOCAL_CPUS = "cpusLocal";
+	public static final String GLOBAL_VAR_POOL_CAPACITY = "poolCapacity"; // Named resource pools declared in the program (e.g. "db:4, download:20")
 
 	// Command line arguments are available in this list
 	public static final String GLOBAL_VAR_ARGS_LIST = "args";
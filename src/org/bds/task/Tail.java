@@ -1,9 +1,11 @@
 package org.bds.task;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 
+import org.bds.util.DirWatcher;
 import org.bds.util.Timer;
 
 /**
@@ -12,20 +14,37 @@ import org.bds.util.Timer;
  * Can 'follow' several files
  * If a file does not exist, tail waits until the file is created
  *
+ * Files in directories that can be watched (see DirWatcher) are only
+ * read when a change notification arrives. Other files and streams
+ * are polled every SLEEP_TIME_DEFAULT milliseconds.
+ *
+ * Output can be rate limited (lines per second) per file and globally.
+ *
  * @author pcingola
  */
 public class Tail extends Thread {
 
 	public static final int SLEEP_TIME_DEFAULT = 100;
+	public static final int RESCAN_TIME = 5; // Check all files every this number of seconds, in case a notification was missed
+	public static final int MAX_OPEN_FILES = 256; // Maximum number of files kept open
 
 	boolean debug, verbose, quiet;
 	boolean running;
+	int openFiles; // Number of files kept open
 	HashMap<String, TailFile> files;
+	HashMap<String, TailFileMulti> filesByPath; // Absolute path => TailFile
 	HashSet<String> toRemove;
+	DirWatcher dirWatcher;
+	TailRateLimit rateLimitGlobal; // Global output limit (null means 'unlimited')
+	double rateLimitFile; // Output limit per file (lines per second, zero means 'unlimited')
+	Timer latestRescan;
 
 	public Tail() {
 		files = new HashMap<String, TailFile>();
+		filesByPath = new HashMap<String, TailFileMulti>();
 		toRemove = new HashSet<String>();
+		dirWatcher = new DirWatcher(getClass().getSimpleName());
+		latestRescan = new Timer();
 		setDaemon(true);
 	}
 
@@ -40,9 +59,7 @@ public class Tail extends Thread {
 
 		TailFile tf = new TailStream(input, showStderr, tailId);
 		if (debug) log("Adding (" + tf.getClass().getSimpleName() + ") '" + tailId + "'");
-		tf.setDebug(debug);
-		tf.setVerbose(verbose);
-		files.put(tailId, tf);
+		add(tailId, tf);
 	}
 
 	/**
@@ -55,11 +72,28 @@ public class Tail extends Thread {
 		if (inputFileName == null) return;
 		if (quiet) return; // Quiet mode? Nothing to do
 
-		TailFile tf = new TailFileMulti(inputFileName, showStderr);
+		TailFileMulti tf = new TailFileMulti(inputFileName, showStderr);
 		if (debug) log("Adding (" + tf.getClass().getSimpleName() + ") '" + inputFileName + "'");
+
+		// Keep file open (unless there are too many open files)
+		if (openFiles < MAX_OPEN_FILES) {
+			tf.setKeepOpen(true);
+			openFiles++;
+		}
+
+		// Only read when notified?
+		File file = new File(inputFileName).getAbsoluteFile();
+		tf.setWatched(dirWatcher.isWatched(file.getParent()));
+		filesByPath.put(file.getPath(), tf);
+
+		add(inputFileName, tf);
+	}
+
+	void add(String name, TailFile tf) {
 		tf.setDebug(debug);
 		tf.setVerbose(verbose);
-		files.put(inputFileName, tf);
+		tf.setRateLimit(rateLimitFile > 0 ? new TailRateLimit(rateLimitFile) : null, rateLimitGlobal);
+		files.put(name, tf);
 	}
 
 	/**
@@ -72,6 +106,28 @@ public class Tail extends Thread {
 		for (TailFile tf : files.values())
 			tf.close();
 		files = new HashMap<String, TailFile>();
+		filesByPath = new HashMap<String, TailFileMulti>();
+		openFiles = 0;
+		dirWatcher.close();
+	}
+
+	/**
+	 * Process change notifications
+	 */
+	synchronized void events(Iterable<String> changedFiles) {
+		boolean all = dirWatcher.isOverflow() || (latestRescan.elapsedSecs() >= RESCAN_TIME);
+
+		if (all) {
+			// Some notifications might be lost: Check all files
+			for (TailFileMulti tf : filesByPath.values())
+				tf.setChanged();
+			latestRescan.start();
+		} else {
+			for (String file : changedFiles) {
+				TailFileMulti tf = filesByPath.get(file);
+				if (tf != null) tf.setChanged();
+			}
+		}
 	}
 
 	/**
@@ -96,6 +152,11 @@ public class Tail extends Thread {
 			if (tf != null) {
 				if (debug) log("Removing (" + tf.getClass().getSimpleName() + ") '" + fileName + "'");
 				tf.close();
+
+				if (tf instanceof TailFileMulti) {
+					if (((TailFileMulti) tf).isKeepOpen()) openFiles--;
+					filesByPath.remove(new File(fileName).getAbsolutePath());
+				}
 			}
 			files.remove(fileName);
 		} catch (Exception e) {
@@ -112,7 +173,9 @@ public class Tail extends Thread {
 			// Loop until kill()
 			while (running) {
 				if (!quiet) tail();
-				sleep(SLEEP_TIME_DEFAULT);
+
+				// Wait for notifications (or timeout)
+				events(dirWatcher.events(SLEEP_TIME_DEFAULT));
 			}
 
 		} catch (Exception e) {
@@ -124,16 +187,38 @@ public class Tail extends Thread {
 
 	public void setDebug(boolean debug) {
 		this.debug = debug;
+		dirWatcher.setDebug(debug);
 	}
 
 	public void setQuiet(boolean quiet) {
 		this.quiet = quiet;
 	}
 
+	/**
+	 * Limit output (lines per second). Zero or negative means 'unlimited'
+	 * @param rateLimitGlobal : Limit for all files
+	 * @param rateLimitFile : Limit for each file
+	 */
+	public void setRateLimit(double rateLimitGlobal, double rateLimitFile) {
+		this.rateLimitGlobal = (rateLimitGlobal > 0 ? new TailRateLimit(rateLimitGlobal) : null);
+		this.rateLimitFile = rateLimitFile;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
 
+	public void setWatch(boolean watch) {
+		dirWatcher.setEnabled(watch);
+	}
+
+	/**
+	 * Number of files (or streams) being followed
+	 */
+	public synchronized int size() {
+		return files.size();
+	}
+
 	/**
 	 * Check if there is output available on any file
 	 */
@@ -1,6 +1,7 @@
 package org.bds.task;
 
 import java.io.File;
+import java.io.PrintStream;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,11 +17,16 @@ import org.bds.util.Timer;
 public abstract class TailFile {
 
 	public static final int MAX_BUFFER_SIZE = 1024 * 1024;
+	public static final int BUFFER_SIZE = 64 * 1024;
 	public static final int DEFAULT_TAIL = 10;
 
 	String inputFileName; // Read (tail -f) from this file
 	boolean showStderr; // Do we show on STDERR? (default STDOUT)
 	boolean debug, verbose;
+	TailRateLimit rateLimit; // Limit lines per second for this file (can be null)
+	TailRateLimit rateLimitGlobal; // Limit lines per second for all files (can be null)
+	long suppressed; // Number of lines not shown due to rate limits
+	boolean suppressLine; // Suppressing the rest of a partially shown line
 
 	public static String tail(String fileName) {
 		return tail(fileName, DEFAULT_TAIL);
@@ -124,6 +130,7 @@ public abstract class TailFile {
 
 	public synchronized void close() {
 		close(true);
+		showSuppressed();
 	}
 
 	/**
@@ -131,6 +138,23 @@ public abstract class TailFile {
 	 */
 	protected abstract void close(boolean attemptTail);
 
+	/**
+	 * Count number of lines (i.e. new line characters)
+	 */
+	int countLines(byte bytes[], int start, int end) {
+		int lines = 0;
+		for (int i = start; i < end; i++)
+			if (bytes[i] == '\n') lines++;
+		return lines;
+	}
+
+	/**
+	 * Name used when showing messages
+	 */
+	public String getName() {
+		return inputFileName;
+	}
+
 	public void log(String msg) {
 		Timer.showStdErr(getClass().getSimpleName() + ": " + msg);
 	}
@@ -140,14 +164,81 @@ public abstract class TailFile {
 	 */
 	protected abstract boolean open();
 
+	/**
+	 * Show bytes (STDOUT or STDERR), applying rate limits
+	 */
+	protected void output(byte bytes[], int len) {
+		PrintStream out = (showStderr ? System.err : System.out);
+		if (rateLimit == null && rateLimitGlobal == null) {
+			out.write(bytes, 0, len);
+			return;
+		}
+
+		// Skip the rest of a suppressed line
+		int start = 0;
+		if (suppressLine) {
+			while (start < len && bytes[start] != '\n')
+				start++;
+			if (start >= len) return; // Line continues on next chunk
+			start++;
+			suppressLine = false;
+		}
+
+		// How many lines can we show?
+		int lines = countLines(bytes, start, len);
+		int allowed = lines;
+		if (rateLimit != null) allowed = rateLimit.acquire(allowed);
+		if (rateLimitGlobal != null) {
+			int allowedGlobal = rateLimitGlobal.acquire(allowed);
+			if (rateLimit != null) rateLimit.release(allowed - allowedGlobal);
+			allowed = allowedGlobal;
+		}
+
+		// Show all lines
+		if (allowed >= lines) {
+			if (allowed > 0) showSuppressed();
+			out.write(bytes, start, len - start);
+			return;
+		}
+
+		// Show only 'allowed' lines, suppress the rest
+		int end = start;
+		for (int shown = 0; shown < allowed; end++)
+			if (bytes[end] == '\n') shown++;
+
+		if (allowed > 0) {
+			showSuppressed();
+			out.write(bytes, start, end - start);
+		}
+
+		suppressLine = (bytes[len - 1] != '\n');
+		suppressed += lines - allowed + (suppressLine ? 1 : 0);
+	}
+
 	public void setDebug(boolean debug) {
 		this.debug = debug;
 	}
 
+	public void setRateLimit(TailRateLimit rateLimit, TailRateLimit rateLimitGlobal) {
+		this.rateLimit = rateLimit;
+		this.rateLimitGlobal = rateLimitGlobal;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
 
+	/**
+	 * Show a message indicating that some lines were suppressed (if any)
+	 */
+	protected void showSuppressed() {
+		if (suppressed <= 0) return;
+
+		PrintStream out = (showStderr ? System.err : System.out);
+		out.println("[bds] Output rate limit: " + suppressed + " line" + (suppressed > 1 ? "s" : "") + " not shown" + (getName() != null ? " (see '" + getName() + "')" : ""));
+		suppressed = 0;
+	}
+
 	/**
 	 * Check if there is output available on any file
 	 * @returns Number of bytes read. Negative number of there were problems
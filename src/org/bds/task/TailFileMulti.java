@@ -1,103 +1,165 @@
 package org.bds.task;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A file to use with 'Tail'
- * 
- * Allows to 'follow' thousands of files by not opening the files unless is needed
+ *
+ * The file is read using a FileChannel that is kept open (unless 'keepOpen'
+ * is false), so we don't need to re-open the file on every check.
+ *
+ * Allows to 'follow' thousands of files: Files are not kept open if there are too many
  * This is to avoid operating systems limits on number of opened file descriptors (see 'ulimit' unix command)
- * 
+ *
  * @author pcingola
  */
 public class TailFileMulti extends TailFile {
 
 	long inputPos = 0; // Latest position read
 	File inputFile;
-	boolean exists = false;
+	FileChannel channel;
+	ByteBuffer buffer;
+	boolean keepOpen; // Keep file channel open between checks?
+	boolean watched; // File's directory is watched: Only check when 'changed' is set
+	boolean changed = true; // Was the file changed since latest check?
+	boolean opened; // Was the file ever opened?
+	boolean deleted; // File was deleted after being opened (e.g. by TaskCleanup): End of stream
 
 	public TailFileMulti(String inputFileName, boolean showStderr) {
 		super(inputFileName, showStderr);
 		inputFile = new File(inputFileName);
 	}
 
-	@Override
-	public synchronized void close() {
-		close(true);
-	}
-
 	/**
 	 * Close file
 	 */
 	@Override
 	protected synchronized void close(boolean attemptTail) {
 		try {
-			if (attemptTail) tail();
+			if (attemptTail) {
+				changed = true; // Make sure we read until the end
+				tail();
+			}
 		} catch (Exception e) {
 			// Nothing to do
 		}
+
+		closeChannel();
+	}
+
+	void closeChannel() {
+		try {
+			if (channel != null) channel.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+		channel = null;
+	}
+
+	public boolean isKeepOpen() {
+		return keepOpen;
 	}
 
 	/**
-	 * Open a file and add buffer to 'buffers'
+	 * Open file channel (if the file exists)
 	 */
 	@Override
 	protected synchronized boolean open() {
-		// We don't really open any file
+		if (channel != null) return true;
+		if (deleted) return false;
+
+		// File does not exists yet? It may be created later. Unless it was deleted
+		if (!inputFile.exists()) {
+			deleted = opened;
+			return false;
+		}
+
+		try {
+			channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+			opened = true;
+		} catch (NoSuchFileException e) {
+			deleted = opened; // File deleted after checking that it exists
+			return false;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
 		return true;
 	}
 
+	/**
+	 * File was changed (we received a notification)
+	 */
+	public void setChanged() {
+		changed = true;
+	}
+
+	public void setKeepOpen(boolean keepOpen) {
+		this.keepOpen = keepOpen;
+	}
+
+	public void setWatched(boolean watched) {
+		this.watched = watched;
+	}
+
 	/**
 	 * Check if there is output available on any file
-	 * @returns Number of bytes read. Negative number of there were problems
+	 * @returns Number of bytes read. Negative number of there were problems or the file was deleted
 	 */
 	@Override
-	protected int tail() {
-		if (!exists) {
-			exists = inputFile.exists();
-			if (!exists) return 0;
+	protected synchronized int tail() {
+		if (deleted) return -1;
+		if (watched && !changed) return 0; // No notifications, nothing to do
+		changed = false;
+
+		// File not kept open: Check length first, so we don't re-open the file on every check
+		if (!keepOpen) {
+			long size = inputFile.length(); // Zero if the file does not exist
+			if (size <= inputPos) {
+				if (size == 0 && opened && !inputFile.exists()) {
+					deleted = true; // File deleted after being opened: End of stream
+					return -1;
+				}
+				return 0;
+			}
 		}
 
-		// File size
-		long size = inputFile.length();
-		if (size <= inputPos) return 0;
+		if (!open()) return deleted ? -1 : 0;
 
-		int avail = (int) (size - inputPos);
 		int count = 0;
 		try {
-			// Open input
-			FileInputStream fis = new FileInputStream(inputFileName);
-			fis.skip(inputPos);
-			BufferedInputStream input = new BufferedInputStream(fis);
-
-			BufferedOutputStream output = null;
-			avail = input.available();
-
-			while (avail > 0) {
-				// Read all available bytes
-				avail = Math.min(avail, MAX_BUFFER_SIZE); // Limit buffer size (some systems return MAX_INT when the file is growing)
-				byte[] bytes = new byte[avail];
-				count = input.read(bytes);
-				inputPos += count;
-
-				// Show bytes
-				if (showStderr) System.err.write(bytes, 0, count);
-				else System.out.write(bytes, 0, count);
-
-				// Write to output
-				if (output != null) output.write(bytes, 0, count);
-
-				avail = input.available(); // Something more to read?
+			// Read all available bytes, in chunks (limit total size, the file might be growing fast)
+			if (channel.size() > inputPos) {
+				if (buffer == null) buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+				int len;
+				while ((count < MAX_BUFFER_SIZE) && (len = channel.read(buffer, inputPos)) > 0) {
+					inputPos += len;
+					count += len;
+					output(buffer.array(), len);
+					buffer.clear();
+				}
+
+				if (count >= MAX_BUFFER_SIZE) changed = true; // More bytes to read, don't wait for a notification
 			}
-
-			// Close input and output
-			input.close();
-		} catch (Exception e) {
+		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			if (!keepOpen) closeChannel();
+		}
+
+		// Nothing left to read and the file was deleted (channel kept open)? End of stream
+		if (count == 0 && keepOpen && !inputFile.exists()) {
+			closeChannel();
+			deleted = true;
+			return -1;
 		}
+
 		return count;
 	}
 }
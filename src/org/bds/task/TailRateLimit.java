@@ -0,0 +1,53 @@
+package org.bds.task;
+
+/**
+ * Limit the number of lines per second shown by 'Tail' (token bucket)
+ *
+ * Short bursts of up to 'BURST_SECS' seconds worth of lines are allowed
+ *
+ * @author pcingola
+ */
+public class TailRateLimit {
+
+	public static final int BURST_SECS = 10;
+
+	double rate; // Lines per second
+	double capacity; // Maximum number of tokens
+	double tokens; // Lines we are allowed to show now
+	long latest; // Latest refill (nanoseconds)
+
+	public TailRateLimit(double rate) {
+		this.rate = rate;
+		capacity = rate * BURST_SECS;
+		tokens = capacity;
+		latest = System.nanoTime();
+	}
+
+	/**
+	 * Request to show 'lines' lines
+	 * @return Number of lines allowed (between 0 and 'lines')
+	 */
+	public synchronized int acquire(int lines) {
+		refill();
+		int allowed = (int) Math.min(lines, Math.floor(tokens));
+		tokens -= allowed;
+		return allowed;
+	}
+
+	/**
+	 * Add tokens according to the time elapsed since latest refill
+	 */
+	void refill() {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + rate * (now - latest) / 1e9);
+		latest = now;
+	}
+
+	/**
+	 * Give back lines that were acquired, but not shown
+	 */
+	public synchronized void release(int lines) {
+		tokens = Math.min(capacity, tokens + lines);
+	}
+
+}
@@ -13,10 +13,9 @@ import org.bds.util.Gpr;
  */
 public class TailStream extends TailFile {
 
-	public static final int MAX_BUFFER_SIZE = 1024 * 1024;
-
 	String tailId;
 	InputStream input;
+	byte buffer[];
 
 	/**
 	 * Provide an inputStream (instead of an input file)
@@ -47,6 +46,11 @@ public class TailStream extends TailFile {
 		}
 	}
 
+	@Override
+	public String getName() {
+		return tailId;
+	}
+
 	/**
 	 * Open a file and add buffer to 'buffers'
 	 */
@@ -77,20 +81,17 @@ public class TailStream extends TailFile {
 		try {
 			int count = 0;
 
-			// Any bytes available on this buffer?
-			int avail = input.available();
-			if (avail > 0) {
-				avail = Math.min(avail, MAX_BUFFER_SIZE); // Limit buffer size (some systems return MAX_INT when the file is growing)
-
-				// Read all available bytes
-				byte[] bytes = new byte[avail];
-				count = input.read(bytes);
+			// Read all available bytes, in chunks (limit total size, some systems return MAX_INT when the file is growing)
+			int avail;
+			while ((count < MAX_BUFFER_SIZE) && (avail = input.available()) > 0) {
+				if (buffer == null) buffer = new byte[BUFFER_SIZE];
+				int len = input.read(buffer, 0, Math.min(avail, buffer.length));
+				if (len <= 0) break;
+				count += len;
 
 				// Show bytes
-				if (showStderr) System.err.write(bytes, 0, count);
-				else System.out.write(bytes, 0, count);
-
-				if (debug) log("Reading '" + (new String(bytes, 0, count)) + "'");
+				output(buffer, len);
+				if (debug) log("Reading '" + (new String(buffer, 0, len)) + "'");
 			}
 
 			return count;
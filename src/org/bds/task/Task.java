@@ -36,13 +36,24 @@ public class Task implements BdsSerialize {
 
 	public static final int MAX_HINT_LEN = 150;
 
+	// Fields moved to TaskStore when the task is stored (see 'store()')
+	static final int STORE_PROGRAM_FILE_NAME = 0;
+	static final int STORE_PROGRAM_TXT = 1;
+	static final int STORE_STDOUT_FILE = 2;
+	static final int STORE_STDERR_FILE = 3;
+	static final int STORE_EXIT_CODE_FILE = 4;
+	static final int STORE_ERROR_MSG = 5;
+	static final int STORE_POST_MORTEM_INFO = 6;
+
 	protected boolean verbose, debug;
 	protected boolean allowEmpty; // Allow empty output file/s
 	protected boolean canFail; // Allow execution to fail
 	protected boolean dependency; // This is a 'dependency' task. Run only if required
+	protected boolean idempotent; // Task can be safely executed more than once (e.g. speculative execution)
 	protected int bdsLineNum; // Program's line number that created this task (used for reporting errors)
 	protected int exitValue; // Exit (error) code
 	protected int failCount, maxFailCount; // Number of times that this task failed
+	protected volatile long storeOffset = -1; // Offset in 'taskStore' (negative if the task has not been stored)
 	protected String id; // Task ID
 	protected String bdsFileName; // Program file that created this task (used for reporting errors)
 	protected String currentDir; // Program's 'current directoy' (cd)
@@ -57,8 +68,11 @@ public class Task implements BdsSerialize {
 	protected String postMortemInfo; // Error information about task that failed
 	protected String taskName = ""; // Task name (can be set by programmer)
 	protected Date runningStartTime, runningEndTime;
+	protected long scheduledTime; // Time when the task was scheduled (milliseconds). Not serialized
 	protected TaskState taskState;
 	protected HostResources resources; // Resources to be consumes when executing this task
+	protected TaskResourceUsage resourceUsage; // Resources used (measured)
+	protected volatile TaskStore taskStore; // Finished task's bulky information is stored here (see 'store()')
 	TaskDependency taskDependency;
 
 	public Task() {
@@ -160,11 +174,10 @@ public class Task implements BdsSerialize {
 	}
 
 	/**
-	 * Create a program file
+	 * Create program's directory and set default file names.
+	 * Note: The program file itself is not created (see createProgramFile)
 	 */
-	public void createProgramFile() {
-		if (debug) Timer.showStdErr("Task: Saving file '" + programFileName + "'");
-
+	public void createProgramDir() {
 		// Create dir
 		try {
 			File dir = new File(programFileName);
@@ -177,15 +190,6 @@ public class Task implements BdsSerialize {
 			// Nothing to do
 		}
 
-		// Create file
-		String shell = Config.get().getTaskShell();
-		shell = "#!" + shell + "\n\n" // Shell to use
-				+ "cd '" + currentDir + "'\n" // Add 'cd' to current dir
-		;
-
-		Gpr.toFile(programFileName, shell + programTxt);
-		(new File(programFileName)).setExecutable(true); // Allow execution
-
 		// Set default file names
 		String base = Gpr.removeExt(programFileName);
 		if (stdoutFile == null) stdoutFile = base + ".stdout";
@@ -193,15 +197,25 @@ public class Task implements BdsSerialize {
 		if (exitCodeFile == null) exitCodeFile = base + ".exitCode";
 	}
 
+	/**
+	 * Create a program file
+	 */
+	public void createProgramFile() {
+		if (debug) Timer.showStdErr("Task: Saving file '" + programFileName + "'");
+
+		createProgramDir();
+
+		// Create file
+		String shell = "#!" + Config.get().getTaskShell() + "\n\n"; // Shell to use
+		Gpr.toFile(programFileName, shell + getProgramScript());
+		(new File(programFileName)).setExecutable(true); // Allow execution
+	}
+
 	/**
 	 * Remove tmp files on exit
 	 */
 	public void deleteOnExit() {
-		if (programFileDir != null) (new File(programFileDir)).deleteOnExit(); // Files are deleted in reverse order. So dir has to be first to make sure it is empty when deleted (otherwise it will not be deleted)
-		if (stdoutFile != null) (new File(stdoutFile)).deleteOnExit();
-		if (stderrFile != null) (new File(stderrFile)).deleteOnExit();
-		if (exitCodeFile != null) (new File(exitCodeFile)).deleteOnExit();
-		if (programFileName != null) (new File(programFileName)).deleteOnExit();
+		Config.get().getTaskCleanup().add(this);
 	}
 
 	public void deleteOutputFilesOnExit() {
@@ -274,11 +288,11 @@ public class Task implements BdsSerialize {
 	}
 
 	public String getErrorMsg() {
-		return errorMsg;
+		return stored(errorMsg, STORE_ERROR_MSG);
 	}
 
 	public String getExitCodeFile() {
-		return exitCodeFile;
+		return stored(exitCodeFile, STORE_EXIT_CODE_FILE);
 	}
 
 	public synchronized int getExitValue() {
@@ -325,17 +339,18 @@ public class Task implements BdsSerialize {
 	}
 
 	public String getPostMortemInfo() {
-		return postMortemInfo;
+		return stored(postMortemInfo, STORE_POST_MORTEM_INFO);
 	}
 
 	public String getProgramFileName() {
-		return programFileName;
+		return stored(programFileName, STORE_PROGRAM_FILE_NAME);
 	}
 
 	/**
 	 * A short text describing the task (extracted from program text)
 	 */
 	public String getProgramHint() {
+		String programTxt = getProgramTxt();
 		if (programTxt == null) return "";
 
 		int maxHintLen = Config.get().getTaskMaxHintLen();
@@ -365,8 +380,27 @@ public class Task implements BdsSerialize {
 		return hint.toString().substring(0, maxHintLen);
 	}
 
+	/**
+	 * Program's script: 'cd' to current dir and execute program
+	 */
+	public String getProgramScript() {
+		return "cd '" + currentDir + "'\n" // Add 'cd' to current dir
+				+ getProgramTxt();
+	}
+
+	/**
+	 * Program's script to be fed to the shell through STDIN (instead of
+	 * creating a program file).
+	 * Note: The shell parses the whole block before executing it, and
+	 * the block's STDIN is redirected, so commands reading STDIN cannot
+	 * consume the rest of the script
+	 */
+	public String getProgramStdin() {
+		return "{\n" + getProgramScript() + "\n} < /dev/null\n";
+	}
+
 	public String getProgramTxt() {
-		return programTxt;
+		return stored(programTxt, STORE_PROGRAM_TXT);
 	}
 
 	public String getQueue() {
@@ -377,6 +411,10 @@ public class Task implements BdsSerialize {
 		return resources;
 	}
 
+	public TaskResourceUsage getResourceUsage() {
+		return resourceUsage;
+	}
+
 	public Date getRunningEndTime() {
 		return runningEndTime;
 	}
@@ -385,12 +423,16 @@ public class Task implements BdsSerialize {
 		return runningStartTime;
 	}
 
+	public long getScheduledTime() {
+		return scheduledTime;
+	}
+
 	public String getStderrFile() {
-		return stderrFile;
+		return stored(stderrFile, STORE_STDERR_FILE);
 	}
 
 	public String getStdoutFile() {
-		return stdoutFile;
+		return stored(stdoutFile, STORE_STDOUT_FILE);
 	}
 
 	public String getTaskName() {
@@ -440,6 +482,10 @@ public class Task implements BdsSerialize {
 		return isStateError() || (exitValue != 0) || !checkOutputFiles().isEmpty();
 	}
 
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
 	/**
 	 * Has this task been scheduled to be started?
 	 */
@@ -473,6 +519,13 @@ public class Task implements BdsSerialize {
 		return taskState.isStarted();
 	}
 
+	/**
+	 * Has this task been moved to the task store?
+	 */
+	public boolean isStored() {
+		return storeOffset >= 0;
+	}
+
 	/**
 	 * Has this task run out of time?
 	 */
@@ -492,12 +545,31 @@ public class Task implements BdsSerialize {
 	 * Reset parameters and allow a task to be re-executed
 	 */
 	public void reset() {
+		restore();
 		taskState = TaskState.NONE;
 		exitValue = 0;
 		runningStartTime = null;
 		runningEndTime = null;
 		postMortemInfo = null;
 		errorMsg = null;
+		resourceUsage = new TaskResourceUsage();
+	}
+
+	/**
+	 * Bring back information from the task store (e.g. the task is re-executed)
+	 */
+	protected synchronized void restore() {
+		if (!isStored()) return;
+
+		String fields[] = taskStore.read(storeOffset);
+		programFileName = fields[STORE_PROGRAM_FILE_NAME];
+		programTxt = fields[STORE_PROGRAM_TXT];
+		stdoutFile = fields[STORE_STDOUT_FILE];
+		stderrFile = fields[STORE_STDERR_FILE];
+		exitCodeFile = fields[STORE_EXIT_CODE_FILE];
+		errorMsg = fields[STORE_ERROR_MSG];
+		postMortemInfo = fields[STORE_POST_MORTEM_INFO];
+		storeOffset = -1; // Note: 'taskStore' is kept, so a concurrent 'stored()' can still read the record
 	}
 
 	@SuppressWarnings("unchecked")
@@ -534,6 +606,13 @@ public class Task implements BdsSerialize {
 
 		resources = new HostResources();
 		resources.serializeParse(serializer);
+
+		resourceUsage = new TaskResourceUsage();
+		resourceUsage.serializeParse(serializer);
+
+		// Optional field: Not available in older checkpoint files
+		String pools = serializer.getNextField();
+		if (!pools.isEmpty()) resources.setPools(serializer.parseString(pools));
 	}
 
 	@Override
@@ -549,15 +628,17 @@ public class Task implements BdsSerialize {
 				+ "\t" + exitValue //
 				+ "\t" + serializer.serializeSaveValue(node) //
 				+ "\t" + serializer.serializeSaveValue(queue) //
-				+ "\t" + serializer.serializeSaveValue(programFileName) //
-				+ "\t" + serializer.serializeSaveValue(programTxt) //
-				+ "\t" + serializer.serializeSaveValue(stdoutFile) //
-				+ "\t" + serializer.serializeSaveValue(stderrFile) //
-				+ "\t" + serializer.serializeSaveValue(exitCodeFile) //
+				+ "\t" + serializer.serializeSaveValue(getProgramFileName()) //
+				+ "\t" + serializer.serializeSaveValue(getProgramTxt()) //
+				+ "\t" + serializer.serializeSaveValue(getStdoutFile()) //
+				+ "\t" + serializer.serializeSaveValue(getStderrFile()) //
+				+ "\t" + serializer.serializeSaveValue(getExitCodeFile()) //
 				+ "\t" + serializer.serializeSaveValue(currentDir) //
 				+ "\t" + serializer.serializeSaveValue(taskDependency.getInputs()) //
 				+ "\t" + serializer.serializeSaveValue(taskDependency.getOutputs()) //
 				+ "\t" + serializer.serializeSave(resources) //
+				+ "\t" + serializer.serializeSave(resourceUsage) //
+				+ "\t" + serializer.serializeSaveValue(resources.getPoolsSpec()) //
 				+ "\n";
 		// TODO: Add tasks by ID. Make sure all tasks are stored before this one
 		//				+ "\t" + serializer.serializeSaveValue(taskDependency.getTasksIds()) //
@@ -584,6 +665,7 @@ public class Task implements BdsSerialize {
 	}
 
 	public void setErrorMsg(String errorMsg) {
+		restore();
 		this.errorMsg = errorMsg;
 	}
 
@@ -591,6 +673,10 @@ public class Task implements BdsSerialize {
 		this.exitValue = exitValue;
 	}
 
+	public void setIdempotent(boolean idempotent) {
+		this.idempotent = idempotent;
+	}
+
 	public void setMaxFailCount(int maxFailCount) {
 		this.maxFailCount = maxFailCount;
 	}
@@ -604,6 +690,7 @@ public class Task implements BdsSerialize {
 	}
 
 	public void setPostMortemInfo(String postMortemInfo) {
+		restore();
 		this.postMortemInfo = postMortemInfo;
 	}
 
@@ -636,8 +723,10 @@ public class Task implements BdsSerialize {
 
 		switch (newState) {
 		case SCHEDULED:
-			if (taskState == TaskState.NONE) setState(newState);
-			else throw new RuntimeException("Task: Cannot jump from state '" + taskState + "' to state '" + newState + "'\n" + this);
+			if (taskState == TaskState.NONE) {
+				setState(newState);
+				scheduledTime = System.currentTimeMillis();
+			} else throw new RuntimeException("Task: Cannot jump from state '" + taskState + "' to state '" + newState + "'\n" + this);
 			break;
 
 		case STARTED:
@@ -700,10 +789,44 @@ public class Task implements BdsSerialize {
 		}
 	}
 
+	/**
+	 * Move bulky information (program, file names, error messages) of
+	 * a finished task to the task store, so it does not use heap space.
+	 * Information is read back from the store when needed.
+	 */
+	public synchronized void store(TaskStore taskStore) {
+		if (isStored() || !isDone()) return;
+
+		String fields[] = new String[STORE_POST_MORTEM_INFO + 1];
+		fields[STORE_PROGRAM_FILE_NAME] = programFileName;
+		fields[STORE_PROGRAM_TXT] = programTxt;
+		fields[STORE_STDOUT_FILE] = stdoutFile;
+		fields[STORE_STDERR_FILE] = stderrFile;
+		fields[STORE_EXIT_CODE_FILE] = exitCodeFile;
+		fields[STORE_ERROR_MSG] = errorMsg;
+		fields[STORE_POST_MORTEM_INFO] = postMortemInfo;
+
+		this.taskStore = taskStore;
+		storeOffset = taskStore.write(fields);
+		programFileName = programTxt = stdoutFile = stderrFile = exitCodeFile = errorMsg = postMortemInfo = null;
+	}
+
+	/**
+	 * Get a field's value: Read it from the task store if the task has been stored
+	 */
+	String stored(String value, int fieldNum) {
+		if (value != null) return value;
+		long storeOffset = this.storeOffset; // Read offset first: 'taskStore' is set before the offset (see 'store()')
+		TaskStore taskStore = this.taskStore;
+		if (taskStore == null || storeOffset < 0) return null;
+		return taskStore.read(storeOffset)[fieldNum];
+	}
+
 	/**
 	 * Calculate task's state when the process finished
 	 */
 	public TaskState taskState() {
+		String exitCodeFile = getExitCodeFile();
 		if (exitCodeFile != null && Gpr.exists(exitCodeFile)) {
 			// Use exit file
 			String exitStr = Gpr.readFile(exitCodeFile).trim();
@@ -761,8 +884,8 @@ public class Task implements BdsSerialize {
 				sb.append(" ]\n");
 			}
 
-			sb.append("\tScript file        : '" + programFileName + "'\n");
-			if (errorMsg != null) sb.append("\tError message      : '" + errorMsg + "'\n");
+			sb.append("\tScript file        : '" + getProgramFileName() + "'\n");
+			if (getErrorMsg() != null) sb.append("\tError message      : '" + getErrorMsg() + "'\n");
 			sb.append("\tExit status        : '" + exitValue + "'\n");
 
 			String ch = checkOutputFiles();
@@ -774,11 +897,11 @@ public class Task implements BdsSerialize {
 			if (showCode && (prog != null) && !prog.isEmpty()) sb.append("\tProgram            : \n" + Gpr.prependEachLine("\t\t", getProgramTxt()));
 
 			// Show StdErr
-			String tailErr = TailFile.tail(stderrFile, Config.get().getTailLines());
+			String tailErr = TailFile.tail(getStderrFile(), Config.get().getTailLines());
 			if ((tailErr != null) && !tailErr.isEmpty()) sb.append("\tStdErr (" + Config.get().getTailLines() + " lines)  :\n" + Gpr.prependEachLine("\t\t", tailErr));
 
 			// Show StdOut
-			String tailOut = TailFile.tail(stdoutFile, Config.get().getTailLines());
+			String tailOut = TailFile.tail(getStdoutFile(), Config.get().getTailLines());
 			if ((tailOut != null) && !tailOut.isEmpty()) sb.append("\tStdOut (" + Config.get().getTailLines() + " lines)  :\n" + Gpr.prependEachLine("\t\t", tailOut));
 		} else sb.append("'" + bdsFileName + "', line " + bdsLineNum);
 
@@ -0,0 +1,239 @@
+package org.bds.task;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * Delete task's temporary files (program, STDOUT, STDERR, exit code)
+ * instead of using 'File.deleteOnExit()' on each of them.
+ *
+ * Files that are no longer needed (e.g. program and exit files of
+ * tasks that finished OK) are deleted in a background thread, in
+ * batches. All other files are deleted when bds finishes (see 'kill()').
+ *
+ * Pending deletions are stored in compact form: Task files sharing
+ * the same base name (i.e. only the extension is different) are
+ * stored as a single entry.
+ *
+ * A single shutdown hook deletes pending files of all instances
+ * that were not killed (e.g. if bds finishes abruptly).
+ *
+ * @author pcingola
+ */
+public class TaskCleanup extends Thread {
+
+	public static final String TASK_FILE_EXTENSIONS[] = { ".sh", ".stdout", ".stderr", ".exitCode" };
+	public static final int BATCH_SIZE = 1000; // Delete files when this number of files are queued
+	public static final int BATCH_TIME = 1000; // Delete files at least every this number of milliseconds
+
+	static Set<TaskCleanup> pending; // Instances to clean up on shutdown (null until the shutdown hook is added)
+
+	boolean debug;
+	volatile boolean done;
+	AtomicInteger deletedCount;
+	ConcurrentLinkedQueue<String> deleteNow; // Files to be deleted by the background thread
+	List<String> baseNames; // Task files to delete on exit (one entry per task, all 'TASK_FILE_EXTENSIONS')
+	List<String> files; // Other files to delete on exit
+	LinkedHashSet<String> dirs; // Directories to delete on exit (if empty)
+
+	public TaskCleanup() {
+		super("TaskCleanup");
+		setDaemon(true);
+		deletedCount = new AtomicInteger();
+		deleteNow = new ConcurrentLinkedQueue<String>();
+		baseNames = new ArrayList<String>();
+		files = new ArrayList<String>();
+		dirs = new LinkedHashSet<String>();
+		register(this);
+	}
+
+	/**
+	 * Delete task's files when bds finishes
+	 */
+	public synchronized void add(Task task) {
+		String programFile = task.getProgramFileName();
+		if (programFile == null) return;
+
+		String base = Gpr.removeExt(programFile);
+
+		// All files named as 'base + extension'? Then store only the base name
+		if (programFile.equals(base + ".sh") //
+				&& isDefaultName(task.getStdoutFile(), base, ".stdout") //
+				&& isDefaultName(task.getStderrFile(), base, ".stderr") //
+				&& isDefaultName(task.getExitCodeFile(), base, ".exitCode") //
+		) {
+			baseNames.add(base);
+		} else {
+			addFile(programFile);
+			addFile(task.getStdoutFile());
+			addFile(task.getStderrFile());
+			addFile(task.getExitCodeFile());
+		}
+
+		// Task's directory is deleted (if empty) at the end
+		File dir = new File(programFile).getAbsoluteFile().getParentFile();
+		if (dir != null) dirs.add(dir.getPath());
+	}
+
+	/**
+	 * Delete a directory when bds finishes (only if it's empty)
+	 */
+	public synchronized void addDir(String dir) {
+		dirs.add(dir);
+	}
+
+	/**
+	 * Delete a file when bds finishes
+	 */
+	public synchronized void addFile(String file) {
+		if (file != null) files.add(file);
+	}
+
+	/**
+	 * Delete a file
+	 */
+	boolean delete(String file) {
+		if (debug) Gpr.debug("Deleting file '" + file + "'");
+		if (!new File(file).delete()) return false;
+		deletedCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Delete all pending files and directories (only once)
+	 */
+	synchronized void deleteAll() {
+		if (done) return;
+		done = true;
+
+		Timer timer = new Timer();
+		deleteBatch();
+
+		for (String base : baseNames)
+			for (String ext : TASK_FILE_EXTENSIONS)
+				delete(base + ext);
+
+		for (String file : files)
+			delete(file);
+
+		// Delete directories (a directory could be within another one, so delete in reverse order)
+		List<String> dirList = new ArrayList<String>(dirs);
+		for (int i = dirList.size() - 1; i >= 0; i--)
+			delete(dirList.get(i));
+
+		if (debug) Timer.showStdErr("TaskCleanup: Deleted " + deletedCount.get() + " files, elapsed " + timer.elapsed() + " ms");
+		baseNames.clear();
+		files.clear();
+		dirs.clear();
+		unregister(this);
+	}
+
+	/**
+	 * Delete all files queued for immediate deletion
+	 */
+	synchronized void deleteBatch() {
+		for (String file = deleteNow.poll(); file != null; file = deleteNow.poll())
+			delete(file);
+	}
+
+	/**
+	 * Delete files that are no longer needed from a task that
+	 * finished OK (program and exit code files). STDOUT and STDERR
+	 * are kept until the end (e.g. they can be read using 'stdout()').
+	 */
+	public void deleteNow(Task task) {
+		deleteNow(task.getProgramFileName());
+		deleteNow(task.getExitCodeFile());
+	}
+
+	/**
+	 * Delete file in the background (as soon as possible)
+	 */
+	public void deleteNow(String file) {
+		if (file == null || done) return;
+		deleteNow.add(file);
+		if (deleteNow.size() >= BATCH_SIZE) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	public int getDeletedCount() {
+		return deletedCount.get();
+	}
+
+	boolean isDefaultName(String file, String base, String ext) {
+		return file != null && file.equals(base + ext);
+	}
+
+	/**
+	 * Stop thread and delete all pending files
+	 */
+	public synchronized void kill() {
+		deleteAll();
+		notifyAll();
+	}
+
+	/**
+	 * Make sure files are deleted even if bds finishes abruptly (shutdown hook is added only once)
+	 */
+	static synchronized void register(TaskCleanup taskCleanup) {
+		if (pending == null) {
+			pending = new LinkedHashSet<TaskCleanup>();
+			Runtime.getRuntime().addShutdownHook(new Thread("TaskCleanupShutdown") {
+				@Override
+				public void run() {
+					for (TaskCleanup tc : unregisterAll())
+						tc.deleteAll();
+				}
+			});
+		}
+		pending.add(taskCleanup);
+	}
+
+	@Override
+	public void run() {
+		while (!done) {
+			deleteBatch();
+
+			synchronized (this) {
+				try {
+					if (!done && deleteNow.size() < BATCH_SIZE) wait(BATCH_TIME);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public synchronized int size() {
+		return baseNames.size() + files.size() + dirs.size() + deleteNow.size();
+	}
+
+	static synchronized void unregister(TaskCleanup taskCleanup) {
+		pending.remove(taskCleanup);
+	}
+
+	/**
+	 * Remove all instances (so they are cleaned up outside this class' lock)
+	 */
+	static synchronized List<TaskCleanup> unregisterAll() {
+		List<TaskCleanup> tcs = new ArrayList<TaskCleanup>(pending);
+		pending.clear();
+		return tcs;
+	}
+
+}
@@ -0,0 +1,189 @@
+package org.bds.task;
+
+import java.util.List;
+
+import org.bds.serialize.BdsSerialize;
+import org.bds.serialize.BdsSerializer;
+import org.bds.util.Gpr;
+import org.bds.util.ProcStat;
+import org.bds.util.Timer;
+
+/**
+ * Resources used by a task (measured while the task is running), as
+ * opposed to resources requested by the task (see HostResources)
+ *
+ * Values are updated using several samples of the task's process tree,
+ * so they are the maximum values observed.
+ *
+ * Any negative number means "information not available"
+ *
+ * @author pcingola
+ */
+public class TaskResourceUsage implements BdsSerialize {
+
+	private static int taskResourceUsageNum = 0;
+
+	int id;
+	long memPeak = -1; // Peak resident memory (bytes)
+	long cpuUser = -1; // CPU user time (milliseconds)
+	long cpuSys = -1; // CPU system time (milliseconds)
+	long ioRead = -1; // Bytes read from storage
+	long ioWrite = -1; // Bytes written to storage
+	int threadsMax = -1; // Maximum number of threads
+
+	protected static int nextId() {
+		return ++taskResourceUsageNum;
+	}
+
+	/**
+	 * Sum a (sample of a) process tree
+	 */
+	public static TaskResourceUsage sum(List<ProcStat> procStats) {
+		TaskResourceUsage tru = new TaskResourceUsage();
+		for (ProcStat ps : procStats) {
+			tru.memPeak = sum(tru.memPeak, ps.getMem());
+			tru.cpuUser = sum(tru.cpuUser, ps.getCpuUser());
+			tru.cpuSys = sum(tru.cpuSys, ps.getCpuSys());
+			tru.ioRead = sum(tru.ioRead, ps.getIoRead());
+			tru.ioWrite = sum(tru.ioWrite, ps.getIoWrite());
+			tru.threadsMax = (int) sum(tru.threadsMax, ps.getThreads());
+		}
+		return tru;
+	}
+
+	static long sum(long a, long b) {
+		if (b < 0) return a;
+		if (a < 0) return b;
+		return a + b;
+	}
+
+	/**
+	 * Show a value (or empty string if the value is not available)
+	 */
+	static String toString(long value, String type) {
+		if (value < 0) return "";
+		if (type.equals("mem")) return Gpr.toStringMem(value);
+		if (type.equals("time")) return Timer.toDDHHMMSSms(value);
+		return "" + value;
+	}
+
+	public TaskResourceUsage() {
+		id = nextId();
+	}
+
+	public long getCpuSys() {
+		return cpuSys;
+	}
+
+	public long getCpuUser() {
+		return cpuUser;
+	}
+
+	public long getIoRead() {
+		return ioRead;
+	}
+
+	public long getIoWrite() {
+		return ioWrite;
+	}
+
+	public long getMemPeak() {
+		return memPeak;
+	}
+
+	@Override
+	public String getNodeId() {
+		return getClass().getSimpleName() + ":" + id;
+	}
+
+	public int getThreadsMax() {
+		return threadsMax;
+	}
+
+	/**
+	 * Is there any information available?
+	 */
+	public boolean isEmpty() {
+		return memPeak < 0 && cpuUser < 0 && cpuSys < 0 && ioRead < 0 && ioWrite < 0 && threadsMax < 0;
+	}
+
+	/**
+	 * Parse next field (missing fields, e.g. from older checkpoints, mean "not available")
+	 */
+	long parseField(BdsSerializer serializer) {
+		String field = serializer.getNextField();
+		return field.isEmpty() ? -1 : Gpr.parseLongSafe(field);
+	}
+
+	@Override
+	public void serializeParse(BdsSerializer serializer) {
+		memPeak = parseField(serializer);
+		cpuUser = parseField(serializer);
+		cpuSys = parseField(serializer);
+		ioRead = parseField(serializer);
+		ioWrite = parseField(serializer);
+		threadsMax = (int) parseField(serializer);
+	}
+
+	@Override
+	public String serializeSave(BdsSerializer serializer) {
+		return memPeak + "\t" + cpuUser + "\t" + cpuSys + "\t" + ioRead + "\t" + ioWrite + "\t" + threadsMax;
+	}
+
+	public synchronized void set(long memPeak, long cpuUser, long cpuSys, long ioRead, long ioWrite, int threadsMax) {
+		this.memPeak = memPeak;
+		this.cpuUser = cpuUser;
+		this.cpuSys = cpuSys;
+		this.ioRead = ioRead;
+		this.ioWrite = ioWrite;
+		this.threadsMax = threadsMax;
+	}
+
+	@Override
+	public String toString() {
+		return "mem peak: " + toStringMemPeak() //
+				+ ", cpu user: " + toStringCpuUser() //
+				+ ", cpu sys: " + toStringCpuSys() //
+				+ ", io read: " + toStringIoRead() //
+				+ ", io write: " + toStringIoWrite() //
+				+ ", threads: " + toStringThreadsMax() //
+				;
+	}
+
+	public String toStringCpuSys() {
+		return toString(cpuSys, "time");
+	}
+
+	public String toStringCpuUser() {
+		return toString(cpuUser, "time");
+	}
+
+	public String toStringIoRead() {
+		return toString(ioRead, "mem");
+	}
+
+	public String toStringIoWrite() {
+		return toString(ioWrite, "mem");
+	}
+
+	public String toStringMemPeak() {
+		return toString(memPeak, "mem");
+	}
+
+	public String toStringThreadsMax() {
+		return toString(threadsMax, "");
+	}
+
+	/**
+	 * Update using a new sample: Keep maximum values
+	 */
+	public synchronized void update(TaskResourceUsage sample) {
+		memPeak = Math.max(memPeak, sample.memPeak);
+		cpuUser = Math.max(cpuUser, sample.cpuUser);
+		cpuSys = Math.max(cpuSys, sample.cpuSys);
+		ioRead = Math.max(ioRead, sample.ioRead);
+		ioWrite = Math.max(ioWrite, sample.ioWrite);
+		threadsMax = Math.max(threadsMax, sample.threadsMax);
+	}
+
+}
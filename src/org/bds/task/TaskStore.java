@@ -0,0 +1,159 @@
+package org.bds.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * Store finished tasks' bulky information (program, file names,
+ * error messages) on disk, so that it does not use heap space.
+ *
+ * Records are appended to a single file and read back (on demand)
+ * using the offset returned when the record was written. The latest
+ * record read is cached, since it is usually read several times in
+ * a row (e.g. when creating a report).
+ *
+ * The file is deleted when the store is closed.
+ *
+ * @author pcingola
+ */
+public class TaskStore {
+
+	boolean debug;
+	int count; // Number of records written
+	long size; // File size
+	long cachedOffset = -1;
+	String cached[];
+	String fileName;
+	RandomAccessFile file;
+
+	public TaskStore(String fileName) {
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Close and delete file
+	 */
+	public synchronized void close() {
+		if (file == null) return;
+		if (debug) Timer.showStdErr("TaskStore: Closing file '" + fileName + "', records: " + count + ", size: " + Gpr.toStringMem(size));
+
+		try {
+			file.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error closing file '" + fileName + "'\n", e);
+		}
+
+		file = null;
+		cached = null;
+		cachedOffset = -1;
+		new File(fileName).delete();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Open file (create a new one)
+	 */
+	void open() throws IOException {
+		File f = new File(fileName);
+		if (f.getParentFile() != null) f.getParentFile().mkdirs();
+		file = new RandomAccessFile(f, "rw");
+		file.setLength(0);
+		size = 0;
+	}
+
+	/**
+	 * Read a record
+	 */
+	public synchronized String[] read(long offset) {
+		if (offset == cachedOffset) return cached;
+		if (file == null) throw new RuntimeException("Cannot read from closed task store '" + fileName + "'");
+
+		try {
+			// Read the whole record
+			file.seek(offset);
+			byte header[] = new byte[4];
+			file.readFully(header);
+			byte bytes[] = new byte[ByteBuffer.wrap(header).getInt()];
+			file.readFully(bytes);
+
+			// Parse fields
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			String fields[] = new String[in.readInt()];
+			for (int i = 0; i < fields.length; i++) {
+				int len = in.readInt();
+				if (len < 0) continue; // Null field
+
+				byte str[] = new byte[len];
+				in.readFully(str);
+				fields[i] = new String(str, StandardCharsets.UTF_8);
+			}
+
+			cachedOffset = offset;
+			cached = fields;
+			return fields;
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading from task store '" + fileName + "', offset " + offset + "\n", e);
+		}
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	/**
+	 * Append a record
+	 * @return Record's offset
+	 */
+	public synchronized long write(String fields[]) {
+		try {
+			if (file == null) open();
+
+			// Create record
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(fields.length);
+			for (String field : fields) {
+				if (field == null) {
+					out.writeInt(-1);
+				} else {
+					byte str[] = field.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(str.length);
+					out.write(str);
+				}
+			}
+			out.close();
+
+			// Append record (length first), using a single 'write'
+			ByteBuffer record = ByteBuffer.allocate(4 + bytes.size());
+			record.putInt(bytes.size());
+			record.put(bytes.toByteArray());
+
+			long offset = size;
+			file.seek(offset);
+			file.write(record.array());
+			size = file.getFilePointer();
+			count++;
+			return offset;
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing to task store '" + fileName + "'\n", e);
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.bds.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.bds.executioner.NotifyTaskState;
+import org.bds.task.Task;
+import org.bds.task.TaskState;
+
+/**
+ * Count finished tasks, so that test cases can wait for commands
+ * to finish (with a timeout) instead of polling them
+ *
+ * @author pcingola
+ */
+public class TaskFinishedLatch implements NotifyTaskState {
+
+	CountDownLatch latch;
+
+	public TaskFinishedLatch(int count) {
+		latch = new CountDownLatch(count);
+	}
+
+	/**
+	 * Wait until all tasks finish. Fail if it takes more than 'timeout' milliseconds
+	 */
+	public void await(String message, long timeout) {
+		try {
+			if (!latch.await(timeout, TimeUnit.MILLISECONDS)) Assert.fail(message + " (timeout " + timeout + " ms, tasks not finished: " + latch.getCount() + ")");
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void taskFinished(Task task, TaskState taskState) {
+		latch.countDown();
+	}
+
+	@Override
+	public void taskRunning(Task task) {
+		// Nothing to do
+	}
+
+	@Override
+	public void taskStarted(Task task) {
+		// Nothing to do
+	}
+
+}
@@ -3,6 +3,8 @@ package org.bds.test;
 import java.util.ArrayList;
 import java.util.HashMap;
 
+import junit.framework.Assert;
+
 import org.bds.Bds;
 import org.bds.Config;
 import org.bds.executioner.Executioners;
@@ -16,9 +18,18 @@ import org.junit.Before;
  */
 public class TestCasesBase {
 
+	public static final int WAIT_SLEEP_TIME = 10; // Check conditions every this number of milliseconds (see 'waitFor')
+
 	public boolean debug = false;
 	public boolean verbose = false;
 
+	/**
+	 * A condition to wait for (see 'waitFor')
+	 */
+	public interface Condition {
+		public boolean isTrue();
+	}
+
 	@Before
 	public void before() {
 		// Reset singletons
@@ -45,6 +56,23 @@ public class TestCasesBase {
 		bdsTest.checkCompileOk();
 	}
 
+	/**
+	 * Create a configuration using test case's 'debug' and 'verbose' values
+	 */
+	Config newConfig() {
+		return newConfig(Config.DEFAULT_CONFIG_FILE);
+	}
+
+	/**
+	 * Create a configuration from 'configFileName' using test case's 'debug' and 'verbose' values
+	 */
+	Config newConfig(String configFileName) {
+		Config config = new Config(configFileName);
+		config.setDebug(debug);
+		config.setVerbose(verbose);
+		return config;
+	}
+
 	void runAndCheck(int expectedExitCode, String fileName, String varname, Object expectedValue) {
 		BdsTest bdsTest = new BdsTest(fileName, verbose, debug);
 		bdsTest.run();
@@ -198,4 +226,26 @@ public class TestCasesBase {
 		bdsTest.checkRunOk();
 	}
 
+	/**
+	 * A unique file name in the temporary directory
+	 */
+	String tmpFileName(String name, String ext) {
+		return Config.get().getTmpDir() + "/test_" + name + "." + System.currentTimeMillis() + ext;
+	}
+
+	/**
+	 * Wait until 'condition' is true. Fail if it takes more than 'timeout' milliseconds
+	 */
+	void waitFor(String message, long timeout, Condition condition) {
+		long end = System.currentTimeMillis() + timeout;
+		while (!condition.isTrue()) {
+			if (System.currentTimeMillis() > end) Assert.fail(message + " (timeout " + timeout + " ms)");
+			try {
+				Thread.sleep(WAIT_SLEEP_TIME);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 }
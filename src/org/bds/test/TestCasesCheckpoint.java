@@ -1,10 +1,13 @@
 package org.bds.test;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.bds.Bds;
 import org.bds.run.BdsThread;
+import org.bds.task.Task;
 import org.bds.util.Gpr;
 import org.junit.Assert;
 import org.junit.Test;
@@ -274,4 +277,20 @@ public class TestCasesCheckpoint extends TestCasesBase {
 		}
 	}
 
+	/**
+	 * Resource pools requested by a task are recovered from a checkpoint
+	 */
+	@Test
+	public void test24_resource_pools() {
+		Gpr.debug("Test");
+		Bds bds = runAndCheckpoint("test/checkpoint_24.bds", "test/checkpoint_24.chp", "pools", "ok");
+
+		Collection<Task> tasks = bds.getBigDataScriptThread().getTasks();
+		Assert.assertEquals(1, tasks.size());
+		Map<String, Integer> pools = tasks.iterator().next().getResources().getPools();
+		Assert.assertEquals(2, pools.size());
+		Assert.assertEquals(1, (int) pools.get("db"));
+		Assert.assertEquals(1, (int) pools.get("download"));
+	}
+
 }
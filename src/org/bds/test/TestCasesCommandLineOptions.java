@@ -1,7 +1,12 @@
 package org.bds.test;
 
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.bds.Bds;
 import org.bds.run.BdsThread;
+import org.bds.run.Profiler;
 import org.bds.util.Gpr;
 import org.junit.Test;
 
@@ -41,4 +46,88 @@ public class TestCasesCommandLineOptions extends TestCasesBase {
 		}
 	}
 
+	/**
+	 * Profiler: Folded stacks and time per line, including 'par' threads
+	 */
+	@Test
+	public void test02_profile() {
+		Gpr.debug("Test");
+
+		String args[] = { "-profile" };
+		BdsTest bdsTest = new BdsTest("test/profile_01.bds", args, verbose, debug);
+		bdsTest.run();
+		bdsTest.checkRunOk();
+
+		String programId = bdsTest.bds.getBigDataScriptThread().getBdsThreadId();
+		String foldedFile = programId + Profiler.PROFILE_FOLDED_EXT;
+		String tableFile = programId + Profiler.PROFILE_TABLE_EXT;
+		String folded = Gpr.readFile(foldedFile);
+		String table = Gpr.readFile(tableFile);
+		new File(foldedFile).delete();
+		new File(tableFile).delete();
+		if (verbose) System.out.println(folded + "\n" + table);
+
+		// Folded stacks: Program file, call line, function name and loop lines (main thread and 'par' thread)
+		Assert.assertTrue(folded.contains("profile_01.bds;profile_01.bds:12;busy();profile_01.bds:5"));
+		Assert.assertTrue(folded.contains("profile_01.bds;profile_01.bds:11;busy();profile_01.bds:5"));
+		for (String line : folded.split("\n"))
+			Assert.assertTrue(line.matches("profile_01\\.bds(;\\S+)* \\d+"));
+
+		// Time per line: The loop should be on top
+		String lines[] = table.split("\n");
+		Assert.assertTrue(lines[2].startsWith("profile_01.bds:5\t") || lines[2].startsWith("profile_01.bds:6\t"));
+		Assert.assertTrue(table.contains("profile_01.bds:3 busy()\t"));
+		Assert.assertTrue(table.contains("\tsum += i % 7\n"));
+	}
+
+	/**
+	 * Profiler overhead: A CPU bound program should not be much slower when
+	 * profiled, and the profiler should use little CPU
+	 */
+	@Test
+	public void test03_profileOverhead() {
+		Gpr.debug("Test");
+
+		runProfile(false); // Warm up
+
+		// Best of three runs, alternating unprofiled and profiled runs
+		long unprofiled = Long.MAX_VALUE, profiled = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			unprofiled = Math.min(unprofiled, runProfile(false));
+			profiled = Math.min(profiled, runProfile(true));
+		}
+
+		double overhead = (100.0 * (profiled - unprofiled)) / unprofiled;
+		String msg = String.format("Profiler overhead: unprofiled %d ms, profiled %d ms, overhead %.1f%%", unprofiled, profiled, overhead);
+		if (verbose) Gpr.debug(msg);
+		Assert.assertTrue(msg, overhead < 25.0);
+	}
+
+	/**
+	 * Run CPU bound program and return elapsed time in milliseconds
+	 */
+	long runProfile(boolean profile) {
+		BdsTest bdsTest = new BdsTest("test/profile_02.bds", profile ? new String[] { "-profile" } : null, verbose, debug);
+		long start = System.currentTimeMillis();
+		bdsTest.run();
+		long elapsed = System.currentTimeMillis() - start;
+		bdsTest.checkRunOk();
+		if (!profile) return elapsed;
+
+		// Profiler's CPU time, from the table's header
+		String programId = bdsTest.bds.getBigDataScriptThread().getBdsThreadId();
+		String table = Gpr.readFile(programId + Profiler.PROFILE_TABLE_EXT);
+		new File(programId + Profiler.PROFILE_FOLDED_EXT).delete();
+		new File(programId + Profiler.PROFILE_TABLE_EXT).delete();
+
+		Matcher matcher = Pattern.compile("profiler CPU: ([0-9.]+) secs").matcher(table);
+		if (!matcher.find()) return elapsed; // CPU time not available
+		double cpuPct = (100.0 * 1000.0 * Double.parseDouble(matcher.group(1))) / elapsed;
+		String msg = String.format("Profiler CPU: %s secs, %.2f%% of %d ms", matcher.group(1), cpuPct, elapsed);
+		if (verbose) Gpr.debug(msg);
+		Assert.assertTrue(msg, cpuPct < 5.0);
+
+		return elapsed;
+	}
+
 }
@@ -1,15 +1,44 @@
 package org.bds.test;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import junit.framework.Assert;
 
 import org.bds.Config;
+import org.bds.cluster.ClusterSsh;
+import org.bds.cluster.DataLocality;
+import org.bds.cluster.HostSelector;
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostSsh;
+import org.bds.executioner.AdmissionControl;
 import org.bds.executioner.CheckTasksRunning;
+import org.bds.executioner.CheckTasksRunningCluster;
+import org.bds.executioner.CheckTasksRunningLocal;
 import org.bds.executioner.Executioner;
+import org.bds.executioner.ExecutionerHybrid;
+import org.bds.executioner.ExecutionerLocal;
 import org.bds.executioner.Executioners;
 import org.bds.executioner.Executioners.ExecutionerType;
+import org.bds.executioner.MonitorTask;
+import org.bds.executioner.MonitorTaskResources;
+import org.bds.executioner.SpeculativeExecution;
+import org.bds.executioner.TaskLogger;
+import org.bds.osCmd.Cmd;
+import org.bds.osCmd.CmdLauncher;
+import org.bds.osCmd.CmdLocal;
+import org.bds.osCmd.Launcher;
+import org.bds.osCmd.ProcessReaper;
+import org.bds.task.Task;
+import org.bds.task.TaskDependency;
+import org.bds.task.TaskState;
 import org.bds.util.Gpr;
+import org.bds.util.ProcStat;
+import org.bds.util.Timer;
 import org.junit.Test;
 
 /**
@@ -20,6 +49,28 @@ import org.junit.Test;
  */
 public class TestCasesExecutioners extends TestCasesBase {
 
+	/**
+	 * Local executioner exposing 'createRunCmd()' and 'addCmd()' (used
+	 * to measure launch latency and to run commands for fake tasks)
+	 */
+	static class ExecutionerLocalLatency extends ExecutionerLocal {
+
+		ExecutionerLocalLatency(Config config, boolean scriptStdin) {
+			super(config);
+			this.scriptStdin = scriptStdin;
+		}
+
+		@Override
+		public synchronized void addCmd(Task task, Cmd cmd) {
+			super.addCmd(task, cmd);
+		}
+
+		@Override
+		public synchronized Cmd createRunCmd(Task task) {
+			return super.createRunCmd(task);
+		}
+	}
+
 	@Test
 	public void test01_parsePidQstatRegex() {
 		Gpr.debug("Test");
@@ -84,4 +135,699 @@ public class TestCasesExecutioners extends TestCasesBase {
 		if (verbose) System.out.println("Done");
 	}
 
+	/**
+	 * Create a task that is 'running' in executioner
+	 */
+	Task runningTask(Executioner ex, String pid) {
+		Task task = new Task("task_" + pid);
+		task.setPid(pid);
+		task.state(TaskState.SCHEDULED);
+		task.state(TaskState.STARTED);
+		task.state(TaskState.RUNNING);
+
+		synchronized (ex) {
+			ex.getTasksRunning().put(task.getId(), task);
+		}
+		return task;
+	}
+
+	/**
+	 * Add a fake idempotent task to executioner's running tasks
+	 */
+	Task runningTaskIdempotent(Executioner ex, String id, String programTxt, String out) {
+		TaskDependency taskDependency = new TaskDependency();
+		taskDependency.addOutput(out);
+
+		Task task = new Task(id, "/tmp/" + id + ".sh", programTxt, "test_spec.bds", 1);
+		task.setIdempotent(true);
+		task.setTaskDependency(taskDependency);
+		task.state(TaskState.SCHEDULED);
+		task.state(TaskState.STARTED);
+		task.state(TaskState.RUNNING);
+
+		synchronized (ex) {
+			ex.getTasksRunning().put(task.getId(), task);
+		}
+		return task;
+	}
+
+	@Test
+	public void test03_checkTasksRunningClusterShared() {
+		Gpr.debug("Test");
+
+		Config config = newConfig("test/test_checkTasksRunningCluster.config"); // Check on every invocation, share 'stat' output
+
+		// Fake 'qstat' counts invocations in this file
+		long startTime = System.currentTimeMillis() / 1000 * 1000; // File times may have only one second resolution
+		String countFile = tmpFileName("checkTasksRunningCluster", ".txt");
+		String cmdArgs[] = { "test/test_checkTasksRunningCluster_qstat.sh", countFile };
+
+		// Two 'CheckTasksRunning' (as if they were two bds processes)
+		Executioner ex = Executioners.getInstance(config).get(ExecutionerType.LOCAL);
+		CheckTasksRunningCluster ctr1 = new CheckTasksRunningCluster(config, ex, cmdArgs);
+		CheckTasksRunningCluster ctr2 = new CheckTasksRunningCluster(config, ex, cmdArgs);
+		ctr1.setMinStartTime(-1); // Tasks have just started
+		ctr2.setMinStartTime(-1);
+
+		// No tasks running: Nothing to check
+		ctr1.check();
+		Assert.assertFalse("Command should not run when there are no tasks", Gpr.exists(countFile));
+
+		// Job '101' is in 'qstat', job '999' is not
+		Task taskOk = runningTask(ex, "101");
+		Task taskLost = runningTask(ex, "999");
+
+		// Only the first check runs 'qstat', the rest use the shared output
+		ctr2.check();
+		for (int i = 0; i <= CheckTasksRunning.TASK_NOT_FOUND_DISAPPEARED; i++)
+			ctr1.check();
+
+		int count = Gpr.readFile(countFile).split("\n").length;
+		if (verbose) System.out.println("Command invocations: " + count);
+		Assert.assertEquals(1, count);
+
+		// Lost job is detected
+		Assert.assertEquals(Task.EXITCODE_ERROR, taskLost.getExitValue());
+		Assert.assertTrue(taskOk.getExitValue() != Task.EXITCODE_ERROR);
+
+		// Finished
+		ex.kill();
+		new File(countFile).delete();
+
+		// Remove shared 'stat' output and lock files created by this test
+		for (File file : new File(config.getTmpDir()).listFiles())
+			if (file.getName().startsWith(CheckTasksRunningCluster.CACHE_FILE_PREFIX) && file.lastModified() >= startTime) file.delete();
+	}
+
+	@Test
+	public void test04_monitorTask() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+		Executioner ex = Executioners.getInstance(config).get(ExecutionerType.LOCAL);
+
+		// Using WatchService and polling
+		for (boolean watch : new boolean[] { true, false }) {
+			final MonitorTask monitorTask = new MonitorTask();
+			monitorTask.setDebug(debug);
+			monitorTask.setWatch(watch);
+
+			// Create a task
+			String programFile = tmpFileName("monitorTask_" + watch, ".sh");
+			final Task task = new Task("task_monitor_" + watch, programFile, "echo hi", null, -1);
+			task.createProgramFile();
+			task.getResources().setWallTimeout(60);
+			task.state(TaskState.SCHEDULED);
+			task.state(TaskState.STARTED);
+			task.state(TaskState.RUNNING);
+			monitorTask.add(ex, task);
+
+			// Nothing happens until the exit file is written
+			monitorTask.check();
+			Assert.assertEquals(Task.EXITCODE_OK, task.getExitValue());
+
+			// Write exit file and wait for monitor to find it
+			Gpr.toFile(task.getExitCodeFile(), "1");
+			Timer timer = new Timer();
+			waitFor("Monitor did not find exit file", 2 * MonitorTask.SLEEP_TIME + 1000, new Condition() {
+				@Override
+				public boolean isTrue() {
+					monitorTask.check();
+					return task.getExitValue() != Task.EXITCODE_OK;
+				}
+			});
+			if (verbose) System.out.println("Watch: " + watch + "	Task finished after " + timer.elapsed() + " ms");
+			Assert.assertEquals(Task.EXITCODE_ERROR, task.getExitValue());
+
+			monitorTask.kill();
+			new File(programFile).delete();
+			new File(task.getExitCodeFile()).delete();
+		}
+
+		ex.kill();
+	}
+
+	@Test
+	public void test05_processReaper() {
+		Gpr.debug("Test");
+
+		// Launch processes, the reaper waits for them (not the command's thread)
+		int numCmds = 10;
+		TaskFinishedLatch finished = new TaskFinishedLatch(numCmds);
+		ArrayList<CmdLocal> cmds = new ArrayList<CmdLocal>();
+		for (int i = 0; i < numCmds; i++) {
+			CmdLocal cmd = new CmdLocal("reaper_" + i, new String[] { "sh", "-c", "sleep 0.5; exit " + i });
+			cmd.setDebug(debug);
+			cmd.setTask(new Task("reaper_" + i));
+			cmd.setNotifyTaskState(finished);
+			cmd.setProcessReaper(ProcessReaper.getInstance());
+			cmd.start();
+			cmds.add(cmd);
+		}
+
+		// Threads finish right after launching their process
+		for (CmdLocal cmd : cmds) {
+			try {
+				cmd.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			Assert.assertTrue("Command should not be done: " + cmd, !cmd.isDone());
+		}
+
+		// Wait for all processes to finish
+		finished.await("Commands not done", 10 * 1000);
+		for (CmdLocal cmd : cmds)
+			Assert.assertTrue("Command not done: " + cmd, cmd.isDone());
+
+		// Check exit values
+		for (int i = 0; i < cmds.size(); i++)
+			Assert.assertEquals(i, cmds.get(i).getExitValue());
+	}
+
+	@Test
+	public void test06_launcher() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+
+		// Use a fake launcher
+		Launcher launcher = new Launcher(new String[] { "test/test_launcher.sh" });
+		launcher.setDebug(debug);
+		launcher.open();
+
+		// Launch some tasks
+		int numTasks = 3;
+		TaskFinishedLatch finished = new TaskFinishedLatch(numTasks);
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		ArrayList<CmdLauncher> cmds = new ArrayList<CmdLauncher>();
+		for (int i = 0; i < numTasks; i++) {
+			String programFile = tmpFileName("launcher_" + i, ".sh");
+			Task task = new Task("task_launcher_" + i, programFile, "echo hi " + i + "; exit " + i, null, -1);
+			task.setCurrentDir(config.getTmpDir());
+			task.createProgramFile();
+			tasks.add(task);
+
+			String args[] = { "0", task.getStdoutFile(), task.getStderrFile(), task.getExitCodeFile(), programFile };
+			CmdLauncher cmd = new CmdLauncher(task.getId(), args, launcher);
+			cmd.setDebug(debug);
+			cmd.setTask(task);
+			cmd.setNotifyTaskState(finished);
+			cmd.start();
+			cmds.add(cmd);
+		}
+
+		// Wait for all commands to finish
+		finished.await("Commands not done", 10 * 1000);
+		for (CmdLauncher cmd : cmds) {
+			Assert.assertTrue("Command not done: " + cmd, cmd.isDone());
+			Assert.assertFalse("Command has no PID: " + cmd, cmd.getPid().isEmpty());
+		}
+
+		// Check exit values and output files
+		for (int i = 0; i < cmds.size(); i++) {
+			Task task = tasks.get(i);
+			Assert.assertEquals(i == 0 ? Task.EXITCODE_OK : Task.EXITCODE_ERROR, cmds.get(i).getExitValue());
+			Assert.assertEquals("hi " + i, Gpr.readFile(task.getStdoutFile()).trim());
+			Assert.assertEquals(CmdLauncher.exitValue(Gpr.readFile(task.getExitCodeFile())), cmds.get(i).getExitValue());
+
+			new File(task.getProgramFileName()).delete();
+			new File(task.getStdoutFile()).delete();
+			new File(task.getStderrFile()).delete();
+			new File(task.getExitCodeFile()).delete();
+		}
+
+		launcher.kill();
+	}
+
+	/**
+	 * Feed task's program through STDIN: Commands reading STDIN
+	 * should not consume the rest of the program
+	 */
+	@Test
+	public void test07_scriptStdin() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+
+		String base = tmpFileName("scriptStdin", "");
+		String catFile = base + ".cat.txt";
+		String doneFile = base + ".done.txt";
+		Task task = new Task("task_scriptStdin", base + ".sh", "cat > '" + catFile + "'\necho done > '" + doneFile + "'\nexit 7", null, -1);
+		task.setCurrentDir(config.getTmpDir());
+		task.createProgramDir();
+		Assert.assertFalse(new File(task.getProgramFileName()).exists());
+
+		// Same as 'bds exec' would do: Execute task's shell
+		CmdLocal cmd = new CmdLocal(task.getId(), config.getTaskShell().split("\\s+"));
+		cmd.setDebug(debug);
+		cmd.setStdin(task.getProgramStdin());
+		cmd.run();
+
+		Assert.assertEquals(7, cmd.getExitValue());
+		Assert.assertEquals("", Gpr.readFile(catFile));
+		Assert.assertEquals("done", Gpr.readFile(doneFile).trim());
+
+		new File(catFile).delete();
+		new File(doneFile).delete();
+	}
+
+	/**
+	 * Microbenchmark: Time to prepare a local task launch (ExecutionerLocal.createRunCmd),
+	 * creating a program file vs. feeding the program through STDIN
+	 */
+	@Test
+	public void test08_launchLatency() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+		int numTasks = 200;
+
+		for (boolean stdin : new boolean[] { false, true }) {
+			ExecutionerLocalLatency ex = new ExecutionerLocalLatency(config, stdin);
+			ArrayList<Task> tasks = new ArrayList<Task>();
+			Timer timer = new Timer();
+
+			for (int i = 0; i < numTasks; i++) {
+				String programFile = tmpFileName("launchLatency_" + stdin + "_" + i, ".sh");
+				Task task = new Task("task_launchLatency_" + i, programFile, "echo hi " + i, null, -1);
+				task.setCurrentDir(config.getTmpDir());
+				tasks.add(task);
+
+				Cmd cmd = ex.createRunCmd(task);
+				Assert.assertTrue(cmd instanceof CmdLocal);
+			}
+
+			double latency = ((double) timer.elapsed()) / numTasks;
+			if (verbose) System.out.println("Script STDIN: " + stdin + "\tLaunch latency: " + latency + " ms/task");
+
+			for (Task task : tasks) {
+				Assert.assertEquals(!stdin, new File(task.getProgramFileName()).exists());
+				new File(task.getProgramFileName()).delete();
+			}
+			ex.kill();
+		}
+	}
+
+	/**
+	 * Admission control using measured memory
+	 */
+	@Test
+	public void test09_admissionControl() {
+		Gpr.debug("Test");
+		if (!ProcStat.isAvailable()) return; // Only in Linux
+
+		long memTotal = ProcStat.memInfo("MemTotal");
+		long memAvail = ProcStat.memInfo("MemAvailable");
+		Assert.assertTrue(memTotal > 0);
+		Assert.assertTrue(memAvail > 0 && memAvail <= memTotal);
+
+		AdmissionControl ac = new AdmissionControl(new MonitorTaskResources());
+		ac.setDebug(debug);
+		Assert.assertEquals(memTotal, ac.getMemTotal());
+		Assert.assertEquals(memTotal / 10, ac.getMemReserve());
+
+		Task running = new Task("task_admission_running");
+		Task task = new Task("task_admission");
+		Task huge = new Task("task_admission_huge");
+		huge.getResources().setMem(2 * memTotal);
+		Assert.assertTrue(ac.exceedsTotal(huge));
+		Assert.assertFalse(ac.exceedsTotal(task));
+
+		// Nothing running: Always admitted
+		ac.setMemReserve(memTotal);
+		Assert.assertTrue(ac.admit(task));
+
+		// Not enough memory available (reserve is the whole memory)
+		ac.add(running);
+		Assert.assertFalse(ac.admit(task));
+
+		// Enough memory, unless the running task (not sampled yet) uses all its declared memory
+		ac.setMemReserve(0);
+		Assert.assertTrue(ac.admit(task));
+		running.getResources().setMem(memTotal);
+		Assert.assertFalse(ac.admit(task));
+
+		// Running task finished
+		ac.remove(running);
+		Assert.assertTrue(ac.admit(task));
+	}
+
+	/**
+	 * PID file: Buffered writes and compaction
+	 */
+	@Test
+	public void test10_taskLogger() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+		Executioner ex = Executioners.getInstance(config).get(ExecutionerType.LOCAL);
+		String pidFile = tmpFileName("taskLogger", ".txt");
+		TaskLogger taskLogger = new TaskLogger(pidFile);
+		taskLogger.setDebug(debug);
+
+		// Add and remove many tasks, keep some of them running
+		int numTasks = TaskLogger.COMPACT_MIN_LINES, numRunning = 10;
+		for (int i = 0; i < numTasks; i++) {
+			Task task = new Task("task_logger_" + i);
+			task.setPid("" + (100000 + i));
+			taskLogger.add(task, ex);
+			if (i >= numRunning) taskLogger.remove(task);
+		}
+		Assert.assertEquals(numRunning, taskLogger.getPids().size());
+
+		// File is compacted (it would have 2 * numTasks - numRunning lines otherwise)
+		taskLogger.close();
+		String lines[] = Gpr.readFile(pidFile).split("\n");
+		Assert.assertTrue("Lines: " + lines.length, lines.length < numTasks);
+
+		// Parse file the same way 'bds exec' does: Only running tasks remain
+		HashSet<String> running = new HashSet<String>();
+		for (String line : lines) {
+			String recs[] = line.split("\t");
+			if (recs[1].equals("-")) running.remove(recs[0]);
+			else running.add(recs[0]);
+		}
+		Assert.assertEquals(taskLogger.getPids(), running);
+
+		new File(pidFile).delete();
+	}
+
+	/**
+	 * Check local tasks are running using '/proc' (no 'ps' command)
+	 */
+	@Test
+	public void test11_checkTasksRunningLocal() {
+		Gpr.debug("Test");
+		if (!ProcStat.isAvailable()) return; // Only Linux
+
+		Config config = newConfig();
+		Executioner ex = Executioners.getInstance(config).get(ExecutionerType.LOCAL);
+		CheckTasksRunningLocal ctr = new CheckTasksRunningLocal(config, ex);
+		ctr.setInterval(0, 0); // Check on every invocation
+		ctr.setMinStartTime(-1); // Tasks have just started
+
+		// This process is alive, PID '999999999' is not
+		String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+		Task taskOk = runningTask(ex, pid);
+		Task taskLost = runningTask(ex, "999999999");
+
+		for (int i = 0; i <= CheckTasksRunning.TASK_NOT_FOUND_DISAPPEARED; i++)
+			ctr.check();
+
+		Assert.assertEquals(Task.EXITCODE_ERROR, taskLost.getExitValue());
+		Assert.assertTrue(taskOk.getExitValue() != Task.EXITCODE_ERROR);
+
+		// Interval grows with the number of running tasks
+		ctr = new CheckTasksRunningLocal(config, ex);
+		Assert.assertEquals(CheckTasksRunningLocal.PROC_INTERVAL_MIN, ctr.getInterval());
+		Assert.assertEquals(1, ctr.procInterval(10));
+		Assert.assertEquals(1, ctr.procInterval(100));
+		Assert.assertEquals(5, ctr.procInterval(500));
+		Assert.assertEquals(20, ctr.procInterval(2000));
+		Assert.assertEquals(CheckTasksRunning.CHECK_TASK_RUNNING_INTERVAL_MAX, ctr.procInterval(100000));
+
+		ex.kill();
+	}
+
+	/**
+	 * Hybrid executioner: Select local or cluster executioner
+	 */
+	@Test
+	public void test12_executionerHybrid() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+		config.set(Config.HYBRID_CLUSTER, "fake");
+		Executioners executioners = Executioners.getInstance(config);
+		ExecutionerHybrid hybrid = (ExecutionerHybrid) executioners.get(ExecutionerType.HYBRID);
+		Executioner local = executioners.get(ExecutionerType.LOCAL);
+		Executioner cluster = executioners.get(ExecutionerType.FAKE);
+
+		// Small task runs locally, task requiring more CPUs than this computer runs on cluster
+		Task task = new Task("task_hybrid", null, "echo hi", "test_hybrid.bds", 1);
+		Task huge = new Task("task_hybrid_huge", null, "echo hi", "test_hybrid.bds", 2);
+		huge.getResources().setCpus(Gpr.NUM_CORES + 1);
+		Assert.assertSame(local, hybrid.select(task));
+		Assert.assertSame(cluster, hybrid.select(huge));
+
+		// Local queue is 'full': Overflow to cluster
+		hybrid.setOverflow(0);
+		Assert.assertSame(cluster, hybrid.select(task));
+
+		// Unless previous tasks from the same line were short
+		for (int i = 0; i < ExecutionerHybrid.HISTORY_MIN_TASKS; i++)
+			hybrid.addRuntime(task, 1);
+		Assert.assertSame(local, hybrid.select(task));
+
+		// Long tasks overflow
+		Task taskLong = new Task("task_hybrid_long", null, "sleep 1000", "test_hybrid.bds", 3);
+		for (int i = 0; i < ExecutionerHybrid.HISTORY_MIN_TASKS; i++)
+			hybrid.addRuntime(taskLong, 1000);
+		Assert.assertSame(cluster, hybrid.select(taskLong));
+
+		Executioners.reset();
+	}
+
+	/**
+	 * Speculative execution: A straggler task is copied, the
+	 * first copy that finishes OK wins
+	 */
+	@Test
+	public void test13_speculativeExecution() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+		Executioner ex = Executioners.getInstance(config).get(ExecutionerType.LOCAL);
+		ex.kill(); // Tasks are not executed, we only check executioner's queue
+
+		SpeculativeExecution spec = new SpeculativeExecution(ex, 2.0);
+		spec.setCheckTime(0);
+		spec.setMinTime(0);
+
+		// Running tasks: Only idempotent tasks are copied
+		String out = tmpFileName("spec", ".txt");
+		Task task = runningTaskIdempotent(ex, "task_spec_1", "sleep 1000 > " + out + "\n", out);
+		Task taskNotIdem = runningTask(ex, "spec_2");
+		Task taskDerived = runningTaskIdempotent(ex, "task_spec_3", "sort in.txt > " + out + ".3 && touch " + out + ".3.idx\n", out + ".3"); // A file name is derived from the output
+		try {
+			Thread.sleep(1100); // Tasks have been running for at least one second
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+
+		// Not enough peers
+		spec.check();
+		Assert.assertNull(spec.getCopy(task));
+
+		// Peers were much faster: Copy straggler
+		for (int i = 0; i < SpeculativeExecution.MIN_PEERS; i++) {
+			spec.addRuntime(task, 0);
+			spec.addRuntime(taskNotIdem, 0);
+		}
+		spec.check();
+		Task copy = spec.getCopy(task);
+		Assert.assertNotNull(copy);
+		Assert.assertNull(spec.getCopy(taskNotIdem));
+		Assert.assertNull(spec.getCopy(taskDerived));
+		Assert.assertEquals("task_spec_1" + SpeculativeExecution.COPY_ID, copy.getId());
+		Assert.assertEquals("/tmp/task_spec_1" + SpeculativeExecution.COPY_ID + ".sh", copy.getProgramFileName());
+		Assert.assertEquals("sleep 1000 > " + out + "\n", task.getProgramTxt()); // Original task's program is not changed
+		Assert.assertEquals("sleep 1000 > " + out + SpeculativeExecution.tmpExt(copy.getId()) + "\n", copy.getProgramTxt());
+		Assert.assertTrue(copy.isCanFail());
+		Assert.assertTrue(copy.isScheduled());
+
+		// Copy finishes first: Original task is finished, copy's output is renamed
+		Gpr.toFile(out + SpeculativeExecution.tmpExt(copy.getId()), "copy");
+		copy.state(TaskState.STARTED);
+		copy.state(TaskState.RUNNING);
+		copy.state(TaskState.FINISHED);
+		spec.finished(copy);
+		Assert.assertTrue(task.isDoneOk());
+		Assert.assertFalse(spec.isResolved(task)); // No process, so no pending state update
+		Assert.assertNull(spec.getCopy(task));
+		Assert.assertEquals("copy", Gpr.readFile(out));
+		Assert.assertFalse(Gpr.exists(out + SpeculativeExecution.tmpExt(copy.getId())));
+
+		new File(out).delete();
+		Executioners.reset();
+	}
+
+	/**
+	 * Host selection based on load: Hosts with higher load
+	 * or many tasks placed recently are avoided
+	 */
+	@Test
+	public void test14_hostSelector() {
+		Gpr.debug("Test");
+
+		ClusterSsh cluster = new ClusterSsh();
+		HostSsh hostIdle = new HostSsh(cluster, "host_idle");
+		HostSsh hostBusy = new HostSsh(cluster, "host_busy");
+		cluster.add(hostIdle);
+		cluster.add(hostBusy);
+		hostBusy.getHealth().setLoadAvg(4.0);
+
+		List<Host> candidates = new ArrayList<Host>();
+		candidates.add(hostIdle);
+		candidates.add(hostBusy);
+
+		// Least loaded host is selected
+		HostSelector hostSelector = new HostSelector();
+		for (int i = 0; i < 10; i++)
+			Assert.assertSame(hostIdle, hostSelector.select(candidates));
+
+		// Tasks placed recently count as load
+		for (int i = 0; i < 5; i++)
+			hostSelector.placed(hostIdle);
+		Assert.assertEquals(5, hostSelector.countRecent(hostIdle));
+		Assert.assertEquals(0, hostSelector.countRecent(hostBusy));
+		Assert.assertSame(hostBusy, hostSelector.select(candidates));
+
+		// More CPUs: Less load per CPU
+		hostIdle.getResources().setCpus(8);
+		Assert.assertSame(hostIdle, hostSelector.select(candidates));
+	}
+
+	/**
+	 * Data locality: Tasks prefer the host that created their
+	 * inputs, until they wait longer than 'delay'
+	 */
+	@Test
+	public void test15_dataLocality() {
+		Gpr.debug("Test");
+
+		ClusterSsh cluster = new ClusterSsh();
+		HostSsh host1 = new HostSsh(cluster, "host_1");
+		HostSsh host2 = new HostSsh(cluster, "host_2");
+		cluster.add(host1);
+		cluster.add(host2);
+
+		// Producer task creates a file in 'host2'
+		String file = tmpFileName("dataLocality", ".txt");
+		Gpr.toFile(file, "hello");
+		Task producer = new Task("task_producer", null, "echo hello > " + file, "test_locality.bds", 1);
+		TaskDependency outputs = new TaskDependency();
+		outputs.addOutput(file);
+		producer.setTaskDependency(outputs);
+
+		// Consumer task uses the file as input
+		Task consumer = new Task("task_consumer", null, "cat " + file, "test_locality.bds", 2);
+		TaskDependency inputs = new TaskDependency();
+		inputs.addInput(file);
+		consumer.setTaskDependency(inputs);
+
+		DataLocality dataLocality = new DataLocality(1);
+		Assert.assertNull(dataLocality.preferredHost(consumer));
+
+		// Producer runs on 'host2'
+		dataLocality.placed(producer, host2);
+		producer.state(TaskState.SCHEDULED);
+		producer.state(TaskState.STARTED);
+		producer.state(TaskState.RUNNING);
+		producer.state(TaskState.FINISHED);
+		dataLocality.finished(producer);
+		Assert.assertSame(host2, dataLocality.getHost(file));
+		Assert.assertSame(host2, dataLocality.preferredHost(consumer));
+
+		// Consumer waits for its preferred host, but not forever
+		Assert.assertTrue(dataLocality.isWaiting(consumer));
+		try {
+			Thread.sleep(1100);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		Assert.assertFalse(dataLocality.isWaiting(consumer));
+
+		// Another producer creates a larger file in 'host1'
+		String fileLarge = tmpFileName("dataLocality_large", ".txt");
+		Gpr.toFile(fileLarge, "hello hello hello hello");
+		Task producerLarge = new Task("task_producer_large", null, "echo hello > " + fileLarge, "test_locality.bds", 3);
+		TaskDependency outputsLarge = new TaskDependency();
+		outputsLarge.addOutput(fileLarge);
+		producerLarge.setTaskDependency(outputsLarge);
+
+		dataLocality.placed(producerLarge, host1);
+		producerLarge.state(TaskState.SCHEDULED);
+		producerLarge.state(TaskState.STARTED);
+		producerLarge.state(TaskState.RUNNING);
+		producerLarge.state(TaskState.FINISHED);
+		dataLocality.finished(producerLarge);
+
+		// Sizes are the ones recorded when producers finished (files are not accessed while scheduling)
+		inputs.addInput(fileLarge);
+		Gpr.toFile(fileLarge, "");
+		Gpr.toFile(file, "hello hello hello hello hello hello hello hello");
+		Assert.assertSame(host1, dataLocality.preferredHost(consumer));
+
+		new File(file).delete();
+		new File(fileLarge).delete();
+	}
+
+	/**
+	 * Speculative execution: When the copy wins, the original task's process
+	 * is killed, but it does not change the original task's exit value
+	 */
+	@Test
+	public void test16_speculativeExecutionKill() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+		ExecutionerLocalLatency ex = new ExecutionerLocalLatency(config, false);
+		SpeculativeExecution spec = new SpeculativeExecution(ex, 2.0);
+		spec.setCheckTime(0);
+		spec.setMinTime(0);
+
+		// Original task runs a real process
+		String out = tmpFileName("specKill", ".txt");
+		Task task = runningTaskIdempotent(ex, "task_spec_kill", "sleep 1000 > " + out + "\n", out);
+		CmdLocal cmd = new CmdLocal(task.getId(), new String[] { "sleep", "1000" });
+		cmd.setTask(task);
+		cmd.setExecutioner(ex);
+		cmd.setHost(ex.getCluster().iterator().next());
+		ex.addCmd(task, cmd);
+		cmd.start();
+
+		try {
+			while (cmd.getProcess() == null)
+				Thread.sleep(10);
+			Thread.sleep(1100); // Task has been running for at least one second
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+
+		// Copy straggler
+		for (int i = 0; i < SpeculativeExecution.MIN_PEERS; i++)
+			spec.addRuntime(task, 0);
+		spec.check();
+		Task copy = spec.getCopy(task);
+		Assert.assertNotNull(copy);
+
+		// Copy finishes first: Original task's process is killed
+		Gpr.toFile(out + SpeculativeExecution.tmpExt(copy.getId()), "copy");
+		copy.state(TaskState.STARTED);
+		copy.state(TaskState.RUNNING);
+		copy.state(TaskState.FINISHED);
+		spec.finished(copy);
+
+		// Wait for the killed process to exit: Task is still OK
+		try {
+			cmd.join(10 * 1000);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		Assert.assertFalse("Process not killed", cmd.isAlive());
+		Assert.assertTrue(task.isDoneOk());
+		Assert.assertFalse(task.isFailed());
+		Assert.assertEquals(Task.EXITCODE_OK, task.getExitValue());
+
+		// Process exited before it was detached? Its pending state update is ignored once, then forgotten
+		if (spec.isResolved(task)) {
+			Assert.assertTrue(spec.ignoreUpdate(task));
+			Assert.assertFalse(spec.isResolved(task));
+		}
+
+		new File(out).delete();
+	}
+
 }
@@ -0,0 +1,216 @@
+package org.bds.test;
+
+import java.io.File;
+import java.net.URL;
+
+import junit.framework.Assert;
+
+import org.bds.Bds;
+import org.bds.executioner.TaskEventLog;
+import org.bds.report.Metrics;
+import org.bds.report.MetricsServer;
+import org.bds.report.RTemplate;
+import org.bds.report.RTemplateSections;
+import org.bds.report.Report;
+import org.bds.task.Task;
+import org.bds.task.TaskState;
+import org.bds.util.Gpr;
+import org.junit.Test;
+
+/**
+ * Test cases for reports, metrics and event logs
+ *
+ * @author pcingola
+ */
+public class TestCasesReport extends TestCasesBase {
+
+	/**
+	 * Incremental report: Task sections are rendered one task at a time
+	 */
+	@Test
+	public void test01_reportIncremental() {
+		Gpr.debug("Test");
+
+		String dagJsFile = tmpFileName("reportIncremental", ".dag.js");
+		RTemplateSections dag = new RTemplateSections(Bds.class, Report.DAG_TEMPLATE, dagJsFile);
+
+		// Render two finished tasks, one at a time
+		RTemplate taskValues = new RTemplate(Bds.class, Report.DAG_TEMPLATE, null);
+		taskValues.setStrict(false);
+		for (int i = 1; i <= 2; i++) {
+			taskValues.clear();
+			taskValues.add("taskGraphName", "task_" + i);
+			taskValues.add("taskGraphThreadNum", "thread_Root");
+			if (i > 1) { // Second task depends on the first one
+				taskValues.add("taskGraphEdgeName", "task_1-task_" + i);
+				taskValues.add("taskGraphEdgeSource", "task_1");
+				taskValues.add("taskGraphEdgeTarget", "task_" + i);
+			}
+			dag.append(taskValues);
+		}
+
+		// Summary values (no thread edges) and a task that is still running
+		RTemplate summary = new RTemplate(Bds.class, Report.DAG_TEMPLATE, null);
+		summary.setStrict(false);
+		summary.add("threadGraphIdNum", "thread_Root");
+
+		RTemplate pending = new RTemplate(Bds.class, Report.DAG_TEMPLATE, null);
+		pending.setStrict(false);
+		pending.add("taskGraphName", "task_3");
+		pending.add("taskGraphThreadNum", "thread_Root");
+
+		dag.createOutput(summary, pending);
+		String out = Gpr.readFile(dagJsFile);
+		dag.close();
+		new File(dagJsFile).delete();
+		if (verbose) System.out.println(out);
+
+		// Tasks are shown in order, only one edge and no thread edges
+		int idx1 = out.indexOf("id: 'task_1', parent: 'thread_Root'");
+		int idx2 = out.indexOf("id: 'task_2', parent: 'thread_Root'");
+		int idx3 = out.indexOf("id: 'task_3', parent: 'thread_Root'");
+		Assert.assertTrue(out.contains("{ data: { id: 'thread_Root' } },"));
+		Assert.assertTrue(0 < idx1 && idx1 < idx2 && idx2 < idx3);
+		Assert.assertTrue(out.contains("{ data: { id: 'task_1-task_2', source: 'task_1', target: 'task_2' } },"));
+		Assert.assertEquals(1, out.split("source:").length - 1);
+
+		// Temporary section files are deleted
+		for (File f : new File(dagJsFile).getParentFile().listFiles())
+			Assert.assertFalse(f.getName().startsWith(new File(dagJsFile).getName()));
+	}
+
+	/**
+	 * Compiled template: Lines are repeated once per value
+	 */
+	@Test
+	public void test02_rTemplateCompiled() {
+		Gpr.debug("Test");
+
+		RTemplate rTemplate = new RTemplate(Bds.class, Report.DAG_TEMPLATE, null);
+		rTemplate.add("name", "a");
+		rTemplate.add("name", "b");
+		rTemplate.add("num", 1);
+		rTemplate.add("num", 2);
+		rTemplate.add("num", 3);
+
+		Assert.assertEquals("Header\n<a 1>\n<b 2>\nFooter\n", rTemplate.createOuptut("Header\n<{{name}} {{num}}>\nFooter"));
+
+		// Missing keys are an error only if the template is strict
+		try {
+			rTemplate.createOuptut("Footer {{missing}}");
+			Assert.fail("Missing key should throw an exception");
+		} catch (RuntimeException e) {
+			// OK
+		}
+
+		rTemplate.setStrict(false);
+		Assert.assertEquals("Header\n<a 1>\n<b 2>\n", rTemplate.createOuptut("Header\n<{{name}} {{num}}>\nFooter {{missing}}"));
+
+		// Compiled only once
+		Assert.assertSame(rTemplate.compile(), new RTemplate(Bds.class, Report.DAG_TEMPLATE, null).compile());
+	}
+
+	/**
+	 * Metrics HTTP server: Prometheus format and running tasks
+	 */
+	@Test
+	public void test03_metricsServer() throws Exception {
+		Gpr.debug("Test");
+
+		// Histograms are cumulative
+		Metrics.Histogram hist = new Metrics.Histogram(new double[] { 1, 10 });
+		hist.observe(0.5);
+		hist.observe(5);
+		hist.observe(50);
+		StringBuilder sb = new StringBuilder();
+		hist.toPrometheus(sb, "test_latency", "");
+		Assert.assertTrue(sb.toString().contains("test_latency_bucket{le=\"1.0\"} 1\n"));
+		Assert.assertTrue(sb.toString().contains("test_latency_bucket{le=\"10.0\"} 2\n"));
+		Assert.assertTrue(sb.toString().contains("test_latency_bucket{le=\"+Inf\"} 3\n"));
+		Assert.assertTrue(sb.toString().contains("test_latency_count 3\n"));
+
+		// Start server on any free port
+		Metrics.reset();
+		Metrics.get().checkpoint(20);
+		Metrics.get().getDispatchLatency("ex \"1\"\\\t2").observe(1); // Only backslash, quote and new line are escaped in labels
+		MetricsServer server = new MetricsServer("localhost", 0);
+		server.start();
+		try {
+			String metrics = Gpr.read(new URL("http://localhost:" + server.getPort() + "/metrics").openStream());
+			if (verbose) System.out.println(metrics);
+			Assert.assertTrue(metrics.contains("# TYPE bds_tasks gauge"));
+			Assert.assertTrue(metrics.contains("bds_tasks{state=\"RUNNING\"} "));
+			Assert.assertTrue(metrics.contains("bds_checkpoint_duration_seconds_count 1\n"));
+			Assert.assertTrue(metrics.contains("bds_jvm_heap_used_bytes "));
+			Assert.assertTrue(metrics.contains("bds_task_dispatch_latency_seconds_count{executioner=\"ex \\\"1\\\"\\\\\t2\"} 1\n"));
+
+			String tasks = Gpr.read(new URL("http://localhost:" + server.getPort() + "/tasks").openStream());
+			Assert.assertTrue(tasks.trim().startsWith("[") && tasks.trim().endsWith("]"));
+		} finally {
+			server.kill();
+		}
+	}
+
+	/**
+	 * Task event log: One JSON object per line, written by a background thread
+	 */
+	@Test
+	public void test04_taskEventLog() {
+		Gpr.debug("Test");
+
+		String file = tmpFileName("taskEventLog", TaskEventLog.EVENT_LOG_EXT);
+		TaskEventLog taskEventLog = new TaskEventLog(file);
+		taskEventLog.start();
+
+		Task task = new Task("task_event_log");
+		task.setTaskName("say \"hi\"");
+		taskEventLog.created(task, "thread_1");
+		task.state(TaskState.SCHEDULED);
+		taskEventLog.scheduled(task, "Local", true);
+		task.setExitValue(Task.EXITCODE_KILLED);
+		task.state(TaskState.KILLED);
+		taskEventLog.finished(task, "Local");
+		taskEventLog.checkpoint("test.chp", 12);
+		taskEventLog.close();
+		taskEventLog.event("ignored"); // Log is closed
+
+		String lines[] = Gpr.readFile(file).split("\n");
+		new File(file).delete();
+		if (verbose) for (String line : lines)
+			System.out.println(line);
+
+		Assert.assertEquals(5, lines.length);
+		Assert.assertEquals(5, taskEventLog.getCount());
+		for (String line : lines)
+			Assert.assertTrue(line.startsWith("{\"time\":") && line.endsWith("}"));
+
+		Assert.assertTrue(lines[0].contains("\"event\":\"created\",\"taskId\":\"task_event_log\",\"name\":\"say \\\"hi\\\"\""));
+		Assert.assertTrue(lines[1].contains("\"event\":\"scheduled\""));
+		Assert.assertTrue(lines[2].contains("\"event\":\"blocked\""));
+		Assert.assertTrue(lines[3].contains("\"event\":\"killed\""));
+		Assert.assertTrue(lines[3].contains("\"start\":null"));
+		Assert.assertTrue(lines[4].contains("\"event\":\"checkpoint\",\"file\":\"test.chp\",\"elapsedMs\":12}"));
+	}
+
+	/**
+	 * Task event log: 'created' events for all tasks, including 'dep' tasks and dry runs
+	 */
+	@Test
+	public void test05_taskEventLogCreated() {
+		Gpr.debug("Test");
+
+		BdsTest bdsTest = new BdsTest("test/run_145.bds", new String[] { "-c", "test/test_taskEventLog.config", "-dryRun" }, verbose, debug);
+		bdsTest.run();
+		bdsTest.checkRunOk();
+
+		String threadId = bdsTest.bds.getBigDataScriptThread().getBdsThreadId();
+		String file = threadId + TaskEventLog.EVENT_LOG_EXT;
+		String events = Gpr.readFile(file);
+		new File(file).delete();
+		if (verbose) System.out.println(events);
+
+		Assert.assertTrue(events.contains("\"event\":\"created\",\"taskId\":\"" + threadId + "/task.run_145.line_5.id_1\""));
+		Assert.assertTrue(events.contains("\"event\":\"created\",\"taskId\":\"" + threadId + "/task.run_145.line_6.id_2\""));
+	}
+
+}
@@ -1,8 +1,18 @@
 package org.bds.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
 import junit.framework.Assert;
 
+import org.bds.Config;
+import org.bds.task.Tail;
 import org.bds.task.TailFile;
+import org.bds.task.TailRateLimit;
+import org.bds.task.TailStream;
+import org.bds.util.Gpr;
 import org.junit.Test;
 
 /**
@@ -56,4 +66,132 @@ public class TestCasesTail extends TestCasesBase {
 		Assert.assertEquals("line 11\nline 12\nline 13\nline 14\nline 15\nline 16\nline 17\nline 18\nline 19\nline 20\n", tail);
 	}
 
+	@Test
+	public void test07_rateLimit() {
+		// Create 25 lines
+		StringBuilder sb = new StringBuilder();
+		for (int i = 1; i <= 25; i++)
+			sb.append("line " + i + "\n");
+
+		// Allow one line per second (i.e. a burst of 'BURST_SECS' lines)
+		TailStream ts = new TailStream(new ByteArrayInputStream(sb.toString().getBytes()), false, "tail_07");
+		ts.setRateLimit(new TailRateLimit(1), null);
+
+		// Capture STDOUT
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(captured));
+			ts.close();
+		} finally {
+			System.setOut(stdout);
+		}
+
+		String lines[] = captured.toString().split("\n");
+		if (debug) System.out.println(captured);
+
+		int shown = TailRateLimit.BURST_SECS;
+		Assert.assertEquals(shown + 1, lines.length);
+		Assert.assertEquals("line " + shown, lines[shown - 1]);
+		Assert.assertTrue(lines[shown].contains((25 - shown) + " lines not shown"));
+	}
+
+	/**
+	 * A file deleted while following it (e.g. by TaskCleanup) is end of stream
+	 */
+	@Test
+	public void test08_deleted() {
+		Gpr.debug("Test");
+
+		String file = new Config().getTmpDir() + "/test_tail_deleted." + System.currentTimeMillis() + ".txt";
+		Gpr.toFile(file, "test08_deleted\n");
+
+		final Tail tail = new Tail();
+		tail.add(file, false);
+		tail.add(file + ".missing", false); // File not created yet: Keep following
+
+		// Capture STDOUT
+		PrintStream stdout = System.out;
+		final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(captured, true));
+			tail.start();
+
+			// Wait until the file is read, then delete it
+			waitFor("File was not read", 10 * 1000, new Condition() {
+				@Override
+				public boolean isTrue() {
+					return captured.toString().contains("test08_deleted");
+				}
+			});
+			new File(file).delete();
+
+			// Only the missing file is still followed
+			waitFor("Deleted file is still followed", 2 * Tail.RESCAN_TIME * 1000, new Condition() {
+				@Override
+				public boolean isTrue() {
+					return tail.size() == 1;
+				}
+			});
+		} finally {
+			System.setOut(stdout);
+		}
+
+		tail.kill();
+	}
+
+	/**
+	 * Files not kept open (too many files): Appended output is shown, deleted file is end of stream
+	 */
+	@Test
+	public void test09_notKeptOpen() {
+		Gpr.debug("Test");
+
+		final String file = new Config().getTmpDir() + "/test_tail_not_kept_open." + System.currentTimeMillis() + ".txt";
+		Gpr.toFile(file, "test09_first\n");
+
+		// Add more than MAX_OPEN_FILES files, so 'file' is not kept open
+		final Tail tail = new Tail();
+		for (int i = 0; i < Tail.MAX_OPEN_FILES; i++)
+			tail.add(file + ".missing_" + i, false);
+		tail.add(file, false);
+
+		// Capture STDOUT
+		PrintStream stdout = System.out;
+		final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(captured, true));
+			tail.start();
+
+			waitFor("File was not read", 10 * 1000, new Condition() {
+				@Override
+				public boolean isTrue() {
+					return captured.toString().contains("test09_first");
+				}
+			});
+
+			// Append to file
+			Gpr.toFile(file, "test09_first\ntest09_second\n");
+			waitFor("Appended output was not read", 10 * 1000, new Condition() {
+				@Override
+				public boolean isTrue() {
+					return captured.toString().contains("test09_second");
+				}
+			});
+
+			// Delete file: No longer followed
+			new File(file).delete();
+			waitFor("Deleted file is still followed", 2 * Tail.RESCAN_TIME * 1000, new Condition() {
+				@Override
+				public boolean isTrue() {
+					return tail.size() == Tail.MAX_OPEN_FILES;
+				}
+			});
+		} finally {
+			System.setOut(stdout);
+		}
+
+		tail.kill();
+	}
+
 }
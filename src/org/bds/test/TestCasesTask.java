@@ -0,0 +1,215 @@
+package org.bds.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.bds.Config;
+import org.bds.cluster.ResourcePools;
+import org.bds.lang.ExpressionSys;
+import org.bds.serialize.BdsSerializer;
+import org.bds.task.Task;
+import org.bds.task.TaskCleanup;
+import org.bds.task.TaskState;
+import org.bds.task.TaskStore;
+import org.bds.util.Gpr;
+import org.junit.Test;
+
+/**
+ * Test cases for task files, storage and resources
+ *
+ * @author pcingola
+ */
+public class TestCasesTask extends TestCasesBase {
+
+	/**
+	 * Delete task files in background and on exit
+	 */
+	@Test
+	public void test01_taskCleanup() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+		String dir = tmpFileName("taskCleanup", "");
+		int numTasks = 10;
+
+		final TaskCleanup taskCleanup = new TaskCleanup();
+		taskCleanup.setDebug(debug);
+		taskCleanup.start();
+		taskCleanup.addDir(dir);
+
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		for (int i = 0; i < numTasks; i++) {
+			Task task = new Task("task_cleanup_" + i, dir + "/task_" + i + ".sh", "echo hi " + i, null, -1);
+			task.setCurrentDir(config.getTmpDir());
+			task.createProgramFile();
+			Gpr.toFile(task.getStdoutFile(), "hi " + i);
+			Gpr.toFile(task.getStderrFile(), "");
+			Gpr.toFile(task.getExitCodeFile(), "0");
+			tasks.add(task);
+			taskCleanup.add(task);
+		}
+
+		// Compact form: One entry per task, plus one directory
+		Assert.assertEquals(numTasks + 1, taskCleanup.size());
+
+		// Delete program and exit files (task 0 only)
+		Task task0 = tasks.get(0);
+		taskCleanup.deleteNow(task0);
+		waitFor("Files not deleted", 10 * 1000, new Condition() {
+			@Override
+			public boolean isTrue() {
+				return taskCleanup.getDeletedCount() >= 2;
+			}
+		});
+		Assert.assertFalse(new File(task0.getProgramFileName()).exists());
+		Assert.assertFalse(new File(task0.getExitCodeFile()).exists());
+		Assert.assertTrue(new File(task0.getStdoutFile()).exists());
+
+		// Delete everything
+		taskCleanup.kill();
+		for (Task task : tasks) {
+			Assert.assertFalse(new File(task.getProgramFileName()).exists());
+			Assert.assertFalse(new File(task.getStdoutFile()).exists());
+			Assert.assertFalse(new File(task.getStderrFile()).exists());
+			Assert.assertFalse(new File(task.getExitCodeFile()).exists());
+		}
+		Assert.assertFalse(new File(dir).exists());
+		Assert.assertEquals(4 * numTasks + 1, taskCleanup.getDeletedCount());
+	}
+
+	/**
+	 * Task files spread over sharded sub-directories
+	 */
+	@Test
+	public void test02_logShards() {
+		Gpr.debug("Test");
+
+		// No shards
+		Assert.assertEquals("z.bds.20160101/task.line_7.id_1", ExpressionSys.shard("z.bds.20160101/task.line_7.id_1", 0));
+
+		// Shard directory is added before file's base name
+		String shardName = ExpressionSys.shard("z.bds.20160101/task.line_7.id_1", 256);
+		Assert.assertTrue(shardName, shardName.matches("z\\.bds\\.20160101/[0-9a-f]{2}/task\\.line_7\\.id_1"));
+		Assert.assertTrue(ExpressionSys.shard("task.id_1", 16).matches("[0-9a-f]/task\\.id_1"));
+
+		// Shards should be used evenly
+		int shards = 64, numTasks = 64 * 100;
+		HashMap<String, Integer> countByShard = new HashMap<String, Integer>();
+		for (int i = 0; i < numTasks; i++) {
+			String shard = Gpr.dirName(ExpressionSys.shard("z.bds.20160101/task.line_7.id_" + i, shards));
+			Integer count = countByShard.get(shard);
+			countByShard.put(shard, count == null ? 1 : count + 1);
+		}
+
+		Assert.assertEquals(shards, countByShard.size());
+		for (int count : countByShard.values())
+			Assert.assertTrue("Shard count: " + count, count > 50 && count < 150);
+	}
+
+	/**
+	 * Task store: Finished tasks' information is moved to disk and read back when needed
+	 */
+	@Test
+	public void test03_taskStore() {
+		Gpr.debug("Test");
+
+		Config config = newConfig();
+		TaskStore taskStore = new TaskStore(tmpFileName("taskStore", ".bin"));
+		taskStore.setDebug(debug);
+
+		int numTasks = 100;
+		List<Task> tasks = new ArrayList<Task>();
+		List<String> saved = new ArrayList<String>();
+		for (int i = 0; i < numTasks; i++) {
+			Task task = new Task("task_store_" + i, "/tmp/task_store_" + i + ".sh", "echo hi " + i + "\necho 'bye' \u00e9", null, -1);
+			task.setErrorMsg(i % 2 == 0 ? "Error " + i : null);
+			task.state(TaskState.SCHEDULED);
+			task.state(TaskState.STARTED);
+			task.state(TaskState.RUNNING);
+			task.state(TaskState.FINISHED);
+			tasks.add(task);
+			saved.add(task.serializeSave(new BdsSerializer(null, config)));
+		}
+
+		// Store all tasks
+		for (Task task : tasks) {
+			task.store(taskStore);
+			Assert.assertTrue(task.isStored());
+		}
+		Assert.assertEquals(numTasks, taskStore.getCount());
+
+		// Information is read back from disk (in any order)
+		for (int i = numTasks - 1; i >= 0; i--) {
+			Task task = tasks.get(i);
+			Assert.assertEquals("echo hi " + i + "\necho 'bye' \u00e9", task.getProgramTxt());
+			Assert.assertEquals("/tmp/task_store_" + i + ".sh", task.getProgramFileName());
+			Assert.assertEquals(i % 2 == 0 ? "Error " + i : null, task.getErrorMsg());
+			Assert.assertEquals(saved.get(i), task.serializeSave(new BdsSerializer(null, config)));
+		}
+
+		// Re-executing a task brings information back to memory
+		Task task = tasks.get(0);
+		task.reset();
+		Assert.assertFalse(task.isStored());
+		Assert.assertEquals("/tmp/task_store_0.sh", task.getProgramFileName());
+
+		taskStore.close();
+		Assert.assertFalse(Gpr.exists(taskStore.getFileName()));
+	}
+
+	/**
+	 * Named resource pools limit the number of tasks using a resource concurrently
+	 */
+	@Test
+	public void test04_resourcePools() {
+		Gpr.debug("Test");
+
+		ResourcePools pools = new ResourcePools();
+		pools.declare("db:2, download:20");
+		Assert.assertEquals(2, pools.getCapacity("db"));
+		Assert.assertEquals(20, pools.getCapacity("download"));
+
+		// Tasks using the database
+		List<Task> tasks = new ArrayList<Task>();
+		for (int i = 0; i < 3; i++) {
+			Task task = new Task("task_pool_" + i);
+			task.getResources().setPools("db:1, download");
+			tasks.add(task);
+		}
+
+		// Only two tasks can acquire 'db' at the same time
+		Assert.assertTrue(pools.acquire(tasks.get(0)));
+		Assert.assertTrue(pools.acquire(tasks.get(1)));
+		Assert.assertFalse(pools.acquire(tasks.get(2)));
+		Assert.assertEquals(0, pools.getAvailable("db"));
+		Assert.assertEquals(18, pools.getAvailable("download"));
+
+		// Resources are released when a task finishes (releasing twice has no effect)
+		pools.release(tasks.get(0));
+		pools.release(tasks.get(0));
+		Assert.assertEquals(1, pools.getAvailable("db"));
+		Assert.assertTrue(pools.acquire(tasks.get(2)));
+
+		// Requests exceeding capacity can never run, undeclared pools are not limited
+		Task taskBig = new Task("task_pool_big");
+		taskBig.getResources().setPools("db:3");
+		Assert.assertTrue(pools.exceedsCapacity(taskBig));
+		Task taskUndeclared = new Task("task_pool_undeclared");
+		taskUndeclared.getResources().setPools("gpu:8");
+		Assert.assertFalse(pools.exceedsCapacity(taskUndeclared));
+		Assert.assertTrue(pools.acquire(taskUndeclared));
+
+		// Invalid format
+		try {
+			ResourcePools.parse("db:x");
+			Assert.fail("Invalid resource should throw an exception");
+		} catch (RuntimeException e) {
+			// OK
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.bds.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.bds.task.TaskResourceUsage;
+import org.bds.util.Gpr;
+import org.bds.util.ProcStat;
+import org.bds.util.TimingWheel;
+import org.junit.Test;
+
+/**
+ * Test cases for utility classes
+ *
+ * @author pcingola
+ */
+public class TestCasesUtil extends TestCasesBase {
+
+	/**
+	 * Parse '/proc/pid/stat' and measure resources used by a process tree
+	 */
+	@Test
+	public void test01_procStat() {
+		Gpr.debug("Test");
+		if (!ProcStat.isAvailable()) return; // Only in Linux
+
+		// Process name contains spaces and parenthesis
+		String line = "1234 (my (odd) name) S 1000 1234 1234 0 -1 4194560 100 0 0 0 250 50 10 5 20 0 3 0 100 1000000 2048 18446744073709551615";
+		ProcStat ps = ProcStat.parseStat(line);
+		Assert.assertEquals(1234, ps.getPid());
+		Assert.assertEquals(1000, ps.getPpid());
+		Assert.assertEquals(2600, ps.getCpuUser());
+		Assert.assertEquals(550, ps.getCpuSys());
+		Assert.assertEquals(3, ps.getThreads());
+		Assert.assertEquals(2048L * ProcStat.PAGE_SIZE, ps.getMem());
+
+		// 'ps' output line
+		ps = ProcStat.parsePs("  4321     1   7 10240 1-02:03:04 /bin/bash -e task.sh");
+		Assert.assertEquals(4321, ps.getPid());
+		Assert.assertEquals(7, ps.getThreads());
+		Assert.assertEquals(10240L * 1024, ps.getMem());
+		Assert.assertEquals((((24 + 2) * 60 + 3) * 60 + 4) * 1000L, ps.getCpuUser());
+		Assert.assertEquals("/bin/bash -e task.sh", ps.getArgs());
+
+		// Measure this JVM
+		String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+		List<ProcStat> procStats = ProcStat.readAll();
+		List<ProcStat> tree = new ArrayList<ProcStat>();
+		ProcStat.tree(Gpr.parseIntSafe(pid), ProcStat.byPid(procStats), ProcStat.byParent(procStats), tree);
+		for (ProcStat p : tree)
+			p.readIo();
+
+		TaskResourceUsage tru = new TaskResourceUsage();
+		tru.update(TaskResourceUsage.sum(tree));
+		if (verbose) System.out.println("Resources used by JVM (pid " + pid + "): " + tru);
+		Assert.assertTrue(tru.getMemPeak() > 0);
+		Assert.assertTrue(tru.getThreadsMax() > 1);
+		Assert.assertTrue(tru.getCpuUser() >= 0);
+	}
+
+	/**
+	 * Timing wheel: Items expire after their deadline (and only once)
+	 */
+	@Test
+	public void test02_timingWheel() {
+		Gpr.debug("Test");
+
+		TimingWheel<String> wheel = new TimingWheel<String>(1000, 16);
+		long now = System.currentTimeMillis();
+
+		// Add deadlines, some of them more than one revolution away
+		for (int i = 0; i < 100; i++)
+			wheel.add("item_" + i, now + i * 1000);
+		wheel.remove("item_50");
+		Assert.assertEquals(99, wheel.size());
+
+		// Nothing expires before its deadline
+		Set<String> expired = new HashSet<String>();
+		for (long t = now; t < now + 110 * 1000; t += 500) {
+			for (String item : wheel.expired(t)) {
+				int i = Gpr.parseIntSafe(item.substring(item.indexOf('_') + 1));
+				Assert.assertTrue("Item '" + item + "' expired early at " + (t - now), now + i * 1000 <= t);
+				Assert.assertTrue("Item '" + item + "' expired late at " + (t - now), t - (now + i * 1000) < 2000);
+				Assert.assertTrue("Item '" + item + "' expired twice", expired.add(item));
+			}
+		}
+
+		Assert.assertEquals(99, expired.size());
+		Assert.assertFalse(expired.contains("item_50"));
+		Assert.assertTrue(wheel.isEmpty());
+	}
+
+}
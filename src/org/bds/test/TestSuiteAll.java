@@ -15,6 +15,9 @@ import org.junit.runners.Suite.SuiteClasses;
 		TestCasesLang.class, //
 		TestCasesInterpolate.class, //
 		TestCasesExecutioners.class, //
+		TestCasesReport.class, //
+		TestCasesTask.class, //
+		TestCasesUtil.class, //
 		TestCasesRun.class, //
 		TestCasesRun2.class, //
 		TestCasesGraph.class, //
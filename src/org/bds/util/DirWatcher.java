@@ -0,0 +1,181 @@
+package org.bds.util;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch directories for file creation / modification (e.g. 'inotify')
+ *
+ * Directories that cannot be watched (e.g. on network file systems) are
+ * reported as such, so callers can fall back to polling
+ *
+ * @author pcingola
+ */
+public class DirWatcher {
+
+	// File system types (prefixes) that do not create events for changes made by other hosts
+	public static final String NO_WATCH_FILE_SYSTEMS[] = { "nfs", "cifs", "smb", "afs", "lustre", "gpfs", "panfs", "beegfs", "ceph", "glusterfs", "fuse.", "9p" };
+
+	boolean debug;
+	boolean enabled = true;
+	boolean overflow; // Were events lost?
+	String name;
+	WatchService watchService;
+	HashMap<String, Boolean> watchedDirs; // Directory => Is it being watched?
+
+	public DirWatcher(String name) {
+		this.name = name;
+		watchedDirs = new HashMap<String, Boolean>();
+	}
+
+	/**
+	 * Stop watching directories
+	 */
+	public synchronized void close() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+
+		watchService = null;
+		watchedDirs.clear();
+	}
+
+	/**
+	 * Get all files created or modified since last invocation
+	 * @param timeout : Wait up to 'timeout' milliseconds for an event (zero means 'do not wait')
+	 */
+	public List<String> events(long timeout) {
+		List<String> files = new ArrayList<String>();
+
+		try {
+			WatchService ws = watchService;
+			if (ws == null) {
+				// Nothing is watched, so there cannot be any events
+				if (timeout > 0) Thread.sleep(timeout);
+				return files;
+			}
+
+			WatchKey key = (timeout > 0 ? ws.poll(timeout, TimeUnit.MILLISECONDS) : ws.poll());
+			while (key != null) {
+				events(key, files);
+				key = ws.poll();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Nothing to do
+		}
+
+		return files;
+	}
+
+	/**
+	 * Process all events from a key
+	 */
+	synchronized void events(WatchKey key, List<String> files) {
+		Path dir = (Path) key.watchable();
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				if (debug) log("Events overflow on directory '" + dir + "'");
+				overflow = true;
+			} else files.add(dir.resolve((Path) event.context()).toString());
+		}
+
+		// Directory no longer accessible? Callers must poll it
+		if (!key.reset()) watchedDirs.put(dir.toString(), false);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Were any events lost since last invocation?
+	 */
+	public synchronized boolean isOverflow() {
+		boolean ov = overflow;
+		overflow = false;
+		return ov;
+	}
+
+	/**
+	 * Is this directory watched? Try to watch it if it is the first time we see it
+	 */
+	public synchronized boolean isWatched(String dirName) {
+		if (dirName == null) return false;
+
+		Boolean watched = watchedDirs.get(dirName);
+		if (watched == null) {
+			watched = watch(dirName);
+			watchedDirs.put(dirName, watched);
+		}
+		return watched;
+	}
+
+	void log(String msg) {
+		Timer.showStdErr(name + ": " + msg);
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Start watching a directory
+	 * @return true if the directory is being watched
+	 */
+	boolean watch(String dirName) {
+		if (!enabled) return false;
+
+		try {
+			// Network file systems do not inform about changes from other hosts
+			Path dir = Paths.get(dirName);
+			String fsType = Files.getFileStore(dir).type();
+			for (String fs : NO_WATCH_FILE_SYSTEMS) {
+				if (fsType.startsWith(fs)) {
+					if (debug) log("Directory '" + dirName + "' is on a '" + fsType + "' file system, polling");
+					return false;
+				}
+			}
+
+			if (watchService == null) {
+				watchService = FileSystems.getDefault().newWatchService();
+
+				// Some platforms implement WatchService by polling (slowly). We are better off polling ourselves
+				if (watchService.getClass().getSimpleName().startsWith("Polling")) {
+					if (debug) log("WatchService is not natively supported, polling");
+					close();
+					enabled = false;
+					return false;
+				}
+			}
+
+			dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			if (debug) log("Watching directory '" + dirName + "' (" + fsType + ")");
+			return true;
+		} catch (IOException e) {
+			if (debug) log("Cannot watch directory '" + dirName + "', polling. Error: " + e.getMessage());
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+package org.bds.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resource usage of a process (Linux), parsed from '/proc/pid/stat'
+ * (or from a 'ps' output line)
+ *
+ * Any negative number means "information not available"
+ *
+ * @author pcingola
+ */
+public class ProcStat {
+
+	public static final String PROC_DIR = "/proc";
+	public static final int CLOCK_TICKS = 100; // Units of CPU times in '/proc/pid/stat' (USER_HZ is 100 on all Linux platforms)
+	public static final int PAGE_SIZE = 4096; // Units of 'rss' in '/proc/pid/stat'
+
+	// 'ps' command used to obtain the same information (e.g. in remote hosts)
+	public static final String PS_COMMAND = "ps -e -o pid=,ppid=,nlwp=,rss=,time=,args=";
+
+	int pid, ppid;
+	char state; // Process state (e.g. 'R' running, 'S' sleeping, 'Z' zombie)
+	long startTime = -1; // Time the process started after system boot (clock ticks)
+	int threads = -1; // Number of threads
+	long cpuUser = -1, cpuSys = -1; // CPU time (milliseconds), includes waited-for children
+	long mem = -1; // Resident memory (bytes)
+	long ioRead = -1, ioWrite = -1; // Bytes read / written from storage
+	String args; // Command line (only available when parsing 'ps' output)
+
+	/**
+	 * Index processes by parent PID
+	 */
+	public static Map<Integer, List<ProcStat>> byParent(Collection<ProcStat> procStats) {
+		Map<Integer, List<ProcStat>> byParent = new HashMap<Integer, List<ProcStat>>();
+		for (ProcStat ps : procStats) {
+			List<ProcStat> children = byParent.get(ps.ppid);
+			if (children == null) {
+				children = new ArrayList<ProcStat>();
+				byParent.put(ps.ppid, children);
+			}
+			children.add(ps);
+		}
+		return byParent;
+	}
+
+	/**
+	 * Index processes by PID
+	 */
+	public static Map<Integer, ProcStat> byPid(Collection<ProcStat> procStats) {
+		Map<Integer, ProcStat> byPid = new HashMap<Integer, ProcStat>();
+		for (ProcStat ps : procStats)
+			byPid.put(ps.pid, ps);
+		return byPid;
+	}
+
+	/**
+	 * Is '/proc' available in this system?
+	 */
+	public static boolean isAvailable() {
+		return new File(PROC_DIR + "/self/stat").exists();
+	}
+
+	/**
+	 * Read a value from '/proc/meminfo' (e.g. "MemAvailable")
+	 * @return Value in bytes or -1 if not available
+	 */
+	public static long memInfo(String key) {
+		try {
+			for (String line : Files.readAllLines(Paths.get(PROC_DIR, "meminfo"))) {
+				if (line.startsWith(key + ":")) {
+					String value = line.substring(key.length() + 1).trim();
+					if (value.endsWith("kB")) return Gpr.parseLongSafe(value.substring(0, value.length() - 2).trim()) * 1024;
+					return Gpr.parseLongSafe(value);
+				}
+			}
+		} catch (IOException e) {
+			// Not available
+		}
+		return -1;
+	}
+
+	/**
+	 * Parse a line from 'PS_COMMAND' output
+	 * @return A ProcStat or null on error
+	 */
+	public static ProcStat parsePs(String line) {
+		String fields[] = line.trim().split("\\s+", 6);
+		if (fields.length < 6) return null;
+
+		ProcStat ps = new ProcStat();
+		ps.pid = Gpr.parseIntSafe(fields[0]);
+		ps.ppid = Gpr.parseIntSafe(fields[1]);
+		ps.threads = Gpr.parseIntSafe(fields[2]);
+		ps.mem = Gpr.parseLongSafe(fields[3]) * 1024; // 'ps' reports in KB
+		ps.cpuUser = parsePsTime(fields[4]); // 'ps' only reports user + system time
+		ps.args = fields[5];
+		return ps.pid > 0 ? ps : null;
+	}
+
+	/**
+	 * Parse 'ps' time format: "[DD-]HH:MM:SS"
+	 * @return Time in milliseconds
+	 */
+	static long parsePsTime(String time) {
+		long days = 0;
+		int idx = time.indexOf('-');
+		if (idx >= 0) {
+			days = Gpr.parseLongSafe(time.substring(0, idx));
+			time = time.substring(idx + 1);
+		}
+
+		long secs = 0;
+		for (String t : time.split(":"))
+			secs = 60 * secs + Gpr.parseLongSafe(t);
+
+		return (days * 24 * 3600 + secs) * 1000;
+	}
+
+	/**
+	 * Parse a '/proc/pid/stat' line
+	 * @return A ProcStat or null on error
+	 */
+	public static ProcStat parseStat(String line) {
+		// Process name (second field) is in parenthesis and can contain spaces
+		int idx = line.lastIndexOf(')');
+		int idxSpace = line.indexOf(' ');
+		if (idx < 0 || idxSpace < 0 || (idx + 2) >= line.length()) return null;
+
+		// Field number 'n' (starting from 1) is 'fields[n - 3]'
+		String fields[] = line.substring(idx + 2).split(" ");
+		if (fields.length < 22) return null;
+
+		ProcStat ps = new ProcStat();
+		ps.pid = Gpr.parseIntSafe(line.substring(0, idxSpace));
+		ps.state = fields[0].isEmpty() ? '?' : fields[0].charAt(0);
+		ps.ppid = Gpr.parseIntSafe(fields[1]);
+		ps.cpuUser = (Gpr.parseLongSafe(fields[11]) + Gpr.parseLongSafe(fields[13])) * 1000 / CLOCK_TICKS; // utime + cutime
+		ps.cpuSys = (Gpr.parseLongSafe(fields[12]) + Gpr.parseLongSafe(fields[14])) * 1000 / CLOCK_TICKS; // stime + cstime
+		ps.threads = Gpr.parseIntSafe(fields[17]);
+		ps.startTime = Gpr.parseLongSafe(fields[19]);
+		ps.mem = Gpr.parseLongSafe(fields[21]) * PAGE_SIZE;
+		return ps.pid > 0 ? ps : null;
+	}
+
+	/**
+	 * Read process information from '/proc/pid/stat'
+	 * @return A ProcStat or null if the process does not exist
+	 */
+	public static ProcStat read(String pid) {
+		try {
+			return parseStat(new String(Files.readAllBytes(Paths.get(PROC_DIR, pid, "stat"))));
+		} catch (IOException e) {
+			return null; // Process finished (or not accessible)
+		}
+	}
+
+	/**
+	 * Read all processes from '/proc'
+	 */
+	public static List<ProcStat> readAll() {
+		List<ProcStat> procStats = new ArrayList<ProcStat>();
+
+		String pids[] = new File(PROC_DIR).list();
+		if (pids == null) return procStats;
+
+		for (String pid : pids) {
+			if (!Character.isDigit(pid.charAt(0))) continue;
+			ProcStat ps = read(pid);
+			if (ps != null) procStats.add(ps);
+		}
+
+		return procStats;
+	}
+
+	/**
+	 * Add all descendants of 'pid' (including itself) to 'tree'
+	 */
+	public static void tree(int pid, Map<Integer, ProcStat> byPid, Map<Integer, List<ProcStat>> byParent, List<ProcStat> tree) {
+		ProcStat ps = byPid.get(pid);
+		if (ps == null) return;
+		tree.add(ps);
+
+		List<ProcStat> children = byParent.get(pid);
+		if (children == null) return;
+		for (ProcStat child : children)
+			if (child.pid != pid) tree(child.pid, byPid, byParent, tree);
+	}
+
+	public String getArgs() {
+		return args;
+	}
+
+	public long getCpuSys() {
+		return cpuSys;
+	}
+
+	public long getCpuUser() {
+		return cpuUser;
+	}
+
+	public long getIoRead() {
+		return ioRead;
+	}
+
+	public long getIoWrite() {
+		return ioWrite;
+	}
+
+	public long getMem() {
+		return mem;
+	}
+
+	public int getPid() {
+		return pid;
+	}
+
+	public int getPpid() {
+		return ppid;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public char getState() {
+		return state;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Is this process alive? (zombies have already finished, they are just waiting to be reaped)
+	 */
+	public boolean isAlive() {
+		return state != 'Z' && state != 'X';
+	}
+
+	/**
+	 * Read I/O information from '/proc/pid/io' (only readable for our own processes)
+	 */
+	public void readIo() {
+		try {
+			for (String line : Files.readAllLines(Paths.get(PROC_DIR, "" + pid, "io"))) {
+				if (line.startsWith("read_bytes:")) ioRead = Gpr.parseLongSafe(line.substring(line.indexOf(':') + 1).trim());
+				else if (line.startsWith("write_bytes:")) ioWrite = Gpr.parseLongSafe(line.substring(line.indexOf(':') + 1).trim());
+			}
+		} catch (IOException e) {
+			// Process finished (or not accessible)
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "pid: " + pid //
+				+ ", ppid: " + ppid //
+				+ ", threads: " + threads //
+				+ ", mem: " + mem //
+				+ ", cpuUser: " + cpuUser //
+				+ ", cpuSys: " + cpuSys //
+				+ ", ioRead: " + ioRead //
+				+ ", ioWrite: " + ioWrite //
+				+ (args != null ? ", args: " + args : "") //
+				;
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.bds.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Hashed timing wheel: Keep track of many deadlines (e.g. task timeouts)
+ * without scanning all of them.
+ *
+ * Time is divided in 'ticks' of 'tickTime' milliseconds. Each deadline is
+ * stored in the slot 'tick % numSlots', so adding and removing items is O(1)
+ * and 'expired()' only visits the slots for the ticks elapsed since the
+ * last call (items that are more than one wheel revolution away are
+ * skipped until their turn comes).
+ *
+ * Note: This class is passive (there is no thread), the owner has
+ * to call 'expired()' periodically
+ *
+ * @author pcingola
+ */
+public class TimingWheel<T> {
+
+	public static final int NUM_SLOTS = 512;
+	public static final long TICK_TIME = 1000; // Default tick time (milliseconds)
+
+	long tickTime;
+	long currentTick; // Latest tick processed
+	List<HashSet<T>> slots;
+	HashMap<T, Long> deadlineTicks; // Item => tick when it expires
+
+	public TimingWheel() {
+		this(TICK_TIME, NUM_SLOTS);
+	}
+
+	public TimingWheel(long tickTime, int numSlots) {
+		this.tickTime = tickTime;
+		slots = new ArrayList<HashSet<T>>(numSlots);
+		for (int i = 0; i < numSlots; i++)
+			slots.add(new HashSet<T>());
+		deadlineTicks = new HashMap<T, Long>();
+		currentTick = tick(System.currentTimeMillis());
+	}
+
+	/**
+	 * Add an item that expires at 'deadline' (epoch in milliseconds).
+	 * If the item was already in the wheel, the deadline is replaced.
+	 */
+	public synchronized void add(T item, long deadline) {
+		remove(item);
+
+		// Round up, so items never expire before the deadline
+		// Note: Items already expired, fire on next call to 'expired()'
+		long tick = Math.max(tick(deadline + tickTime - 1), currentTick + 1);
+		deadlineTicks.put(item, tick);
+		slot(tick).add(item);
+	}
+
+	public synchronized boolean contains(T item) {
+		return deadlineTicks.containsKey(item);
+	}
+
+	/**
+	 * Remove and return all items whose deadline is up to now
+	 */
+	public List<T> expired() {
+		return expired(System.currentTimeMillis());
+	}
+
+	/**
+	 * Remove and return all items whose deadline is up to 'now'
+	 */
+	public synchronized List<T> expired(long now) {
+		List<T> expired = new ArrayList<T>();
+		long nowTick = tick(now);
+		if (deadlineTicks.isEmpty()) {
+			currentTick = nowTick;
+			return expired;
+		}
+
+		// No need to visit more than one revolution
+		long startTick = Math.max(currentTick + 1, nowTick - slots.size() + 1);
+		for (long tick = startTick; tick <= nowTick; tick++) {
+			HashSet<T> slot = slot(tick);
+			if (slot.isEmpty()) continue;
+
+			for (T item : slot)
+				if (deadlineTicks.get(item) <= nowTick) expired.add(item);
+		}
+
+		for (T item : expired)
+			remove(item);
+
+		currentTick = Math.max(currentTick, nowTick);
+		return expired;
+	}
+
+	public synchronized boolean isEmpty() {
+		return deadlineTicks.isEmpty();
+	}
+
+	/**
+	 * Remove an item (e.g. task finished before its deadline)
+	 */
+	public synchronized boolean remove(T item) {
+		Long tick = deadlineTicks.remove(item);
+		if (tick == null) return false;
+		slot(tick).remove(item);
+		return true;
+	}
+
+	public synchronized int size() {
+		return deadlineTicks.size();
+	}
+
+	HashSet<T> slot(long tick) {
+		return slots.get((int) (tick % slots.size()));
+	}
+
+	long tick(long time) {
+		return time / tickTime;
+	}
+
+}
@@ -0,0 +1,9 @@
+#!/bin/sh
+
+# Fake 'qstat': Count invocations (append a line to file '$1') and show some jobs
+echo "qstat" >> "$1"
+
+echo "job-ID  prior   name       user    state submit/start at     queue   slots"
+echo "-----------------------------------------------------------------------------"
+echo "101     0.5     task_101   user    r     01/01/2016 00:00:00 all.q   1"
+echo "102     0.5     task_102   user    r     01/01/2016 00:00:00 all.q   1"
@@ -0,0 +1,16 @@
+#!/bin/bash
+
+# Fake 'bds launcher': Execute requests from STDIN (see go/bds/src/exec/launcher.go)
+# Note: 'kill' requests are ignored
+while IFS=$'\t' read -r req id timeout out err exitFile cmd; do
+	if [ "$req" == "exec" ]; then
+		(
+			echo -e "pid\t$id\t$BASHPID"
+			"$cmd" > "$out" 2> "$err"
+			rc=$?
+			if [ $rc -eq 0 ]; then exitStr="0"; else exitStr="exit status $rc"; fi
+			echo -n "$exitStr" > "$exitFile"
+			echo -e "exit\t$id\t$exitStr"
+		) &
+	fi
+done